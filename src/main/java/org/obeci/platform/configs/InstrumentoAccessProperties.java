@@ -0,0 +1,36 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades do cache de permissões por sessão STOMP.
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.access} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoSessionAccessCache}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.access")
+public class InstrumentoAccessProperties {
+
+    /**
+     * Por quanto tempo uma permissão verificada vale para a sessão sem consultar o banco. A remoção
+     * de um professor revoga na hora as sessões desta instância; nas demais, vale este limite.
+     */
+    private Duration sessionCacheTtl = Duration.ofMinutes(5);
+
+    public Duration getSessionCacheTtl() {
+        return sessionCacheTtl;
+    }
+
+    public void setSessionCacheTtl(Duration sessionCacheTtl) {
+        this.sessionCacheTtl = sessionCacheTtl;
+    }
+}
@@ -0,0 +1,62 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades do broadcast colaborativo em {@code /topic/instrumentos/{turmaId}}.
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.broadcast} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoBroadcastCoalescer} e
+ *       {@link org.obeci.platform.services.InstrumentoBroadcastDispatcher}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.broadcast")
+public class InstrumentoBroadcastProperties {
+
+    /**
+     * Janela de agrupamento por turma: dentro dela só o estado mais recente (ou os deltas
+     * concatenados) é publicado. Zero desativa o agrupamento.
+     */
+    private Duration coalesceWindow = Duration.ofMillis(100);
+
+    /** Lanes de entrega fora do lock do documento; 0 = número de processadores. */
+    private int dispatchLanes = 0;
+
+    /**
+     * Entregas pendentes por lane. Com três quartos ocupados, novas atualizações da turma são
+     * recusadas (OVERLOADED); com a fila cheia, a entrega é descartada.
+     */
+    private int dispatchQueueCapacity = 1000;
+
+    public Duration getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public void setCoalesceWindow(Duration coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    public int getDispatchLanes() {
+        return dispatchLanes;
+    }
+
+    public void setDispatchLanes(int dispatchLanes) {
+        this.dispatchLanes = dispatchLanes;
+    }
+
+    public int getDispatchQueueCapacity() {
+        return dispatchQueueCapacity;
+    }
+
+    public void setDispatchQueueCapacity(int dispatchQueueCapacity) {
+        this.dispatchQueueCapacity = dispatchQueueCapacity;
+    }
+}
@@ -0,0 +1,113 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades do cache em memória de instrumentos "quentes" (em edição).
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.cache} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoDocumentCache}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.cache")
+public class InstrumentoCacheProperties {
+
+    /** Quantidade máxima de documentos mantidos em memória (LRU). */
+    private int maxDocuments = 200;
+
+    /** Intervalo máximo entre gravações (write-behind) de um documento alterado. */
+    private Duration flushInterval = Duration.ofSeconds(5);
+
+    /** Após esse tempo sem edições, o documento alterado é gravado imediatamente. */
+    private Duration idleFlushAfter = Duration.ofSeconds(2);
+
+    /** Após esse tempo sem acesso, o documento (já gravado) sai da memória. */
+    private Duration evictAfter = Duration.ofMinutes(30);
+
+    /** Versões recentes mantidas por documento como base para o merge de três vias. */
+    private int mergeHistorySize = 20;
+
+    /**
+     * Passos recentes (operações entre versões) mantidos por documento para o catch-up de
+     * clientes que reconectam ({@code /app/instrumentos/sync}).
+     */
+    private int syncBufferSize = 500;
+
+    /** Acima dessa quantidade de operações, o catch-up responde com o snapshot completo. */
+    private int syncMaxOps = 2000;
+
+    /** Frequência da varredura que aplica as regras acima (lida via placeholder no {@code @Scheduled}). */
+    private Duration sweepInterval = Duration.ofSeconds(1);
+
+    public int getMaxDocuments() {
+        return maxDocuments;
+    }
+
+    public void setMaxDocuments(int maxDocuments) {
+        this.maxDocuments = maxDocuments;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public Duration getIdleFlushAfter() {
+        return idleFlushAfter;
+    }
+
+    public void setIdleFlushAfter(Duration idleFlushAfter) {
+        this.idleFlushAfter = idleFlushAfter;
+    }
+
+    public int getMergeHistorySize() {
+        return mergeHistorySize;
+    }
+
+    public void setMergeHistorySize(int mergeHistorySize) {
+        this.mergeHistorySize = mergeHistorySize;
+    }
+
+    public int getSyncBufferSize() {
+        return syncBufferSize;
+    }
+
+    public void setSyncBufferSize(int syncBufferSize) {
+        this.syncBufferSize = syncBufferSize;
+    }
+
+    public int getSyncMaxOps() {
+        return syncMaxOps;
+    }
+
+    public void setSyncMaxOps(int syncMaxOps) {
+        this.syncMaxOps = syncMaxOps;
+    }
+
+    public Duration getSweepInterval() {
+        return sweepInterval;
+    }
+
+    public void setSweepInterval(Duration sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    public Duration getEvictAfter() {
+        return evictAfter;
+    }
+
+    public void setEvictAfter(Duration evictAfter) {
+        this.evictAfter = evictAfter;
+    }
+}
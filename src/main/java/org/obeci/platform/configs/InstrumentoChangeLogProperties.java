@@ -0,0 +1,102 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades da gravação assíncrona do log de alterações do Instrumento.
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.change-log} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoChangeLogWriter}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.change-log")
+public class InstrumentoChangeLogProperties {
+
+    /** Entradas aguardando gravação em memória; acima disso vão para o arquivo de spill (ou são descartadas). */
+    private int queueCapacity = 10_000;
+
+    /** Máximo de linhas por batch JDBC. */
+    private int batchSize = 200;
+
+    /** Espera máxima para completar um batch antes de gravar o que houver. */
+    private Duration flushInterval = Duration.ofMillis(500);
+
+    /** No shutdown, grava o que está na fila antes de encerrar. */
+    private boolean flushOnShutdown = true;
+
+    /**
+     * Edições consecutivas do mesmo ator, turma e tipo com intervalo menor que isso viram uma única
+     * entrada (contagem + primeira/última). Zero desativa o agrupamento.
+     */
+    private Duration coalesceWindow = Duration.ofMinutes(2);
+
+    /** Usa arquivo local quando a fila enche ou o banco falha; reprocessado quando o banco volta. */
+    private boolean spillEnabled = true;
+
+    /** Diretório do arquivo de spill. */
+    private String spillDir = System.getProperty("java.io.tmpdir") + "/obeci-change-log";
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(Duration flushInterval) {
+        this.flushInterval = flushInterval;
+    }
+
+    public boolean isFlushOnShutdown() {
+        return flushOnShutdown;
+    }
+
+    public void setFlushOnShutdown(boolean flushOnShutdown) {
+        this.flushOnShutdown = flushOnShutdown;
+    }
+
+    public Duration getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public void setCoalesceWindow(Duration coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    public boolean isSpillEnabled() {
+        return spillEnabled;
+    }
+
+    public void setSpillEnabled(boolean spillEnabled) {
+        this.spillEnabled = spillEnabled;
+    }
+
+    public String getSpillDir() {
+        return spillDir;
+    }
+
+    public void setSpillDir(String spillDir) {
+        this.spillDir = spillDir;
+    }
+}
@@ -0,0 +1,129 @@
+package org.obeci.platform.configs;
+
+import org.obeci.platform.entities.InstrumentoChangeLog;
+import org.obeci.platform.entities.InstrumentoChangeLogDaily;
+import org.obeci.platform.repositories.InstrumentoChangeLogDailyRepository;
+import org.obeci.platform.repositories.InstrumentoChangeLogRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retenção do log de alterações: compacta entradas antigas em resumos diários.
+ *
+ * <p>Motivo: {@code instrumento_change_logs} só crescia e o histórico recente por turma ficava
+ * mais lento com os anos de uso. Entradas cuja última edição é mais antiga que
+ * {@code app.instrumentos.change-log.retention.max-age} são somadas em
+ * {@link InstrumentoChangeLogDaily} (turma/dia/ator/tipo) e apagadas, em lotes limitados.</p>
+ *
+ * <p>Cada lote é uma transação: soma nos resumos e remove as linhas juntos, então uma falha no
+ * meio não perde nem conta em dobro. Rodar de novo continua de onde parou.</p>
+ */
+@Component
+@Profile("!test")
+public class InstrumentoChangeLogRetention {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoChangeLogRetention.class);
+
+    private final InstrumentoChangeLogRepository changeLogRepository;
+    private final InstrumentoChangeLogDailyRepository dailyRepository;
+    private final InstrumentoChangeLogRetentionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    /** Chave do resumo diário. */
+    private record DailyKey(Long turmaId, LocalDate day, String actor, String eventType) {
+    }
+
+    public InstrumentoChangeLogRetention(
+            InstrumentoChangeLogRepository changeLogRepository,
+            InstrumentoChangeLogDailyRepository dailyRepository,
+            InstrumentoChangeLogRetentionProperties properties,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.changeLogRepository = changeLogRepository;
+        this.dailyRepository = dailyRepository;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${app.instrumentos.change-log.retention.cron:0 30 3 * * *}")
+    public void compact() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(properties.getMaxAge());
+        int batchSize = Math.max(properties.getBatchSize(), 1);
+        int compacted = 0;
+        try {
+            for (int batch = 0; batch < Math.max(properties.getMaxBatchesPerRun(), 1); batch++) {
+                Integer rows = transactionTemplate.execute(status -> compactBatch(cutoff, batchSize));
+                int n = rows == null ? 0 : rows;
+                compacted += n;
+                if (n < batchSize) {
+                    break;
+                }
+            }
+            if (compacted > 0) {
+                log.info("Retenção do log de alterações: {} entradas anteriores a {} compactadas", compacted, cutoff);
+            }
+        } catch (Exception e) {
+            // Lote com falha é revertido por inteiro; a próxima execução tenta de novo.
+            log.warn("Falha na retenção do log de alterações (após {} entradas). Motivo: {}", compacted, e.getMessage());
+        }
+    }
+
+    private int compactBatch(LocalDateTime cutoff, int batchSize) {
+        List<InstrumentoChangeLog> entries = changeLogRepository.findOlderThan(cutoff, PageRequest.of(0, batchSize));
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        Map<DailyKey, InstrumentoChangeLogDaily> summaries = new LinkedHashMap<>();
+        List<Long> ids = new ArrayList<>(entries.size());
+        for (InstrumentoChangeLog e : entries) {
+            ids.add(e.getId());
+            LocalDateTime lastAt = e.getLastAt() != null ? e.getLastAt() : e.getCreatedAt();
+            DailyKey key = new DailyKey(e.getTurmaId(), e.getCreatedAt().toLocalDate(), e.getActor(), e.getEventType());
+            InstrumentoChangeLogDaily daily = summaries.computeIfAbsent(key, k -> dailyRepository
+                    .findByTurmaIdAndDayAndActorAndEventType(k.turmaId(), k.day(), k.actor(), k.eventType())
+                    .orElseGet(() -> newDaily(k, e)));
+            daily.setInstrumentoId(e.getInstrumentoId());
+            daily.setEntryCount(daily.getEntryCount() + 1);
+            daily.setEventCount(daily.getEventCount() + (e.getEventCount() == null ? 1 : e.getEventCount()));
+            if (e.getCreatedAt().isBefore(daily.getFirstAt())) {
+                daily.setFirstAt(e.getCreatedAt());
+            }
+            if (lastAt.isAfter(daily.getLastAt())) {
+                daily.setLastAt(lastAt);
+            }
+        }
+
+        dailyRepository.saveAll(summaries.values());
+        changeLogRepository.deleteAllByIdInBatch(ids);
+        return entries.size();
+    }
+
+    private static InstrumentoChangeLogDaily newDaily(DailyKey key, InstrumentoChangeLog first) {
+        InstrumentoChangeLogDaily daily = new InstrumentoChangeLogDaily();
+        daily.setTurmaId(key.turmaId());
+        daily.setDay(key.day());
+        daily.setActor(key.actor());
+        daily.setEventType(key.eventType());
+        daily.setInstrumentoId(first.getInstrumentoId());
+        daily.setFirstAt(first.getCreatedAt());
+        daily.setLastAt(first.getLastAt() != null ? first.getLastAt() : first.getCreatedAt());
+        return daily;
+    }
+}
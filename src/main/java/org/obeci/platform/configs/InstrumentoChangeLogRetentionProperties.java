@@ -0,0 +1,77 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades da retenção/compactação do log de alterações do Instrumento.
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.change-log.retention} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link InstrumentoChangeLogRetention}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.change-log.retention")
+public class InstrumentoChangeLogRetentionProperties {
+
+    /** Liga/desliga a rotina de retenção. */
+    private boolean enabled = true;
+
+    /** Entradas mais antigas que isso são compactadas em resumos diários e removidas. */
+    private Duration maxAge = Duration.ofDays(180);
+
+    /** Linhas por lote (uma transação por lote). */
+    private int batchSize = 500;
+
+    /** Limite de lotes por execução, para não ocupar o banco por muito tempo; o resto fica para a próxima. */
+    private int maxBatchesPerRun = 200;
+
+    /** Expressão cron da rotina (lida via placeholder no {@code @Scheduled}). */
+    private String cron = "0 30 3 * * *";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxBatchesPerRun() {
+        return maxBatchesPerRun;
+    }
+
+    public void setMaxBatchesPerRun(int maxBatchesPerRun) {
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    public String getCron() {
+        return cron;
+    }
+
+    public void setCron(String cron) {
+        this.cron = cron;
+    }
+}
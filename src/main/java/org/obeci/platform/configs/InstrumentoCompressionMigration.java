@@ -0,0 +1,84 @@
+package org.obeci.platform.configs;
+
+import org.obeci.platform.repositories.InstrumentoRepository;
+import org.obeci.platform.services.InstrumentoDocumentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Migração entre {@code instrumentos.slides_json} (TEXT) e {@code instrumentos.slides_gzip} (bytea).
+ *
+ * <p>Com {@code app.instrumentos.storage.compression=GZIP}, comprime os documentos que ainda estão
+ * em {@code slides_json}; com {@code NONE}, faz o caminho inverso (permite desligar a compressão).
+ * Documentos gravados depois já vão para a coluna certa; a leitura aceita as duas enquanto isso.</p>
+ *
+ * <p>Lotes com cursor por id, uma transação por instrumento. A troca só acontece se a versão não
+ * mudou desde a leitura; o que foi alterado no meio é gravado na coluna certa pelo próprio escritor.
+ * Idempotente: o que faltou é retomado no próximo startup.</p>
+ */
+@Component
+@Profile("!test")
+public class InstrumentoCompressionMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoCompressionMigration.class);
+
+    private final InstrumentoRepository instrumentoRepository;
+    private final InstrumentoDocumentStore documentStore;
+    private final InstrumentoStorageProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    public InstrumentoCompressionMigration(
+            InstrumentoRepository instrumentoRepository,
+            InstrumentoDocumentStore documentStore,
+            InstrumentoStorageProperties properties,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.instrumentoRepository = instrumentoRepository;
+        this.documentStore = documentStore;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        boolean gzip = properties.getCompression() == InstrumentoStorageProperties.Compression.GZIP;
+        int batchSize = Math.max(properties.getMigrationBatchSize(), 1);
+        long afterId = 0L;
+        int moved = 0;
+        try {
+            while (true) {
+                List<Long> ids = gzip
+                        ? instrumentoRepository.findIdsUncompressed(afterId, PageRequest.of(0, batchSize))
+                        : instrumentoRepository.findIdsCompressed(afterId, PageRequest.of(0, batchSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Long id : ids) {
+                    afterId = id;
+                    Boolean done = transactionTemplate.execute(status -> instrumentoRepository.findById(id)
+                            .map(documentStore::migrateCompression)
+                            .orElse(false));
+                    if (Boolean.TRUE.equals(done)) {
+                        moved++;
+                    }
+                }
+            }
+            if (moved > 0) {
+                log.info("Migração de compressão ({}): {} instrumento(s) movidos para {}",
+                        properties.getCompression(), moved, gzip ? "slides_gzip" : "slides_json");
+            }
+        } catch (Exception e) {
+            // Não derrubar a aplicação; o que faltou é retomado no próximo startup.
+            log.warn("Falha na migração de compressão do instrumento (parou após id={}). Motivo: {}", afterId, e.getMessage());
+        }
+    }
+}
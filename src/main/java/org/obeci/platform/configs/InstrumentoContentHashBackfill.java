@@ -0,0 +1,94 @@
+package org.obeci.platform.configs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.obeci.platform.repositories.InstrumentoRepository;
+import org.obeci.platform.services.InstrumentoDocumentStore;
+import org.obeci.platform.services.collab.ContentHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Backfill de {@code content_hash} para instrumentos antigos.
+ *
+ * <p>Motivo: a coluna foi adicionada depois (nullable, pelo mesmo motivo de
+ * {@link InstrumentoVersionBackfill}). Linhas sem hash continuam funcionando — o hash é
+ * calculado sob demanda quando o documento entra no cache —, mas o cálculo se repete a cada
+ * carga até serem preenchidas aqui.</p>
+ *
+ * <p>Processa em lotes (cursor por id), uma transação por instrumento. A atualização só
+ * acontece se o hash ainda for null, então não sobrescreve gravações concorrentes.</p>
+ */
+@Component
+@Profile("!test")
+public class InstrumentoContentHashBackfill {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoContentHashBackfill.class);
+
+    private static final int BATCH_SIZE = 50;
+
+    private final InstrumentoRepository instrumentoRepository;
+    private final InstrumentoDocumentStore documentStore;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    public InstrumentoContentHashBackfill(
+            InstrumentoRepository instrumentoRepository,
+            InstrumentoDocumentStore documentStore,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.instrumentoRepository = instrumentoRepository;
+        this.documentStore = documentStore;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long afterId = 0L;
+        int updated = 0;
+        try {
+            while (true) {
+                List<Long> ids = instrumentoRepository.findIdsWithoutContentHash(afterId, PageRequest.of(0, BATCH_SIZE));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Long id : ids) {
+                    afterId = id;
+                    try {
+                        Integer rows = transactionTemplate.execute(status -> instrumentoRepository.findById(id)
+                                .map(entity -> {
+                                    try {
+                                        String json = documentStore.load(entity).slidesJson();
+                                        return instrumentoRepository.backfillContentHash(
+                                                id, ContentHash.canonical(objectMapper.readTree(json)));
+                                    } catch (Exception e) {
+                                        throw new IllegalStateException(e.getMessage(), e);
+                                    }
+                                })
+                                .orElse(0));
+                        updated += rows == null ? 0 : rows;
+                    } catch (Exception e) {
+                        // JSON inválido em uma linha não deve impedir as demais.
+                        log.warn("Backfill Instrumento.contentHash ignorou id={}. Motivo: {}", id, e.getMessage());
+                    }
+                }
+            }
+            if (updated > 0) {
+                log.info("Backfill Instrumento.contentHash: {} linhas atualizadas", updated);
+            }
+        } catch (Exception e) {
+            // Não derrubar a aplicação por causa do backfill; mas deixar visível.
+            log.warn("Falha no backfill de Instrumento.contentHash (parou após id={}). Motivo: {}", afterId, e.getMessage());
+        }
+    }
+}
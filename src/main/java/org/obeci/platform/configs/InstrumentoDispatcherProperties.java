@@ -0,0 +1,42 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Propriedades do despachante ordenado de atualizações colaborativas.
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.dispatcher} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoUpdateDispatcher}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.dispatcher")
+public class InstrumentoDispatcherProperties {
+
+    /** Quantidade de filas (lanes) independentes; 0 = número de processadores. */
+    private int lanes = 0;
+
+    /** Capacidade máxima de cada fila; acima disso a atualização é rejeitada (OVERLOADED). */
+    private int queueCapacity = 256;
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(int lanes) {
+        this.lanes = lanes;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+}
@@ -0,0 +1,79 @@
+package org.obeci.platform.configs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Interceptor do canal STOMP de saída (servidor → cliente) que suprime o eco para o autor.
+ *
+ * <p>O broker simples entrega um broadcast de {@code /topic/instrumentos/{turmaId}} a todas as
+ * sessões inscritas, inclusive a que originou a atualização, que já tem esse estado (e recebe
+ * o ACK em {@code /user/queue/instrumentos/acks}). Quem publica marca a mensagem com
+ * {@link #excluding(String)}; o broker copia o cabeçalho para cada cópia por sessão e aqui a
+ * cópia da sessão marcada é descartada. O cabeçalho não é nativo, então não vai no frame STOMP.</p>
+ *
+ * <p>No modo RELAY ({@link WebSocketBrokerProperties}) só cabeçalhos nativos atravessam o broker
+ * externo: a marca vai também como cabeçalho nativo e é removida aqui das cópias que seguem para os
+ * clientes (ela identifica a sessão do autor).</p>
+ *
+ * <p>Métrica: {@code instrumento.broadcast.echo.suppressed}.</p>
+ */
+@Component
+public class InstrumentoEchoFilter implements ChannelInterceptor {
+
+    /** Sessão STOMP que não deve receber a mensagem. */
+    public static final String EXCLUDE_SESSION_HEADER = "instrumentoExcludeSession";
+
+    private final Counter suppressed;
+    private final boolean relay;
+
+    public InstrumentoEchoFilter(MeterRegistry meterRegistry, WebSocketBrokerProperties brokerProperties) {
+        this.suppressed = Counter.builder("instrumento.broadcast.echo.suppressed").register(meterRegistry);
+        this.relay = brokerProperties.isRelay();
+    }
+
+    /**
+     * Cabeçalhos para {@code SimpMessagingTemplate#convertAndSend(Object, Object, java.util.Map)}
+     * que excluem a sessão informada da entrega.
+     */
+    public MessageHeaders excluding(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setHeader(EXCLUDE_SESSION_HEADER, sessionId);
+        if (relay) {
+            accessor.setNativeHeader(EXCLUDE_SESSION_HEADER, sessionId);
+        }
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        MessageHeaders headers = message.getHeaders();
+        Object excluded = headers.get(EXCLUDE_SESSION_HEADER);
+        String nativeExcluded = relay ? NativeMessageHeaderAccessor.getFirstNativeHeader(EXCLUDE_SESSION_HEADER, headers) : null;
+        if (excluded == null) {
+            excluded = nativeExcluded;
+        }
+        if (excluded != null && excluded.equals(SimpMessageHeaderAccessor.getSessionId(headers))) {
+            suppressed.increment();
+            return null;
+        }
+        if (nativeExcluded != null) {
+            MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+            if (accessor instanceof NativeMessageHeaderAccessor nativeAccessor) {
+                nativeAccessor.removeNativeHeader(EXCLUDE_SESSION_HEADER);
+                return MessageBuilder.createMessage(message.getPayload(), nativeAccessor.getMessageHeaders());
+            }
+        }
+        return message;
+    }
+}
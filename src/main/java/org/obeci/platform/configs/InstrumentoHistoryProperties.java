@@ -0,0 +1,77 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades do histórico de versões do Instrumento.
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.history} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoHistoryService}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.history")
+public class InstrumentoHistoryProperties {
+
+    /** Liga/desliga a gravação de revisões (as já gravadas continuam consultáveis). */
+    private boolean enabled = true;
+
+    /** Grava um checkpoint (documento inteiro) a cada N revisões; limita os deltas a reaplicar. */
+    private int checkpointEveryRevisions = 50;
+
+    /** Grava um checkpoint se o último tiver mais que isso. */
+    private Duration checkpointInterval = Duration.ofMinutes(30);
+
+    /** Delta maior que essa fração do documento vira checkpoint (não compensa o delta). */
+    private double maxDeltaRatio = 0.5;
+
+    /** Checkpoints mantidos por instrumento; revisões anteriores ao mais antigo são apagadas. */
+    private int keepCheckpoints = 20;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCheckpointEveryRevisions() {
+        return checkpointEveryRevisions;
+    }
+
+    public void setCheckpointEveryRevisions(int checkpointEveryRevisions) {
+        this.checkpointEveryRevisions = checkpointEveryRevisions;
+    }
+
+    public Duration getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(Duration checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public double getMaxDeltaRatio() {
+        return maxDeltaRatio;
+    }
+
+    public void setMaxDeltaRatio(double maxDeltaRatio) {
+        this.maxDeltaRatio = maxDeltaRatio;
+    }
+
+    public int getKeepCheckpoints() {
+        return keepCheckpoints;
+    }
+
+    public void setKeepCheckpoints(int keepCheckpoints) {
+        this.keepCheckpoints = keepCheckpoints;
+    }
+}
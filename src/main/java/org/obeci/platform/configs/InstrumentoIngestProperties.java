@@ -0,0 +1,56 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Limites do documento de slides recebido pelo REST (POST/PUT {@code /api/instrumentos/turma/{turmaId}})
+ * e pelo WebSocket (snapshot e patch).
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.ingest} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoService} (leitura em streaming,
+ *       {@link org.obeci.platform.services.collab.SlidesIngest}) e por
+ *       {@link org.obeci.platform.services.InstrumentoCollaborationService}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.ingest")
+public class InstrumentoIngestProperties {
+
+    /** Tamanho máximo do corpo (antes da extração de imagens embutidas). */
+    private DataSize maxDocumentSize = DataSize.ofMegabytes(50);
+
+    /** Profundidade máxima de aninhamento (arrays/objetos). */
+    private int maxDepth = 64;
+
+    private int maxSlides = 1000;
+
+    public DataSize getMaxDocumentSize() {
+        return maxDocumentSize;
+    }
+
+    public void setMaxDocumentSize(DataSize maxDocumentSize) {
+        this.maxDocumentSize = maxDocumentSize;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxSlides() {
+        return maxSlides;
+    }
+
+    public void setMaxSlides(int maxSlides) {
+        this.maxSlides = maxSlides;
+    }
+}
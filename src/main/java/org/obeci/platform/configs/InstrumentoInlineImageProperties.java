@@ -0,0 +1,42 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Propriedades da extração de imagens embutidas ({@code data:} URI) nos slides.
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.inline-images} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoInlineImageExtractor}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.inline-images")
+public class InstrumentoInlineImageProperties {
+
+    private boolean enabled = true;
+
+    /** Imagens decodificadas maiores que isso ficam embutidas (não viram {@code InstrumentoImage}). */
+    private DataSize maxImageSize = DataSize.ofMegabytes(20);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DataSize getMaxImageSize() {
+        return maxImageSize;
+    }
+
+    public void setMaxImageSize(DataSize maxImageSize) {
+        this.maxImageSize = maxImageSize;
+    }
+}
@@ -0,0 +1,56 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades do long-poll de versão do Instrumento ({@code GET /api/instrumentos/turma/{turmaId}?sinceVersion=N}).
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.long-poll} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoVersionWatcher} e
+ *       {@link org.obeci.platform.controllers.InstrumentoController}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.long-poll")
+public class InstrumentoLongPollProperties {
+
+    /** Limite para {@code waitSeconds}; pedidos maiores esperam só até aqui. */
+    private Duration maxWait = Duration.ofSeconds(60);
+
+    /** Requisições estacionadas ao mesmo tempo (todas as turmas); acima disso responde 503. */
+    private int maxWaiters = 1000;
+
+    /** Threads que montam as respostas das esperas acordadas (leitura do documento). */
+    private int responderThreads = 4;
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public int getMaxWaiters() {
+        return maxWaiters;
+    }
+
+    public void setMaxWaiters(int maxWaiters) {
+        this.maxWaiters = maxWaiters;
+    }
+
+    public int getResponderThreads() {
+        return responderThreads;
+    }
+
+    public void setResponderThreads(int responderThreads) {
+        this.responderThreads = responderThreads;
+    }
+}
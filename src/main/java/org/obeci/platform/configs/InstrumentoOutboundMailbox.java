@@ -0,0 +1,358 @@
+package org.obeci.platform.configs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Fila de saída por sessão WebSocket com "latest-wins" para o tópico do documento.
+ *
+ * <p>Motivo: cada broadcast de {@code /topic/instrumentos/{turmaId}} pode levar o deck inteiro; um
+ * cliente em rede ruim fazia o buffer de envio da sessão crescer a cada atualização até estourar o
+ * limite e derrubar a sessão, ou segurava memória sem limite. Aqui cada sessão tem uma fila própria,
+ * esvaziada por uma thread própria enquanto houver o que enviar:
+ * <ul>
+ *   <li>um MESSAGE de {@code /topic/instrumentos/{turmaId}} ainda não enviado é substituído pelo
+ *       novo: a sessão atrasada pula versões intermediárias e recebe só a mais recente (se o que
+ *       chegar for um delta sobre uma versão que ela não tem, o cliente faz o catch-up via
+ *       {@code /app/instrumentos/sync}, como em qualquer salto de versão);</li>
+ *   <li>os demais frames (ACKs, erros, presença, {@code /changes}, heartbeats) saem todos, em ordem;</li>
+ *   <li>um envio travado há mais que {@code send-time-limit}, ou mais que
+ *       {@code send-buffer-size-limit} bytes esperando, encerra a sessão
+ *       ({@link SessionLimitExceededException}, o mesmo caminho dos limites do Spring). O tempo
+ *       também é verificado periodicamente ({@code send-time-check-interval}): uma sessão travada
+ *       que não recebe mais frames é encerrada do mesmo jeito e libera a thread de envio.</li>
+ * </ul>
+ * As threads de envio são um pool limitado ({@code sender-threads}); cada sessão ocupa no máximo
+ * uma por vez, e as demais sessões com frames esperando aguardam a vez.
+ * Registrado em {@link WebSocketConfig} como decorator do handler WebSocket; os limites do
+ * decorator padrão do Spring continuam configurados, mas como o envio aqui não bloqueia quem
+ * publica, na prática quem os aplica é esta classe.</p>
+ *
+ * <p>Métricas: {@code instrumento.outbound.skipped} (broadcasts substituídos),
+ * {@code instrumento.outbound.closed} (tag {@code reason}: {@code send-time} ou {@code buffer}),
+ * {@code instrumento.outbound.backlog.sessions} (sessões com frames esperando) e
+ * {@code instrumento.outbound.buffered.bytes}.</p>
+ */
+@Component
+public class InstrumentoOutboundMailbox implements WebSocketHandlerDecoratorFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoOutboundMailbox.class);
+
+    /** Só o tópico do documento; presença e {@code /changes} são incrementais e saem completos. */
+    private static final Pattern LATEST_WINS_DESTINATION = Pattern.compile("/topic/instrumentos/\\d+");
+
+    /** Os cabeçalhos de um MESSAGE cabem folgadamente nisso; o corpo não é lido. */
+    private static final int MAX_HEADER_SCAN = 2048;
+
+    private final long sendTimeLimitMillis;
+    private final long sendBufferSizeLimit;
+    private final boolean latestWins;
+
+    /**
+     * Threads de envio, no máximo {@code sender-threads}; ociosas encerram sozinhas. A fila tem no
+     * máximo uma tarefa por sessão (só há uma drenagem por vez), então é limitada pelas sessões.
+     */
+    private final AtomicInteger senderThreads = new AtomicInteger();
+    private final ThreadPoolExecutor senders;
+    private final Set<Mailbox> mailboxes = ConcurrentHashMap.newKeySet();
+
+    private final Counter skipped;
+    private final Counter closedSendTime;
+    private final Counter closedBuffer;
+
+    public InstrumentoOutboundMailbox(WebSocketOutboundProperties properties, MeterRegistry meterRegistry) {
+        this.sendTimeLimitMillis = properties.getSendTimeLimit().toMillis();
+        this.sendBufferSizeLimit = properties.getSendBufferSizeLimit().toBytes();
+        this.latestWins = properties.isLatestWins();
+
+        int threads = Math.max(properties.getSenderThreads(), 1);
+        this.senders = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "instrumento.outbound-" + senderThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.senders.allowCoreThreadTimeOut(true);
+
+        this.skipped = Counter.builder("instrumento.outbound.skipped").register(meterRegistry);
+        this.closedSendTime = Counter.builder("instrumento.outbound.closed").tag("reason", "send-time").register(meterRegistry);
+        this.closedBuffer = Counter.builder("instrumento.outbound.closed").tag("reason", "buffer").register(meterRegistry);
+        Gauge.builder("instrumento.outbound.backlog.sessions", mailboxes,
+                        m -> m.stream().filter(Mailbox::hasBacklog).count())
+                .register(meterRegistry);
+        Gauge.builder("instrumento.outbound.buffered.bytes", mailboxes,
+                        m -> m.stream().mapToLong(Mailbox::bufferedBytes).sum())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+
+            private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                Mailbox mailbox = new Mailbox(session);
+                sessions.put(session.getId(), mailbox);
+                mailboxes.add(mailbox);
+                super.afterConnectionEstablished(mailbox);
+            }
+
+            @Override
+            public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+                super.handleMessage(sessions.getOrDefault(session.getId(), session), message);
+            }
+
+            @Override
+            public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+                super.handleTransportError(sessions.getOrDefault(session.getId(), session), exception);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                WebSocketSession mailbox = sessions.remove(session.getId());
+                if (mailbox instanceof Mailbox m) {
+                    mailboxes.remove(m);
+                    m.discard();
+                }
+                super.afterConnectionClosed(mailbox != null ? mailbox : session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Encerra as sessões cujo envio em andamento passou de {@code send-time-limit}, mesmo que nenhum
+     * frame novo chegue para elas.
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.outbound.send-time-check-interval:PT1S}")
+    public void closeStalledSessions() {
+        long now = System.currentTimeMillis();
+        for (Mailbox mailbox : mailboxes) {
+            mailbox.closeIfStalled(now);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdownNow();
+    }
+
+    /**
+     * Destino de um MESSAGE que pode ser substituído por um mais novo; null para os demais frames.
+     */
+    static String latestWinsKey(WebSocketMessage<?> message) {
+        String head;
+        if (message instanceof TextMessage text) {
+            String payload = text.getPayload();
+            head = payload.length() > MAX_HEADER_SCAN ? payload.substring(0, MAX_HEADER_SCAN) : payload;
+        } else if (message instanceof BinaryMessage binary) {
+            ByteBuffer buffer = binary.getPayload().duplicate();
+            byte[] bytes = new byte[Math.min(buffer.remaining(), MAX_HEADER_SCAN)];
+            buffer.get(bytes);
+            head = new String(bytes, StandardCharsets.ISO_8859_1);
+        } else {
+            return null;
+        }
+        if (!head.startsWith("MESSAGE\n")) {
+            return null;
+        }
+        int headersEnd = head.indexOf("\n\n");
+        int at = head.indexOf("\ndestination:");
+        if (headersEnd < 0 || at < 0 || at > headersEnd) {
+            return null;
+        }
+        int start = at + "\ndestination:".length();
+        String destination = head.substring(start, head.indexOf('\n', start));
+        return LATEST_WINS_DESTINATION.matcher(destination).matches() ? destination : null;
+    }
+
+    /**
+     * Frame esperando envio; {@code message} é trocado no lugar quando um mais novo do mesmo destino chega.
+     */
+    private static final class Pending {
+        final String key;
+        WebSocketMessage<?> message;
+        int size;
+
+        Pending(String key, WebSocketMessage<?> message) {
+            this.key = key;
+            this.message = message;
+            this.size = message.getPayloadLength();
+        }
+    }
+
+    /**
+     * Sessão vista pelo Spring: {@link #sendMessage} só enfileira; uma thread de {@code senders} envia à sessão real.
+     */
+    private final class Mailbox extends WebSocketSessionDecorator {
+
+        private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+        private final Map<String, Pending> latest = new HashMap<>();
+        private volatile long buffered;
+        private boolean sending;
+        /** Início do envio em andamento à sessão real; 0 quando nenhum frame está saindo. */
+        private long sendStartedAt;
+        private boolean closed;
+
+        Mailbox(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            String key = latestWins ? latestWinsKey(message) : null;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                Pending pending = key != null ? latest.get(key) : null;
+                if (pending != null) {
+                    buffered += message.getPayloadLength() - pending.size;
+                    pending.message = message;
+                    pending.size = message.getPayloadLength();
+                    skipped.increment();
+                } else {
+                    pending = new Pending(key, message);
+                    queue.add(pending);
+                    buffered += pending.size;
+                    if (key != null) {
+                        latest.put(key, pending);
+                    }
+                }
+
+                if (!sending) {
+                    sending = true;
+                    senders.execute(this::drain);
+                    return;
+                }
+                // Com uma drenagem em andamento: a sessão está atrasada. Verifica os limites.
+                if (stalled(System.currentTimeMillis())) {
+                    closedSendTime.increment();
+                    discardLocked();
+                    throw new SessionLimitExceededException(
+                            "Envio para a sessão " + getId() + " excedeu " + sendTimeLimitMillis + " ms",
+                            CloseStatus.SESSION_NOT_RELIABLE);
+                }
+                if (buffered > sendBufferSizeLimit) {
+                    closedBuffer.increment();
+                    discardLocked();
+                    throw new SessionLimitExceededException(
+                            "Buffer de envio da sessão " + getId() + " excedeu " + sendBufferSizeLimit + " bytes",
+                            CloseStatus.SESSION_NOT_RELIABLE);
+                }
+            }
+        }
+
+        @Override
+        public void close(CloseStatus status) throws IOException {
+            discard();
+            super.close(status);
+        }
+
+        /**
+         * Chamado pela verificação periódica: encerra a sessão real se o envio atual travou.
+         */
+        void closeIfStalled(long now) {
+            synchronized (this) {
+                if (closed || !stalled(now)) {
+                    return;
+                }
+                closedSendTime.increment();
+                discardLocked();
+            }
+            log.info("Envio para a sessão {} excedeu {} ms; encerrando", getId(), sendTimeLimitMillis);
+            try {
+                // Fora do monitor: fechar a conexão pode esperar o envio travado.
+                getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (Exception e) {
+                log.debug("Falha ao encerrar a sessão {}: {}", getId(), e.getMessage());
+            }
+        }
+
+        private boolean stalled(long now) {
+            return sendStartedAt != 0 && now - sendStartedAt > sendTimeLimitMillis;
+        }
+
+        boolean hasBacklog() {
+            return buffered > 0;
+        }
+
+        long bufferedBytes() {
+            return buffered;
+        }
+
+        synchronized void discard() {
+            discardLocked();
+        }
+
+        private void discardLocked() {
+            closed = true;
+            queue.clear();
+            latest.clear();
+            buffered = 0;
+        }
+
+        private void drain() {
+            while (true) {
+                WebSocketMessage<?> message;
+                synchronized (this) {
+                    Pending next = closed ? null : queue.poll();
+                    if (next == null) {
+                        sending = false;
+                        sendStartedAt = 0;
+                        return;
+                    }
+                    if (next.key != null) {
+                        latest.remove(next.key, next);
+                    }
+                    buffered -= next.size;
+                    sendStartedAt = System.currentTimeMillis();
+                    message = next.message;
+                }
+                try {
+                    getDelegate().sendMessage(message);
+                } catch (Exception e) {
+                    // Conexão caída: o container avisa o handler (afterConnectionClosed), que limpa a sessão.
+                    log.debug("Falha ao enviar para a sessão {}: {}", getId(), e.getMessage());
+                    synchronized (this) {
+                        discardLocked();
+                        sending = false;
+                        sendStartedAt = 0;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
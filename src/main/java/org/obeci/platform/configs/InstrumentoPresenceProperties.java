@@ -0,0 +1,55 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades do canal de presença/cursor do Instrumento (efêmero, só em memória).
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.presence} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoPresenceService}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.presence")
+public class InstrumentoPresenceProperties {
+
+    /** Intervalo mínimo entre broadcasts de cursor da mesma sessão; o excedente sai na próxima varredura. */
+    private Duration minInterval = Duration.ofMillis(100);
+
+    /** Sem mensagem de presença (heartbeat) por esse tempo, o participante sai do roster. */
+    private Duration ttl = Duration.ofSeconds(30);
+
+    /** Frequência da varredura de expiração/envio pendente (lida via placeholder no {@code @Scheduled}). */
+    private Duration sweepInterval = Duration.ofSeconds(1);
+
+    public Duration getMinInterval() {
+        return minInterval;
+    }
+
+    public void setMinInterval(Duration minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public Duration getSweepInterval() {
+        return sweepInterval;
+    }
+
+    public void setSweepInterval(Duration sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+}
@@ -0,0 +1,87 @@
+package org.obeci.platform.configs;
+
+import org.obeci.platform.repositories.InstrumentoRepository;
+import org.obeci.platform.services.InstrumentoDocumentStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Migração de {@code instrumentos.slides_json} para {@code instrumento_slides}.
+ *
+ * <p>Só roda com {@code app.instrumentos.storage.mode=SLIDES}. Percorre os instrumentos que ainda
+ * não têm linhas por slide, em lotes (cursor por id), dividindo cada documento em uma transação
+ * própria. Documentos que não são arrays de slides com {@code id} único continuam em
+ * {@code slides_json} (a leitura cai nele quando não há linhas).</p>
+ *
+ * <p>É idempotente: pode ser interrompida e retomada no próximo startup. A coluna
+ * {@code slides_json} não é apagada, o que permite voltar para o modo DOCUMENT.</p>
+ */
+@Component
+@Profile("!test")
+public class InstrumentoSlideMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoSlideMigration.class);
+
+    private final InstrumentoRepository instrumentoRepository;
+    private final InstrumentoDocumentStore documentStore;
+    private final InstrumentoStorageProperties properties;
+    private final TransactionTemplate transactionTemplate;
+
+    public InstrumentoSlideMigration(
+            InstrumentoRepository instrumentoRepository,
+            InstrumentoDocumentStore documentStore,
+            InstrumentoStorageProperties properties,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.instrumentoRepository = instrumentoRepository;
+        this.documentStore = documentStore;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrate() {
+        if (properties.getMode() != InstrumentoStorageProperties.Mode.SLIDES) {
+            return;
+        }
+        int batchSize = Math.max(properties.getMigrationBatchSize(), 1);
+        long afterId = 0L;
+        int migrated = 0;
+        int skipped = 0;
+        try {
+            while (true) {
+                List<Long> ids = instrumentoRepository.findIdsWithoutSlides(afterId, PageRequest.of(0, batchSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (Long id : ids) {
+                    afterId = id;
+                    Boolean split = transactionTemplate.execute(status -> instrumentoRepository.findById(id)
+                            .map(documentStore::splitLegacy)
+                            .orElse(false));
+                    if (Boolean.TRUE.equals(split)) {
+                        migrated++;
+                    } else {
+                        skipped++;
+                    }
+                }
+            }
+            if (migrated > 0 || skipped > 0) {
+                log.info("Migração para instrumento_slides: {} instrumento(s) divididos, {} mantidos em slides_json",
+                        migrated, skipped);
+            }
+        } catch (Exception e) {
+            // Não derrubar a aplicação; o que faltou é retomado no próximo startup.
+            log.warn("Falha na migração para instrumento_slides (parou após id={}). Motivo: {}", afterId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Propriedades do formato de armazenamento do Instrumento.
+ *
+ * <p>Bind do prefixo {@code app.instrumentos.storage} (application*.yml).</p>
+ *
+ * <p>Modos:
+ * <ul>
+ *   <li>{@code DOCUMENT}: documento inteiro na coluna {@code instrumentos.slides_json} (comportamento original).</li>
+ *   <li>{@code SLIDES}: um registro por slide em {@code instrumento_slides}; alterar um slide grava uma linha.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Compressão ({@code compression}), vale para o documento inteiro (modo DOCUMENT):
+ * <ul>
+ *   <li>{@code NONE}: JSON em {@code slides_json} (TEXT).</li>
+ *   <li>{@code GZIP}: JSON comprimido em {@code slides_gzip} (bytea); o GET do documento pode
+ *       enviar esses bytes sem descomprimir ({@code Content-Encoding: gzip}).</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link org.obeci.platform.services.InstrumentoDocumentStore} e
+ *       {@link InstrumentoSlideMigration} e {@link InstrumentoCompressionMigration}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.instrumentos.storage")
+public class InstrumentoStorageProperties {
+
+    public enum Mode {
+        DOCUMENT,
+        SLIDES
+    }
+
+    public enum Compression {
+        NONE,
+        GZIP
+    }
+
+    private Mode mode = Mode.DOCUMENT;
+
+    private Compression compression = Compression.GZIP;
+
+    /** Quantidade de instrumentos processados por lote nas migrações (modo SLIDES e compressão). */
+    private int migrationBatchSize = 50;
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public int getMigrationBatchSize() {
+        return migrationBatchSize;
+    }
+
+    public void setMigrationBatchSize(int migrationBatchSize) {
+        this.migrationBatchSize = migrationBatchSize;
+    }
+}
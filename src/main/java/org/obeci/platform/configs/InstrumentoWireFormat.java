@@ -0,0 +1,166 @@
+package org.obeci.platform.configs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Negociação de formato binário (CBOR ou Smile) nas mensagens STOMP do Instrumento.
+ *
+ * <p>Motivo: os documentos são JSON grande e aninhado, e cada frame STOMP ia como texto.
+ * <ul>
+ *   <li>Entrada: SEND com {@code content-type: application/cbor} ou
+ *       {@code application/x-jackson-smile} é lido pelos conversores de {@link #converters()}
+ *       (registrados em {@link WebSocketConfig}); sem content-type, continua JSON.</li>
+ *   <li>Saída: a sessão pede o formato no CONNECT (cabeçalho {@code accept}). As mensagens JSON
+ *       destinadas a ela são recodificadas aqui, no canal de saída, e vão em frame binário do
+ *       WebSocket com {@code content-type: application/octet-stream} e o formato real em
+ *       {@value #FORMAT_HEADER}.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>O broker simples entrega os mesmos bytes a todas as sessões de um tópico, então a
+ * recodificação é por sessão; o último resultado por formato é reaproveitado, já que as cópias de
+ * um broadcast saem em sequência. Métrica: {@code instrumento.wire.transcoded}.</p>
+ */
+@Component
+public class InstrumentoWireFormat implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoWireFormat.class);
+
+    public static final MimeType CBOR = new MimeType("application", "cbor");
+    public static final MimeType SMILE = new MimeType("application", "x-jackson-smile");
+
+    /** Cabeçalho STOMP com o formato real do corpo binário. */
+    public static final String FORMAT_HEADER = "content-format";
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final ObjectMapper smileMapper;
+    private final Counter transcoded;
+
+    /** sessionId → formato pedido no CONNECT (só sessões que pediram binário). */
+    private final ConcurrentHashMap<String, MimeType> sessionFormats = new ConcurrentHashMap<>();
+
+    /** Último corpo recodificado por formato (identidade do array de origem → resultado). */
+    private static final class Last {
+        byte[] source;
+        byte[] result;
+    }
+
+    private final Last lastCbor = new Last();
+    private final Last lastSmile = new Last();
+
+    public InstrumentoWireFormat(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.jsonMapper = objectMapper;
+        // Mesma configuração (módulos, datas) do JSON, só muda o formato.
+        this.cborMapper = objectMapper.copyWith(new CBORFactory());
+        this.smileMapper = objectMapper.copyWith(new SmileFactory());
+        this.transcoded = Counter.builder("instrumento.wire.transcoded").register(meterRegistry);
+    }
+
+    /**
+     * Conversores de entrada/saída para os formatos binários.
+     *
+     * <p>Correspondência estrita de content-type: sem isso, mensagens sem content-type
+     * seriam capturadas por estes conversores em vez do JSON padrão.</p>
+     */
+    public List<MessageConverter> converters() {
+        return List.of(converter(CBOR, cborMapper), converter(SMILE, smileMapper));
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == SimpMessageType.CONNECT) {
+            rememberFormat(message);
+            return message;
+        }
+        if (type != SimpMessageType.MESSAGE || sessionFormats.isEmpty()) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        MimeType format = sessionId == null ? null : sessionFormats.get(sessionId);
+        if (format == null || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        MimeType contentType = accessor.getContentType();
+        if (contentType == null || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return message;
+        }
+        try {
+            byte[] body = CBOR.equals(format) ? transcode(payload, cborMapper, lastCbor) : transcode(payload, smileMapper, lastSmile);
+            // octet-stream faz o STOMP usar frame binário do WebSocket (texto corromperia o corpo).
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setNativeHeader(FORMAT_HEADER, format.toString());
+            transcoded.increment();
+            return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+        } catch (Exception e) {
+            // Em último caso, entrega em JSON (o cliente sempre entende).
+            log.warn("Falha ao recodificar mensagem para {} (sessionId={}): {}", format, sessionId, e.getMessage());
+            return message;
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessionFormats.remove(event.getSessionId());
+    }
+
+    private void rememberFormat(Message<?> message) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        String accept = accessor.getFirstNativeHeader("accept");
+        if (accept == null || accessor.getSessionId() == null) {
+            return;
+        }
+        for (MimeType mime : MimeTypeUtils.parseMimeTypes(accept)) {
+            if (CBOR.equalsTypeAndSubtype(mime) || SMILE.equalsTypeAndSubtype(mime)) {
+                sessionFormats.put(accessor.getSessionId(), CBOR.equalsTypeAndSubtype(mime) ? CBOR : SMILE);
+                return;
+            }
+        }
+    }
+
+    private byte[] transcode(byte[] json, ObjectMapper target, Last last) throws Exception {
+        synchronized (last) {
+            if (last.source == json) {
+                return last.result;
+            }
+        }
+        byte[] result = target.writeValueAsBytes(jsonMapper.readTree(json));
+        synchronized (last) {
+            last.source = json;
+            last.result = result;
+        }
+        return result;
+    }
+
+    private static MappingJackson2MessageConverter converter(MimeType mime, ObjectMapper mapper) {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(mime);
+        converter.setObjectMapper(mapper);
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+}
@@ -0,0 +1,15 @@
+package org.obeci.platform.configs;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Habilita tarefas agendadas ({@code @Scheduled}).
+ *
+ * <p>Usado pelas rotinas de manutenção do modo colaborativo (ex.: write-behind do
+ * {@link org.obeci.platform.services.InstrumentoDocumentCache}).</p>
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,9 +1,11 @@
 package org.obeci.platform.configs;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -17,6 +19,8 @@ import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import java.util.List;
+
 @Configuration
 @EnableWebSecurity
 /**
@@ -68,6 +72,8 @@ public class SecurityConfiguration {
             .csrf(csrf -> csrf.disable())
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(authz -> authz
+                // Retomada de requisição assíncrona (long-poll): já autorizada na requisição original.
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 // Registro de usuário só pode ser realizado por ADMIN
                 .requestMatchers(HttpMethod.POST, "/auth/register").hasRole("ADMIN")
                 // Login e logout abertos (logout pode ser feito autenticado, mas manteremos aberto)
@@ -120,6 +126,8 @@ public class SecurityConfiguration {
         configuration.setAllowedMethods(corsProperties.getAllowedMethods());
         configuration.setAllowedHeaders(corsProperties.getAllowedHeaders());
         configuration.setAllowCredentials(corsProperties.isAllowCredentials());
+        // Metadados do instrumento quando o corpo é só o array de slides (GET com Accept de slides).
+        configuration.setExposedHeaders(List.of(HttpHeaders.ETAG, "X-Instrumento-Id", "X-Instrumento-Version"));
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
         return source;
@@ -6,9 +6,10 @@ import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
-import org.obeci.platform.services.InstrumentoAccessService;
+import org.obeci.platform.services.InstrumentoSessionAccessCache;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -29,16 +30,21 @@ import java.util.regex.Pattern;
  *   <li>salvo no handshake em {@link JwtHandshakeInterceptor#ATTR_AUTH}</li>
  * </ul>
  * </p>
+ *
+ * <p>No SUBSCRIBE em tópicos de turma, a permissão passa por {@link InstrumentoSessionAccessCache}
+ * (os demais tópicos da mesma turma e as mensagens seguintes da sessão não vão ao banco), e a
+ * assinatura é registrada para poder ser cancelada se o professor for removido da turma.</p>
  */
 @Component
 public class StompAuthChannelInterceptor implements ChannelInterceptor {
 
-    private static final Pattern TOPIC_INSTRUMENTO_TURMA = Pattern.compile("^/topic/instrumentos/(\\d+)$");
+    // Inclui os subtópicos da turma (ex.: /changes, /presence).
+    private static final Pattern TOPIC_INSTRUMENTO_TURMA = Pattern.compile("^/topic/instrumentos/(\\d+)(/.*)?$");
 
-    private final InstrumentoAccessService instrumentoAccessService;
+    private final InstrumentoSessionAccessCache accessCache;
 
-    public StompAuthChannelInterceptor(InstrumentoAccessService instrumentoAccessService) {
-        this.instrumentoAccessService = instrumentoAccessService;
+    public StompAuthChannelInterceptor(InstrumentoSessionAccessCache accessCache) {
+        this.accessCache = accessCache;
     }
 
     @Override
@@ -56,6 +62,9 @@ public class StompAuthChannelInterceptor implements ChannelInterceptor {
         // No SUBSCRIBE, bloqueamos assinatura de tópicos por turma se o usuário não pertence.
         if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
             String destination = accessor.getDestination();
+            if (destination != null && isInternal(destination)) {
+                throw new AccessDeniedException("Destino não permitido: " + destination);
+            }
             if (destination != null) {
                 Matcher m = TOPIC_INSTRUMENTO_TURMA.matcher(destination);
                 if (m.matches()) {
@@ -66,7 +75,8 @@ public class StompAuthChannelInterceptor implements ChannelInterceptor {
                     } else {
                         auth = resolveAuthFromSession(accessor);
                     }
-                    instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, auth);
+                    accessCache.assertCanAccess(accessor.getSessionId(), turmaId, auth);
+                    accessCache.subscribed(accessor.getSessionId(), accessor.getSubscriptionId(), destination, turmaId);
                 }
             }
         }
@@ -74,6 +84,16 @@ public class StompAuthChannelInterceptor implements ChannelInterceptor {
         return message;
     }
 
+    /**
+     * Destinos que só o servidor usa: filas de usuário já resolvidas ({@code /queue/...-user{sessão}};
+     * o cliente assina {@code /user/queue/**}) e os tópicos de coordenação do modo RELAY.
+     */
+    private static boolean isInternal(String destination) {
+        return destination.startsWith("/queue/")
+                || destination.equals(WebSocketConfig.USER_REGISTRY_BROADCAST)
+                || destination.equals(WebSocketConfig.USER_DESTINATION_BROADCAST);
+    }
+
     @Nullable
     private Authentication resolveAuthFromSession(StompHeaderAccessor accessor) {
         if (accessor.getSessionAttributes() == null) {
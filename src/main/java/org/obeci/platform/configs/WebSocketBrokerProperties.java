@@ -0,0 +1,200 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Propriedades do broker STOMP usado pelo WebSocket ({@code /topic/**} e {@code /queue/**}).
+ *
+ * <p>Bind do prefixo {@code app.websocket.broker} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link WebSocketConfig}, {@link InstrumentoEchoFilter} e
+ *       {@code InstrumentoClusterBridge} (modos POSTGRES e RELAY).</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.websocket.broker")
+public class WebSocketBrokerProperties {
+
+    public enum Mode {
+        /** Broker em memória: todas as sessões de uma turma precisam estar na mesma instância. */
+        SIMPLE,
+        /**
+         * Relay para um broker STOMP externo (RabbitMQ, ActiveMQ Artemis): várias instâncias atrás do
+         * balanceador, que deve manter cada turma em uma instância (ver {@link WebSocketConfig}).
+         */
+        RELAY,
+        /**
+         * Broker em memória em cada instância, com os broadcasts do Instrumento repassados entre elas
+         * por LISTEN/NOTIFY do Postgres (ver {@code InstrumentoClusterBridge}).
+         */
+        POSTGRES
+    }
+
+    private Mode mode = Mode.SIMPLE;
+
+    private String relayHost = "localhost";
+
+    private int relayPort = 61613;
+
+    /** Credenciais das conexões abertas pelo relay para cada sessão de cliente. */
+    private String clientLogin = "guest";
+
+    private String clientPasscode = "guest";
+
+    /** Credenciais da conexão compartilhada ("system") usada para publicar a partir do servidor. */
+    private String systemLogin = "guest";
+
+    private String systemPasscode = "guest";
+
+    /** Cabeçalho {@code host} do CONNECT (vhost no RabbitMQ); vazio = não enviado. */
+    private String virtualHost;
+
+    private Duration systemHeartbeatSendInterval = Duration.ofSeconds(10);
+
+    private Duration systemHeartbeatReceiveInterval = Duration.ofSeconds(10);
+
+    /**
+     * Canal do LISTEN/NOTIFY (broadcasts no modo POSTGRES; avisos de gravação nos modos POSTGRES e
+     * RELAY); identificador simples em minúsculas.
+     */
+    private String notifyChannel = "instrumento_cluster";
+
+    /**
+     * Acima disso (bytes UTF-8) a mensagem vai por referência: o corpo é gravado em
+     * {@code instrumento_broadcast_payloads} e a notificação leva só o id. O Postgres recusa
+     * payloads de NOTIFY a partir de 8000 bytes.
+     */
+    private int notifyMaxPayloadBytes = 7900;
+
+    /** Notificações aguardando envio; acima disso são descartadas (clientes se recuperam pelo sync). */
+    private int notifyQueueCapacity = 1000;
+
+    /** Corpos gravados por referência são apagados depois disso. */
+    private Duration notifyPayloadRetention = Duration.ofMinutes(5);
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public String getRelayHost() {
+        return relayHost;
+    }
+
+    public void setRelayHost(String relayHost) {
+        this.relayHost = relayHost;
+    }
+
+    public int getRelayPort() {
+        return relayPort;
+    }
+
+    public void setRelayPort(int relayPort) {
+        this.relayPort = relayPort;
+    }
+
+    public String getClientLogin() {
+        return clientLogin;
+    }
+
+    public void setClientLogin(String clientLogin) {
+        this.clientLogin = clientLogin;
+    }
+
+    public String getClientPasscode() {
+        return clientPasscode;
+    }
+
+    public void setClientPasscode(String clientPasscode) {
+        this.clientPasscode = clientPasscode;
+    }
+
+    public String getSystemLogin() {
+        return systemLogin;
+    }
+
+    public void setSystemLogin(String systemLogin) {
+        this.systemLogin = systemLogin;
+    }
+
+    public String getSystemPasscode() {
+        return systemPasscode;
+    }
+
+    public void setSystemPasscode(String systemPasscode) {
+        this.systemPasscode = systemPasscode;
+    }
+
+    public String getVirtualHost() {
+        return virtualHost;
+    }
+
+    public void setVirtualHost(String virtualHost) {
+        this.virtualHost = virtualHost;
+    }
+
+    public Duration getSystemHeartbeatSendInterval() {
+        return systemHeartbeatSendInterval;
+    }
+
+    public void setSystemHeartbeatSendInterval(Duration systemHeartbeatSendInterval) {
+        this.systemHeartbeatSendInterval = systemHeartbeatSendInterval;
+    }
+
+    public Duration getSystemHeartbeatReceiveInterval() {
+        return systemHeartbeatReceiveInterval;
+    }
+
+    public void setSystemHeartbeatReceiveInterval(Duration systemHeartbeatReceiveInterval) {
+        this.systemHeartbeatReceiveInterval = systemHeartbeatReceiveInterval;
+    }
+
+    public String getNotifyChannel() {
+        return notifyChannel;
+    }
+
+    public void setNotifyChannel(String notifyChannel) {
+        this.notifyChannel = notifyChannel;
+    }
+
+    public int getNotifyMaxPayloadBytes() {
+        return notifyMaxPayloadBytes;
+    }
+
+    public void setNotifyMaxPayloadBytes(int notifyMaxPayloadBytes) {
+        this.notifyMaxPayloadBytes = notifyMaxPayloadBytes;
+    }
+
+    public int getNotifyQueueCapacity() {
+        return notifyQueueCapacity;
+    }
+
+    public void setNotifyQueueCapacity(int notifyQueueCapacity) {
+        this.notifyQueueCapacity = notifyQueueCapacity;
+    }
+
+    public Duration getNotifyPayloadRetention() {
+        return notifyPayloadRetention;
+    }
+
+    public void setNotifyPayloadRetention(Duration notifyPayloadRetention) {
+        this.notifyPayloadRetention = notifyPayloadRetention;
+    }
+
+    public boolean isPostgres() {
+        return mode == Mode.POSTGRES;
+    }
+
+    public boolean isRelay() {
+        return mode == Mode.RELAY;
+    }
+}
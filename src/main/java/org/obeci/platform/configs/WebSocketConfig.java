@@ -1,11 +1,22 @@
 package org.obeci.platform.configs;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 /**
  * Configuração de WebSocket + STOMP para colaboração em tempo real.
@@ -30,23 +41,85 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
  *
  * <p>Além disso, registramos um interceptor de handshake e um interceptor de canal
  * para garantir que o usuário autenticado seja associado à sessão STOMP.</p>
+ *
+ * <h2>Formato</h2>
+ * <p>JSON por padrão; CBOR/Smile quando negociado pelo cliente ({@link InstrumentoWireFormat}).</p>
+ *
+ * <h2>Broker</h2>
+ * <p>{@code app.websocket.broker.mode} (ver {@link WebSocketBrokerProperties}):
+ * <ul>
+ *   <li>SIMPLE (padrão): broker em memória; uma instância só.</li>
+ *   <li>RELAY: {@code /topic/**} e {@code /queue/**} vão para um broker STOMP externo, e cada
+ *       instância repassa às suas sessões o que o broker entrega. Destinos de usuário
+ *       ({@code /user/queue/**}) continuam funcionando entre instâncias: o registro de usuários é
+ *       compartilhado em {@value #USER_REGISTRY_BROADCAST} e mensagens para usuários sem sessão
+ *       local são reenviadas em {@value #USER_DESTINATION_BROADCAST}, para a instância que tem a sessão.</li>
+ *   <li>POSTGRES: broker em memória em cada instância; os broadcasts de {@code /topic/instrumentos/**}
+ *       são repassados entre elas por LISTEN/NOTIFY ({@code InstrumentoClusterBridge}). Destinos de
+ *       usuário ficam na instância da sessão (ACKs e erros respondem a quem enviou, que está nela).</li>
+ * </ul>
+ * </p>
+ *
+ * <h2>Dono da turma (RELAY e POSTGRES)</h2>
+ * <p>Presença, agrupamento de broadcasts e o cache de documentos quentes
+ * ({@code InstrumentoDocumentCache}) continuam por instância. A estratégia é um escritor por turma:
+ * o balanceador deve rotear por turma com afinidade (sticky), de modo que todas as sessões e
+ * requisições de uma turma caiam na mesma instância.</p>
+ *
+ * <p>Quando a afinidade falha (queda, rebalanceamento), nenhuma versão confirmada é descartada: cada
+ * gravação é avisada às outras instâncias ({@code InstrumentoClusterBridge}), uma cópia sem alterações
+ * pendentes que ficou para trás é relida do banco, e uma cópia com alterações pendentes é mesclada
+ * por slide sobre a versão gravada antes da próxima escrita. O resultado vai como snapshot a toda a
+ * turma. Se o mesmo slide foi alterado nas duas instâncias, prevalece o que já está no banco.</p>
+ *
+ * <h2>Cliente lento</h2>
+ * <p>Cada sessão tem uma fila de saída própria ({@link InstrumentoOutboundMailbox}): uma sessão
+ * atrasada recebe só o estado mais recente do tópico do documento, e é encerrada se ultrapassar
+ * os limites de {@code app.websocket.outbound} ({@link WebSocketOutboundProperties}).</p>
  */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    /** Tópico (modo RELAY) em que as instâncias trocam o registro de usuários/sessões. */
+    public static final String USER_REGISTRY_BROADCAST = "/topic/simp-user-registry";
+
+    /** Tópico (modo RELAY) para mensagens de usuário sem sessão na instância que publicou. */
+    public static final String USER_DESTINATION_BROADCAST = "/topic/unresolved-user-destination";
+
+    /**
+     * Cabeçalho que o Artemis acrescenta às mensagens entregues; reenviado, ele prevalece sobre o
+     * prefixo do destino no roteamento.
+     */
+    static final String BROKER_DESTINATION_TYPE_HEADER = "destination-type";
+
     private final JwtHandshakeInterceptor jwtHandshakeInterceptor;
     private final StompAuthChannelInterceptor stompAuthChannelInterceptor;
+    private final InstrumentoEchoFilter instrumentoEchoFilter;
+    private final InstrumentoWireFormat instrumentoWireFormat;
     private final AppCorsProperties corsProperties;
+    private final WebSocketBrokerProperties brokerProperties;
+    private final WebSocketOutboundProperties outboundProperties;
+    private final InstrumentoOutboundMailbox outboundMailbox;
 
     public WebSocketConfig(
             JwtHandshakeInterceptor jwtHandshakeInterceptor,
             StompAuthChannelInterceptor stompAuthChannelInterceptor,
-            AppCorsProperties corsProperties
+            InstrumentoEchoFilter instrumentoEchoFilter,
+            InstrumentoWireFormat instrumentoWireFormat,
+            AppCorsProperties corsProperties,
+            WebSocketBrokerProperties brokerProperties,
+            WebSocketOutboundProperties outboundProperties,
+            InstrumentoOutboundMailbox outboundMailbox
     ) {
         this.jwtHandshakeInterceptor = jwtHandshakeInterceptor;
         this.stompAuthChannelInterceptor = stompAuthChannelInterceptor;
+        this.instrumentoEchoFilter = instrumentoEchoFilter;
+        this.instrumentoWireFormat = instrumentoWireFormat;
         this.corsProperties = corsProperties;
+        this.brokerProperties = brokerProperties;
+        this.outboundProperties = outboundProperties;
+        this.outboundMailbox = outboundMailbox;
     }
 
     @Override
@@ -70,20 +143,92 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
+        configureBroker(registry, brokerProperties);
+    }
+
+    /**
+     * Prefixos e broker conforme {@code app.websocket.broker}. Estático para o teste do relay montar
+     * várias instâncias com exatamente esta configuração.
+     */
+    public static void configureBroker(MessageBrokerRegistry registry, WebSocketBrokerProperties broker) {
         // Mensagens enviadas pelo cliente para /app/** serão roteadas para @MessageMapping.
         registry.setApplicationDestinationPrefixes("/app");
 
-        // Broker simples em memória (suficiente para DEV e para esta fase).
-        // Se um dia escalar para múltiplas instâncias, migrar para broker externo (RabbitMQ/Redis).
-        registry.enableSimpleBroker("/topic", "/queue");
+        if (broker.isRelay()) {
+            // Broker externo: várias instâncias atrás do balanceador recebem os mesmos tópicos.
+            StompBrokerRelayRegistration relay = registry.enableStompBrokerRelay("/topic", "/queue")
+                .setRelayHost(broker.getRelayHost())
+                .setRelayPort(broker.getRelayPort())
+                .setClientLogin(broker.getClientLogin())
+                .setClientPasscode(broker.getClientPasscode())
+                .setSystemLogin(broker.getSystemLogin())
+                .setSystemPasscode(broker.getSystemPasscode())
+                .setSystemHeartbeatSendInterval(broker.getSystemHeartbeatSendInterval().toMillis())
+                .setSystemHeartbeatReceiveInterval(broker.getSystemHeartbeatReceiveInterval().toMillis())
+                // /user/queue/** resolvido em qualquer instância (ver javadoc da classe).
+                .setUserRegistryBroadcast(USER_REGISTRY_BROADCAST)
+                .setUserDestinationBroadcast(USER_DESTINATION_BROADCAST);
+            if (broker.getVirtualHost() != null && !broker.getVirtualHost().isBlank()) {
+                relay.setVirtualHost(broker.getVirtualHost());
+            }
+            configureRelayChannel(registry.configureBrokerChannel());
+        } else {
+            // Broker simples em memória (no modo POSTGRES, cada instância tem o seu e os tópicos são repassados).
+            registry.enableSimpleBroker("/topic", "/queue");
+        }
 
         // Prefixo padrão para destinos de usuário: /user/queue/**
         registry.setUserDestinationPrefix("/user");
     }
 
+    /**
+     * Canal para o broker no modo RELAY: mensagens de usuário recebidas em
+     * {@value #USER_DESTINATION_BROADCAST} são reenviadas para {@code /queue/...-user{sessão}} com os
+     * cabeçalhos da entrega original, inclusive o {@value #BROKER_DESTINATION_TYPE_HEADER}=MULTICAST
+     * do Artemis. Sem removê-lo, o Artemis roteia a fila como tópico e a mensagem se perde; o
+     * roteamento deve seguir só o prefixo.
+     */
+    private static void configureRelayChannel(ChannelRegistration registration) {
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                if (NativeMessageHeaderAccessor.getFirstNativeHeader(BROKER_DESTINATION_TYPE_HEADER, message.getHeaders()) == null) {
+                    return message;
+                }
+                SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+                accessor.removeNativeHeader(BROKER_DESTINATION_TYPE_HEADER);
+                return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+            }
+        });
+    }
+
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         // Intercepta mensagens STOMP vindas do cliente para associar Authentication à sessão.
-        registration.interceptors(stompAuthChannelInterceptor);
+        // O segundo guarda o formato pedido no CONNECT (accept: application/cbor | application/x-jackson-smile).
+        registration.interceptors(stompAuthChannelInterceptor, instrumentoWireFormat);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Descarta a cópia do broadcast destinada à sessão que originou a atualização (ela recebe só o ACK).
+        // Depois, recodifica em CBOR/Smile para as sessões que pediram formato binário.
+        registration.interceptors(instrumentoEchoFilter, instrumentoWireFormat);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Limites do decorator padrão do Spring; como o mailbox não bloqueia quem envia, ele é quem
+        // efetivamente os aplica (com latest-wins no tópico do documento).
+        registration.setSendTimeLimit((int) outboundProperties.getSendTimeLimit().toMillis())
+            .setSendBufferSizeLimit((int) outboundProperties.getSendBufferSizeLimit().toBytes())
+            .addDecoratorFactory(outboundMailbox);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Conversores binários só atendem content-type explícito; true mantém os padrões (JSON) depois deles.
+        messageConverters.addAll(instrumentoWireFormat.converters());
+        return true;
     }
 }
@@ -0,0 +1,84 @@
+package org.obeci.platform.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Limites de envio do servidor para cada sessão WebSocket (proteção contra cliente lento).
+ *
+ * <p>Bind do prefixo {@code app.websocket.outbound} (application*.yml).</p>
+ *
+ * <p>Dependências/relações:
+ * <ul>
+ *   <li>Consumido por {@link WebSocketConfig} e {@link InstrumentoOutboundMailbox}.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@ConfigurationProperties(prefix = "app.websocket.outbound")
+public class WebSocketOutboundProperties {
+
+    /** Um envio para a sessão demorando mais que isso (com mais mensagens esperando) encerra a sessão. */
+    private Duration sendTimeLimit = Duration.ofSeconds(15);
+
+    /** Frequência da verificação de envios travados (encerra a sessão mesmo sem frames novos chegando). */
+    private Duration sendTimeCheckInterval = Duration.ofSeconds(1);
+
+    /** Bytes esperando envio por sessão; acima disso a sessão é encerrada. */
+    private DataSize sendBufferSizeLimit = DataSize.ofMegabytes(4);
+
+    /**
+     * Sessão atrasada recebe só o estado mais recente de {@code /topic/instrumentos/{turmaId}}: um
+     * broadcast novo substitui o que ainda não saiu.
+     */
+    private boolean latestWins = true;
+
+    /**
+     * Threads de envio compartilhadas pelas sessões; sessões além disso esperam a vez (uma sessão
+     * travada ocupa uma thread até {@code send-time-limit}).
+     */
+    private int senderThreads = 64;
+
+    public Duration getSendTimeLimit() {
+        return sendTimeLimit;
+    }
+
+    public void setSendTimeLimit(Duration sendTimeLimit) {
+        this.sendTimeLimit = sendTimeLimit;
+    }
+
+    public Duration getSendTimeCheckInterval() {
+        return sendTimeCheckInterval;
+    }
+
+    public void setSendTimeCheckInterval(Duration sendTimeCheckInterval) {
+        this.sendTimeCheckInterval = sendTimeCheckInterval;
+    }
+
+    public DataSize getSendBufferSizeLimit() {
+        return sendBufferSizeLimit;
+    }
+
+    public void setSendBufferSizeLimit(DataSize sendBufferSizeLimit) {
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+    }
+
+    public boolean isLatestWins() {
+        return latestWins;
+    }
+
+    public void setLatestWins(boolean latestWins) {
+        this.latestWins = latestWins;
+    }
+
+    public int getSenderThreads() {
+        return senderThreads;
+    }
+
+    public void setSenderThreads(int senderThreads) {
+        this.senderThreads = senderThreads;
+    }
+}
@@ -1,6 +1,5 @@
 package org.obeci.platform.controllers;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import org.obeci.platform.entities.Instrumento;
 import org.obeci.platform.dtos.InstrumentoDto;
 import org.obeci.platform.entities.InstrumentoImage;
@@ -8,19 +7,35 @@ import org.obeci.platform.services.InstrumentoService;
 import org.obeci.platform.services.InstrumentoCollaborationService;
 import org.obeci.platform.services.InstrumentoAccessService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import org.obeci.platform.dtos.collab.InstrumentoChangeLogDailyDto;
 import org.obeci.platform.dtos.collab.InstrumentoChangeLogDto;
+import org.obeci.platform.dtos.collab.InstrumentoRevisionDto;
+import org.obeci.platform.configs.InstrumentoLongPollProperties;
+import org.obeci.platform.services.InstrumentoDocumentCache;
+import org.obeci.platform.services.InstrumentoVersionWatcher;
+import org.obeci.platform.services.InstrumentoHistoryService;
 
 @RestController
 @RequestMapping("/api/instrumentos")
@@ -32,6 +47,31 @@ import org.obeci.platform.dtos.collab.InstrumentoChangeLogDto;
  */
 public class InstrumentoController {
 
+    /**
+     * Representação só com o array de slides (id e versão vão nos headers), sem o envelope
+     * {@link InstrumentoDto}: permite enviar o gzip gravado no banco como está.
+     */
+    public static final String SLIDES_MEDIA_TYPE = "application/vnd.obeci.slides+json";
+
+    /**
+     * Representação {@link InstrumentoDto} com os slides como JSON aninhado (campo {@code slides}).
+     */
+    public static final String INSTRUMENTO_MEDIA_TYPE = "application/vnd.obeci.instrumento+json";
+
+    /** Sufixos do ETag por representação: cada uma tem bytes diferentes para a mesma versão. */
+    static final String SLIDES_REPRESENTATION = "slides";
+    static final String SLIDES_GZIP_REPRESENTATION = "slides-gzip";
+    static final String INLINE_REPRESENTATION = "inline";
+
+    /**
+     * Tipos {@code +json} ({@code application/vnd.obeci.slides+json} etc.): o {@code @RequestBody JsonNode}
+     * anterior os aceitava pelo conversor Jackson, e o POST/PUT continua aceitando.
+     */
+    private static final String JSON_SUFFIX_MEDIA_TYPE = "application/*+json";
+
+    public static final String INSTRUMENTO_ID_HEADER = "X-Instrumento-Id";
+    public static final String INSTRUMENTO_VERSION_HEADER = "X-Instrumento-Version";
+
     @Autowired
     private InstrumentoService instrumentoService;
 
@@ -39,55 +79,176 @@ public class InstrumentoController {
     private InstrumentoCollaborationService collaborationService;
     @Autowired
     private InstrumentoAccessService instrumentoAccessService;
+    @Autowired
+    private InstrumentoHistoryService historyService;
+    @Autowired
+    private InstrumentoVersionWatcher versionWatcher;
+    @Autowired
+    private InstrumentoLongPollProperties longPollProperties;
 
     @GetMapping("/turma/{turmaId}")
     /**
      * Busca instrumento da turma.
      *
-     * <p>Saída: {@link InstrumentoDto} contendo id, turmaId e JSON dos slides.</p>
+     * <p>Saída: {@link InstrumentoDto} contendo id, turmaId e JSON dos slides, com ETag forte
+     * derivado de id e versão ({@link #etagOf}). Com {@code If-None-Match} igual ao atual responde
+     * 304 sem ler o documento.</p>
      */
-    public ResponseEntity<InstrumentoDto> getByTurma(@PathVariable("turmaId") Long turmaId, Authentication authentication) {
+    public ResponseEntity<InstrumentoDto> getByTurma(
+            @PathVariable("turmaId") Long turmaId,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            Authentication authentication) {
         // Só ADMIN ou professor pertencente à turma podem acessar.
         instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+        Optional<ResponseEntity<InstrumentoDto>> notModified = notModified(turmaId, ifNoneMatch);
+        if (notModified.isPresent()) {
+            return notModified.get();
+        }
         Optional<Instrumento> inst = instrumentoService.getByTurmaId(turmaId);
         if (inst.isPresent()) {
             Instrumento i = inst.get();
-            return ResponseEntity.ok(new InstrumentoDto(i.getId(), i.getTurmaId(), i.getSlidesJson(), i.getVersion()));
+            return toResponse(i);
         }
         return ResponseEntity.notFound().build();
     }
 
-    @PostMapping("/turma/{turmaId}")
+    @GetMapping(value = "/turma/{turmaId}", params = "sinceVersion")
+    /**
+     * Long-poll: responde como {@link #getByTurma} assim que existir versão maior que {@code sinceVersion}.
+     *
+     * <p>Se a versão atual já é maior, responde na hora. Caso contrário a requisição fica estacionada
+     * (sem ocupar thread) até uma versão nova, ainda em memória, ou até {@code waitSeconds} (limitado por
+     * {@code app.instrumentos.long-poll.max-wait}), quando responde 304. Alternativa ao WebSocket
+     * para redes que o bloqueiam, sem baixar o documento a cada consulta.</p>
+     */
+    public DeferredResult<ResponseEntity<InstrumentoDto>> pollByTurma(
+            @PathVariable("turmaId") Long turmaId,
+            @RequestParam("sinceVersion") long sinceVersion,
+            @RequestParam(name = "waitSeconds", defaultValue = "30") long waitSeconds,
+            Authentication authentication) {
+        instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+        // Timeout 0 no DeferredResult significaria "sem limite": espera mínima de 1s.
+        long timeoutMillis = Math.max(Math.min(waitSeconds * 1000, longPollProperties.getMaxWait().toMillis()), 1000);
+        DeferredResult<ResponseEntity<InstrumentoDto>> result =
+                new DeferredResult<>(timeoutMillis, ResponseEntity.status(HttpStatus.NOT_MODIFIED).build());
+
+        Optional<CompletableFuture<Long>> waiting = versionWatcher.await(turmaId, sinceVersion);
+        if (waiting.isEmpty()) {
+            result.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build());
+            return result;
+        }
+        CompletableFuture<Long> changed = waiting.get();
+        result.onCompletion(() -> versionWatcher.cancel(turmaId, changed));
+        // Quem completa a future é a escrita (sob o lock do documento) ou o flush: a leitura vai para outra thread.
+        changed.thenRunAsync(() -> result.setResult(currentResponse(turmaId)), versionWatcher.responder());
+
+        // Registrado antes de conferir: uma gravação entre as duas coisas não é perdida.
+        Optional<InstrumentoDocumentCache.DocumentHead> head = instrumentoService.getHeadByTurmaId(turmaId);
+        if (head.isEmpty() || head.get().version() > sinceVersion) {
+            versionWatcher.cancel(turmaId, changed);
+            result.setResult(currentResponse(turmaId));
+        }
+        return result;
+    }
+
+    @GetMapping(value = "/turma/{turmaId}", produces = SLIDES_MEDIA_TYPE)
+    /**
+     * Busca os slides da turma na representação {@link #SLIDES_MEDIA_TYPE} ({@code Accept}).
+     *
+     * <p>Se o cliente aceita gzip e o documento está gravado comprimido (e não está em edição),
+     * os bytes da coluna {@code slides_gzip} são enviados sem descomprimir, com
+     * {@code Content-Encoding: gzip}. Caso contrário, o JSON sai sem compressão. Cada forma tem o
+     * seu ETag ({@link #SLIDES_REPRESENTATION}, {@link #SLIDES_GZIP_REPRESENTATION}).</p>
+     */
+    public ResponseEntity<Resource> getSlidesByTurma(
+            @PathVariable("turmaId") Long turmaId,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            Authentication authentication) throws IOException {
+        instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+        boolean gzip = acceptsGzip(acceptEncoding);
+        // Qualquer das duas formas serve ao cliente que aceita gzip: a que ele já tem evita o corpo.
+        Optional<ResponseEntity<Resource>> notModified = gzip
+                ? notModified(turmaId, ifNoneMatch, SLIDES_GZIP_REPRESENTATION, SLIDES_REPRESENTATION)
+                : notModified(turmaId, ifNoneMatch, SLIDES_REPRESENTATION);
+        if (notModified.isPresent()) {
+            return notModified.get();
+        }
+        Optional<InstrumentoDocumentCache.RawDocument> raw = instrumentoService.getRawByTurmaId(turmaId);
+        if (raw.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        InstrumentoDocumentCache.RawDocument d = raw.get();
+        if (d.gzip() != null && gzip) {
+            return slidesResponse(d.id(), d.version(), SLIDES_GZIP_REPRESENTATION)
+                    .contentType(MediaType.parseMediaType(SLIDES_MEDIA_TYPE))
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(new ByteArrayResource(d.gzip()));
+        }
+        return slidesResponse(d.id(), d.version(), SLIDES_REPRESENTATION)
+                .contentType(MediaType.parseMediaType(SLIDES_MEDIA_TYPE))
+                .body(new InputStreamResource(d.openSlides()));
+    }
+
+    @GetMapping(value = "/turma/{turmaId}", produces = INSTRUMENTO_MEDIA_TYPE)
+    /**
+     * Busca instrumento da turma com os slides como JSON aninhado ({@code "slides": [...]}), em vez da
+     * string escapada de {@link InstrumentoDto#getSlidesJson()}. Selecionado por
+     * {@code Accept: application/vnd.obeci.instrumento+json} ou {@code ?slides=inline}.
+     *
+     * <p>O corpo é copiado em streaming do documento armazenado (texto ou gzip descomprimido sob
+     * demanda), sem montar árvore JSON no servidor; o cliente faz um único parse.</p>
+     */
+    public ResponseEntity<Resource> getInlineByTurma(
+            @PathVariable("turmaId") Long turmaId,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            Authentication authentication) throws IOException {
+        return inlineResponse(turmaId, ifNoneMatch, authentication, MediaType.parseMediaType(INSTRUMENTO_MEDIA_TYPE));
+    }
+
+    @GetMapping(value = "/turma/{turmaId}", params = "slides=inline")
+    /**
+     * Igual a {@link #getInlineByTurma}, para clientes que não controlam o {@code Accept}.
+     */
+    public ResponseEntity<Resource> getInlineByTurmaParam(
+            @PathVariable("turmaId") Long turmaId,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            Authentication authentication) throws IOException {
+        return inlineResponse(turmaId, ifNoneMatch, authentication, MediaType.APPLICATION_JSON);
+    }
+
+    @PostMapping(value = "/turma/{turmaId}", consumes = {MediaType.APPLICATION_JSON_VALUE, JSON_SUFFIX_MEDIA_TYPE})
     /**
      * Cria ou substitui o JSON de slides do instrumento associado à turma.
      *
-     * <p>Entrada: body JSON arbitrário (Jackson {@link JsonNode}).</p>
+     * <p>Entrada: body JSON (array de slides), lido em streaming e validado
+     * ({@code app.instrumentos.ingest.*}; fora dos limites: 400).</p>
      * <p>Saída: {@link InstrumentoDto} salvo.</p>
      */
-    public ResponseEntity<InstrumentoDto> createOrReplace(@PathVariable("turmaId") Long turmaId, @RequestBody JsonNode slides, Authentication authentication) throws IOException {
+    public ResponseEntity<InstrumentoDto> createOrReplace(@PathVariable("turmaId") Long turmaId, InputStream body, Authentication authentication) throws IOException {
         instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
-        if (instrumentoService.getByTurmaId(turmaId).isEmpty()) {
+        if (instrumentoService.findIdByTurmaId(turmaId).isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        Instrumento saved = instrumentoService.saveSlides(turmaId, slides);
-        return ResponseEntity.ok(new InstrumentoDto(saved.getId(), saved.getTurmaId(), saved.getSlidesJson(), saved.getVersion()));
+        Instrumento saved = instrumentoService.saveSlides(turmaId, body);
+        return toResponse(saved);
     }
 
-    @PutMapping("/turma/{turmaId}")
+    @PutMapping(value = "/turma/{turmaId}", consumes = {MediaType.APPLICATION_JSON_VALUE, JSON_SUFFIX_MEDIA_TYPE})
     /**
         * Regra:
         * - Para acessar um instrumento, ele deve existir previamente.
         * - O instrumento é criado no fluxo de criação de turma.
      *
-     * <p>Entrada: body JSON arbitrário (Jackson {@link JsonNode}).</p>
+     * <p>Entrada: body JSON (array de slides), lido em streaming como no POST.</p>
      */
-    public ResponseEntity<InstrumentoDto> update(@PathVariable("turmaId") Long turmaId, @RequestBody JsonNode slides, Authentication authentication) throws IOException {
+    public ResponseEntity<InstrumentoDto> update(@PathVariable("turmaId") Long turmaId, InputStream body, Authentication authentication) throws IOException {
         instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
-        if (instrumentoService.getByTurmaId(turmaId).isEmpty()) {
+        if (instrumentoService.findIdByTurmaId(turmaId).isEmpty()) {
             return ResponseEntity.notFound().build();
         }
-        Instrumento saved = instrumentoService.saveSlides(turmaId, slides);
-        return ResponseEntity.ok(new InstrumentoDto(saved.getId(), saved.getTurmaId(), saved.getSlidesJson(), saved.getVersion()));
+        Instrumento saved = instrumentoService.saveSlides(turmaId, body);
+        return toResponse(saved);
     }
 
     // Upload de imagem, retorna id e url
@@ -134,4 +295,211 @@ public class InstrumentoController {
         instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
         return ResponseEntity.ok(collaborationService.getRecentChanges(turmaId, limit));
     }
+
+    @GetMapping("/turma/{turmaId}/changes/daily")
+    /**
+     * Retorna os resumos diários (por ator e tipo) das alterações antigas, já compactadas pela retenção.
+     */
+        public ResponseEntity<List<InstrumentoChangeLogDailyDto>> getDailyChanges(
+            @PathVariable("turmaId") Long turmaId,
+            @RequestParam(name = "limit", defaultValue = "100") int limit,
+            Authentication authentication) {
+        instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+        return ResponseEntity.ok(collaborationService.getDailySummaries(turmaId, limit));
+    }
+
+    @GetMapping("/turma/{turmaId}/history")
+    /**
+     * Lista as versões gravadas do instrumento (histórico), mais recentes primeiro.
+     */
+    public ResponseEntity<List<InstrumentoRevisionDto>> getHistory(
+            @PathVariable("turmaId") Long turmaId,
+            @RequestParam(name = "limit", defaultValue = "50") int limit,
+            Authentication authentication) {
+        instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+        Optional<Long> instrumentoId = instrumentoService.findIdByTurmaId(turmaId);
+        if (instrumentoId.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(collaborationService.getRevisions(instrumentoId.get(), limit));
+    }
+
+    @GetMapping("/turma/{turmaId}/history/{version}")
+    /**
+     * Reconstrói uma versão do histórico (checkpoint mais próximo + deltas), sem alterar o documento atual.
+     */
+    public ResponseEntity<InstrumentoDto> getHistoryVersion(
+            @PathVariable("turmaId") Long turmaId,
+            @PathVariable("version") Long version,
+            Authentication authentication) {
+        instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+        Optional<Long> instrumentoId = instrumentoService.findIdByTurmaId(turmaId);
+        Optional<InstrumentoHistoryService.Materialized> revision =
+                instrumentoId.flatMap(id -> historyService.materialize(id, version));
+        if (revision.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        Instrumento i = new Instrumento();
+        i.setId(instrumentoId.get());
+        i.setTurmaId(turmaId);
+        i.setSlidesJson(revision.get().slides().toString());
+        i.setContentHash(revision.get().contentHash());
+        i.setVersion(revision.get().version());
+        return toResponse(i);
+    }
+
+    @PostMapping("/turma/{turmaId}/history/{version}/restore")
+    /**
+     * Restaura uma versão do histórico: o conteúdo dela vira uma nova versão do documento
+     * (os participantes conectados recebem o snapshot normalmente).
+     */
+    public ResponseEntity<InstrumentoDto> restoreVersion(
+            @PathVariable("turmaId") Long turmaId,
+            @PathVariable("version") Long version,
+            Authentication authentication) {
+        instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+        Optional<Long> instrumentoId = instrumentoService.findIdByTurmaId(turmaId);
+        if (instrumentoId.isEmpty()
+                || collaborationService.restoreVersion(instrumentoId.get(), turmaId, version, authentication.getName()).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return instrumentoService.getByTurmaId(turmaId)
+                .map(InstrumentoController::toResponse)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Envelope {@code {"id":..,"turmaId":..,"version":..,"slides":<documento>}} montado por concatenação:
+     * os campos são números, e o documento armazenado já é um JSON válido.
+     */
+    private ResponseEntity<Resource> inlineResponse(Long turmaId, String ifNoneMatch, Authentication authentication,
+                                                    MediaType contentType) throws IOException {
+        instrumentoAccessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+        Optional<ResponseEntity<Resource>> notModified = notModified(turmaId, ifNoneMatch, INLINE_REPRESENTATION);
+        if (notModified.isPresent()) {
+            return notModified.get();
+        }
+        Optional<InstrumentoDocumentCache.RawDocument> raw = instrumentoService.getRawByTurmaId(turmaId);
+        if (raw.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        InstrumentoDocumentCache.RawDocument d = raw.get();
+        String head = "{\"id\":" + d.id() + ",\"turmaId\":" + d.turmaId()
+                + ",\"version\":" + (d.version() == null ? 0L : d.version()) + ",\"slides\":";
+        InputStream body = new SequenceInputStream(Collections.enumeration(List.of(
+                new ByteArrayInputStream(head.getBytes(StandardCharsets.UTF_8)),
+                d.openSlides(),
+                new ByteArrayInputStream(new byte[]{'}'}))));
+        return slidesResponse(d.id(), d.version(), INLINE_REPRESENTATION)
+                .contentType(contentType)
+                .body(new InputStreamResource(body));
+    }
+
+    private static ResponseEntity.BodyBuilder slidesResponse(Long id, Long version, String representation) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .header(INSTRUMENTO_ID_HEADER, String.valueOf(id))
+                .header(INSTRUMENTO_VERSION_HEADER, String.valueOf(version == null ? 0L : version));
+        return builder.eTag(etagOf(id, version, representation));
+    }
+
+    private ResponseEntity<InstrumentoDto> currentResponse(Long turmaId) {
+        return instrumentoService.getByTurmaId(turmaId)
+                .map(InstrumentoController::toResponse)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * 304 se {@code If-None-Match} já corresponde à versão atual em uma das representações
+     * aceitáveis (sem sufixo = {@link InstrumentoDto}), conferido sem ler o documento. O 304 leva o
+     * ETag que casou.
+     */
+    private <T> Optional<ResponseEntity<T>> notModified(Long turmaId, String ifNoneMatch, String... representations) {
+        if (ifNoneMatch == null) {
+            return Optional.empty();
+        }
+        Optional<InstrumentoDocumentCache.DocumentHead> head = instrumentoService.getHeadByTurmaId(turmaId);
+        if (head.isEmpty()) {
+            return Optional.empty();
+        }
+        String[] candidates = representations.length == 0 ? new String[]{null} : representations;
+        for (String representation : candidates) {
+            String etag = etagOf(head.get().id(), head.get().version(), representation);
+            if (matchesIfNoneMatch(ifNoneMatch, etag)) {
+                return Optional.of(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                        .eTag(etag)
+                        .<T>build());
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * ETag forte do documento: id e versão. Não usa o hash do conteúdo: o corpo também leva a
+     * versão (e o id), então duas versões com os mesmos slides não são a mesma representação.
+     *
+     * @param representation sufixo da representação/codificação (bytes diferentes, ETag diferente); null para {@link InstrumentoDto}
+     */
+    private static String etagOf(Long id, Long version, String representation) {
+        String etag = id + "-v" + (version == null ? 0L : version);
+        return representation == null ? etag : etag + "-" + representation;
+    }
+
+    private static boolean matchesIfNoneMatch(String ifNoneMatch, String etag) {
+        String quoted = "\"" + etag + "\"";
+        for (String part : ifNoneMatch.split(",")) {
+            String tag = part.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(quoted)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * true se {@code Accept-Encoding} aceita gzip (explicitamente ou via {@code *}) com q maior que 0.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.trim().split(";");
+            String coding = params[0].trim();
+            if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) {
+                continue;
+            }
+            boolean refused = false;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim().replace(" ", "");
+                if (param.startsWith("q=")) {
+                    try {
+                        refused = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        refused = true;
+                    }
+                }
+            }
+            if (!refused) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Monta a resposta do instrumento com o ETag do documento ({@link #etagOf}).
+     *
+     * <p>{@code Vary: Accept}: a mesma URL também serve {@link #SLIDES_MEDIA_TYPE} e {@link #INSTRUMENTO_MEDIA_TYPE}.</p>
+     */
+    private static ResponseEntity<InstrumentoDto> toResponse(Instrumento i) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                .eTag(etagOf(i.getId(), i.getVersion(), null))
+                .body(new InstrumentoDto(i.getId(), i.getTurmaId(), i.getSlidesJson(), i.getVersion()));
+    }
 }
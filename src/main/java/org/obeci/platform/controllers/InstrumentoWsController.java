@@ -1,29 +1,52 @@
 package org.obeci.platform.controllers;
 
 import jakarta.persistence.OptimisticLockException;
-import org.obeci.platform.dtos.collab.InstrumentoWsUpdateBroadcast;
+import org.obeci.platform.dtos.collab.InstrumentoWsPatchRequest;
+import org.obeci.platform.dtos.collab.InstrumentoWsPresenceRequest;
+import org.obeci.platform.dtos.collab.InstrumentoWsSyncRequest;
 import org.obeci.platform.dtos.collab.InstrumentoWsUpdateRequest;
+import org.obeci.platform.exceptions.InvalidDocumentException;
+import org.obeci.platform.exceptions.InvalidPatchException;
 import org.obeci.platform.services.InstrumentoCollaborationService;
-import org.obeci.platform.services.InstrumentoAccessService;
+import org.obeci.platform.services.InstrumentoPresenceService;
+import org.obeci.platform.services.InstrumentoSessionAccessCache;
+import org.obeci.platform.services.InstrumentoUpdateDispatcher;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
 import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Controller de mensagens WebSocket (STOMP) para colaboração do Instrumento.
  *
  * <h2>Destinos</h2>
  * <ul>
- *   <li>Cliente envia update para: <b>/app/instrumentos/update</b></li>
- *   <li>Servidor faz broadcast do estado para: <b>/topic/instrumentos/{turmaId}</b></li>
+ *   <li>Cliente envia update (snapshot) para: <b>/app/instrumentos/update</b></li>
+ *   <li>Cliente envia delta (JSON Patch) para: <b>/app/instrumentos/patch</b></li>
+ *   <li>Cliente envia presença/cursor (efêmero) para: <b>/app/instrumentos/presence</b>;
+ *       roster e cursores saem em <b>/topic/instrumentos/{turmaId}/presence</b></li>
+ *   <li>Servidor faz broadcast do estado para: <b>/topic/instrumentos/{turmaId}</b>
+ *       (agrupado por turma em uma janela curta; a sessão autora não recebe o próprio eco)</li>
+ *   <li>Servidor confirma cada update ao autor em: <b>/user/queue/instrumentos/acks</b></li>
+ *   <li>Cliente pede catch-up ao (re)conectar em: <b>/app/instrumentos/sync</b>; resposta em
+ *       <b>/user/queue/instrumentos/sync</b></li>
  *   <li>Servidor envia erros para: <b>/user/queue/instrumentos/errors</b></li>
  * </ul>
  *
+ * <h2>Ordenação</h2>
+ * <p>Updates são aplicados fora da thread inbound, por {@link InstrumentoUpdateDispatcher}
+ * (uma fila ordenada por turma). Erros da aplicação chegam de forma assíncrona em
+ * /user/queue/instrumentos/errors, só para a sessão que enviou a mensagem.</p>
+ *
  * <h2>Segurança</h2>
  * <p>Este endpoint depende do usuário autenticado associado à sessão STOMP.
  * Se {@link Principal} for null, respondemos erro e não aplicamos alterações.</p>
@@ -33,72 +56,220 @@ public class InstrumentoWsController {
 
     private final InstrumentoCollaborationService collaborationService;
     private final SimpMessagingTemplate messagingTemplate;
-    private final InstrumentoAccessService instrumentoAccessService;
+    private final InstrumentoSessionAccessCache accessCache;
+    private final InstrumentoUpdateDispatcher updateDispatcher;
+    private final InstrumentoPresenceService presenceService;
 
     public InstrumentoWsController(
             InstrumentoCollaborationService collaborationService,
             SimpMessagingTemplate messagingTemplate,
-            InstrumentoAccessService instrumentoAccessService
+            InstrumentoSessionAccessCache accessCache,
+            InstrumentoUpdateDispatcher updateDispatcher,
+            InstrumentoPresenceService presenceService
     ) {
         this.collaborationService = collaborationService;
         this.messagingTemplate = messagingTemplate;
-        this.instrumentoAccessService = instrumentoAccessService;
+        this.accessCache = accessCache;
+        this.updateDispatcher = updateDispatcher;
+        this.presenceService = presenceService;
     }
 
     @MessageMapping("/instrumentos/update")
-    public void updateInstrumento(InstrumentoWsUpdateRequest req, Authentication authentication) {
-        if (authentication == null || authentication.getName() == null) {
-            // Sem user na sessão STOMP -> não permitir update.
-            messagingTemplate.convertAndSendToUser(
-                    "anonymous",
-                    "/queue/instrumentos/errors",
-                    new WsError("UNAUTHENTICATED", "Sessão não autenticada", null, req == null ? null : req.getClientId())
-            );
+    public void updateInstrumento(
+            InstrumentoWsUpdateRequest req,
+            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+            Authentication authentication
+    ) {
+        if (!authorize(req == null ? null : req.getTurmaId(), req == null ? null : req.getClientId(), sessionId, authentication)) {
             return;
         }
 
-        // Só ADMIN ou professor pertencente à turma pode publicar updates.
-        if (req != null) {
+        String actor = authentication.getName();
+
+        // Aplicação ordenada por turma (single-writer); esta thread só enfileira.
+        dispatch(req.getTurmaId(), req.getClientId(), actor, sessionId, () -> {
             try {
-                instrumentoAccessService.assertCanAccessTurmaInstrumento(req.getTurmaId(), authentication);
+                collaborationService.applySnapshotUpdate(
+                        req.getTurmaId(),
+                        req.getSlides(),
+                        req.getExpectedVersion(),
+                        actor,
+                        req.getClientId(),
+                        sessionId,
+                        req.getEventType(),
+                        req.getSummary()
+                );
+
+                // Nada a retornar: o broadcast já foi enviado para /topic (exceto para esta sessão, que recebe o ACK).
+            } catch (OptimisticLockException e) {
+                // Conflito de versão: o cliente precisa ressincronizar.
+                sendError(actor, sessionId, new WsError("VERSION_CONFLICT", e.getMessage(), req.getTurmaId(), req.getClientId()));
+            } catch (InvalidDocumentException e) {
+                // Mesmos limites do REST (app.instrumentos.ingest).
+                sendError(actor, sessionId, new WsError("INVALID_DOCUMENT", e.getMessage(), req.getTurmaId(), req.getClientId()));
             } catch (Exception e) {
-                messagingTemplate.convertAndSendToUser(
-                        authentication.getName(),
-                        "/queue/instrumentos/errors",
-                        new WsError("FORBIDDEN", "Sem permissão para acessar este instrumento", req.getTurmaId(), req.getClientId())
+                sendError(actor, sessionId, new WsError("UPDATE_FAILED", e.getMessage(), req.getTurmaId(), req.getClientId()));
+            }
+        });
+    }
+
+    /**
+     * Recebe um delta (JSON Patch) do documento.
+     *
+     * <p>Em caso de conflito de versão ou patch inválido, o cliente deve ressincronizar
+     * carregando o snapshot (REST) e voltar a enviar deltas a partir da nova versão.</p>
+     */
+    @MessageMapping("/instrumentos/patch")
+    public void patchInstrumento(
+            InstrumentoWsPatchRequest req,
+            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+            Authentication authentication
+    ) {
+        if (!authorize(req == null ? null : req.getTurmaId(), req == null ? null : req.getClientId(), sessionId, authentication)) {
+            return;
+        }
+
+        String actor = authentication.getName();
+
+        dispatch(req.getTurmaId(), req.getClientId(), actor, sessionId, () -> {
+            try {
+                collaborationService.applyPatchUpdate(
+                        req.getTurmaId(),
+                        req.getOps(),
+                        req.getExpectedVersion(),
+                        actor,
+                        req.getClientId(),
+                        sessionId,
+                        req.getEventType(),
+                        req.getSummary()
                 );
-                return;
+            } catch (OptimisticLockException e) {
+                sendError(actor, sessionId, new WsError("VERSION_CONFLICT", e.getMessage(), req.getTurmaId(), req.getClientId()));
+            } catch (InvalidPatchException e) {
+                sendError(actor, sessionId, new WsError("INVALID_PATCH", e.getMessage(), req.getTurmaId(), req.getClientId()));
+            } catch (InvalidDocumentException e) {
+                sendError(actor, sessionId, new WsError("INVALID_DOCUMENT", e.getMessage(), req.getTurmaId(), req.getClientId()));
+            } catch (Exception e) {
+                sendError(actor, sessionId, new WsError("UPDATE_FAILED", e.getMessage(), req.getTurmaId(), req.getClientId()));
             }
+        });
+    }
+
+    /**
+     * Catch-up ao (re)assinar a turma: devolve só o que o cliente perdeu desde {@code lastVersion}
+     * (ou o snapshot, se a lacuna for grande), evitando recarregar o documento pelo REST.
+     *
+     * <p>Passa pela lane da turma para responder depois das atualizações já enfileiradas. Broadcasts
+     * do tópico com {@code version} menor ou igual à da resposta devem ser ignorados pelo cliente.</p>
+     */
+    @MessageMapping("/instrumentos/sync")
+    public void sync(
+            InstrumentoWsSyncRequest req,
+            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+            Authentication authentication
+    ) {
+        if (!authorize(req == null ? null : req.getTurmaId(), req == null ? null : req.getClientId(), sessionId, authentication)) {
+            return;
         }
 
         String actor = authentication.getName();
 
+        dispatch(req.getTurmaId(), req.getClientId(), actor, sessionId, () -> {
+            try {
+                // Só para a sessão que pediu (outras abas do mesmo usuário têm o próprio estado).
+                messagingTemplate.convertAndSendToUser(actor, "/queue/instrumentos/sync",
+                        collaborationService.sync(req.getTurmaId(), req.getLastVersion(), req.getClientId()),
+                        sessionHeaders(sessionId));
+            } catch (Exception e) {
+                sendError(actor, sessionId, new WsError("SYNC_FAILED", e.getMessage(), req.getTurmaId(), req.getClientId()));
+            }
+        });
+    }
+
+    /**
+     * Recebe slide/cursor do usuário (também vale como heartbeat de presença).
+     *
+     * <p>Caminho leve: não passa pelo dispatcher nem pelo banco. A permissão na turma já foi
+     * verificada no SUBSCRIBE de {@code /topic/instrumentos/{turmaId}/presence}; mensagens de
+     * sessões que não assinam esse tópico são recusadas com NOT_SUBSCRIBED.</p>
+     */
+    @MessageMapping("/instrumentos/presence")
+    public void presence(
+            InstrumentoWsPresenceRequest req,
+            @Header(SimpMessageHeaderAccessor.SESSION_ID_HEADER) String sessionId,
+            Authentication authentication
+    ) {
+        if (authentication == null || authentication.getName() == null || req == null || req.getTurmaId() == null) {
+            return;
+        }
+        if (!presenceService.update(sessionId, authentication.getName(), req)) {
+            sendError(authentication.getName(), sessionId, new WsError("NOT_SUBSCRIBED",
+                    "Assine /topic/instrumentos/" + req.getTurmaId() + "/presence antes de enviar presença",
+                    req.getTurmaId(), req.getClientId()));
+        }
+    }
+
+    /**
+     * Enfileira a atualização na lane da turma; se a fila estiver cheia, responde OVERLOADED.
+     *
+     * <p>OVERLOADED substitui o antigo ciclo conflito → refetch → retry: o cliente deve esperar
+     * e enviar apenas o estado mais recente.</p>
+     */
+    private void dispatch(Long turmaId, String clientId, String actor, String sessionId, Runnable update) {
+        try {
+            updateDispatcher.dispatch(turmaId, update);
+        } catch (RejectedExecutionException e) {
+            sendError(actor, sessionId, new WsError("OVERLOADED", "Muitas atualizações pendentes para esta turma; tente novamente em instantes", turmaId, clientId));
+        }
+    }
+
+    /**
+     * Valida sessão autenticada e permissão na turma antes de aplicar qualquer alteração.
+     *
+     * <p>A permissão é verificada no banco uma vez por sessão e turma ({@link InstrumentoSessionAccessCache});
+     * as mensagens seguintes usam o resultado até a expiração ou a remoção do professor da turma.</p>
+     *
+     * @return true se a mensagem pode ser processada; caso contrário o erro já foi enviado ao usuário
+     */
+    private boolean authorize(Long turmaId, String clientId, String sessionId, Authentication authentication) {
+        if (authentication == null || authentication.getName() == null) {
+            // Sem user na sessão STOMP -> não permitir update.
+            sendError("anonymous", sessionId, new WsError("UNAUTHENTICATED", "Sessão não autenticada", null, clientId));
+            return false;
+        }
+
+        // Só ADMIN ou professor pertencente à turma pode publicar updates.
         try {
-            InstrumentoWsUpdateBroadcast broadcast = collaborationService.applySnapshotUpdate(
-                    req.getTurmaId(),
-                    req.getSlides(),
-                    req.getExpectedVersion(),
-                    actor,
-                    req.getClientId(),
-                    req.getEventType(),
-                    req.getSummary()
-            );
-
-            // Nada a retornar: o broadcast já foi enviado para /topic.
-        } catch (OptimisticLockException e) {
-            // Conflito de versão: o cliente precisa ressincronizar.
-            messagingTemplate.convertAndSendToUser(
-                    actor,
-                    "/queue/instrumentos/errors",
-                    new WsError("VERSION_CONFLICT", e.getMessage(), req.getTurmaId(), req.getClientId())
-            );
+            accessCache.assertCanAccess(sessionId, turmaId, authentication);
         } catch (Exception e) {
-            messagingTemplate.convertAndSendToUser(
-                    actor,
-                    "/queue/instrumentos/errors",
-                    new WsError("UPDATE_FAILED", e.getMessage(), req.getTurmaId(), req.getClientId())
-            );
+            sendError(authentication.getName(), sessionId, new WsError("FORBIDDEN", "Sem permissão para acessar este instrumento", turmaId, clientId));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Envia o erro só para a sessão que originou a mensagem: outra aba do mesmo usuário não deve
+     * ressincronizar por um conflito que não é dela.
+     *
+     * @param sessionId sessão STOMP de origem; null = todas as sessões do usuário
+     */
+    private void sendError(String user, String sessionId, WsError error) {
+        if (sessionId == null) {
+            messagingTemplate.convertAndSendToUser(user, "/queue/instrumentos/errors", error);
+            return;
         }
+        messagingTemplate.convertAndSendToUser(user, "/queue/instrumentos/errors", error, sessionHeaders(sessionId));
+    }
+
+    /**
+     * Cabeçalhos que restringem um envio a {@code /user/**} à sessão informada.
+     */
+    private static Map<String, Object> sessionHeaders(String sessionId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        return headers.getMessageHeaders();
     }
 
     /**
@@ -113,14 +284,14 @@ public class InstrumentoWsController {
     }
 
     @MessageExceptionHandler
-    public void handleException(Exception e, Principal principal) {
+    public void handleException(
+            Exception e,
+            Principal principal,
+            @Header(value = SimpMessageHeaderAccessor.SESSION_ID_HEADER, required = false) String sessionId
+    ) {
         if (principal == null || principal.getName() == null) {
             return;
         }
-        messagingTemplate.convertAndSendToUser(
-                principal.getName(),
-                "/queue/instrumentos/errors",
-                new WsError("UNHANDLED", e.getMessage(), null, null)
-        );
+        sendError(principal.getName(), sessionId, new WsError("UNHANDLED", e.getMessage(), null, null));
     }
 }
@@ -7,6 +7,10 @@ import lombok.Data;
  * DTO de transporte do instrumento associado a uma turma.
  *
  * <p>Usado nos endpoints de {@code /api/instrumentos/*} para retornar o JSON dos slides.</p>
+ *
+ * <p>{@code slidesJson} vai como string (JSON escapado). Para decks grandes, o GET da turma também
+ * aceita {@code ?slides=inline} / {@code Accept: application/vnd.obeci.instrumento+json}, com os
+ * mesmos campos e os slides aninhados em {@code slides}.</p>
  */
 @Data
 @AllArgsConstructor
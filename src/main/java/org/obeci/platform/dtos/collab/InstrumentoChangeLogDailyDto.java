@@ -0,0 +1,23 @@
+package org.obeci.platform.dtos.collab;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * DTO de leitura do resumo diário do log de alterações (entradas antigas já compactadas).
+ */
+@Data
+@AllArgsConstructor
+public class InstrumentoChangeLogDailyDto {
+    private Long turmaId;
+    private LocalDate day;
+    private String actor;
+    private String eventType;
+    /** Edições representadas no dia (mesmo ator e tipo). */
+    private Long eventCount;
+    private LocalDateTime firstAt;
+    private LocalDateTime lastAt;
+}
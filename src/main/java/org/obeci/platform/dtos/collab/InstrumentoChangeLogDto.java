@@ -13,12 +13,20 @@ import java.time.LocalDateTime;
 @Data
 @AllArgsConstructor
 public class InstrumentoChangeLogDto {
+    /** Id no banco; null em entradas publicadas em tempo real antes da gravação assíncrona. */
     private Long id;
+    /** Identificador estável da entrada (use este para deduplicar REST x tempo real). */
+    private String entryKey;
     private Long instrumentoId;
     private Long turmaId;
     private String actor;
     private String eventType;
     private String summary;
     private String payloadJson;
+    /** Primeira edição agregada nesta entrada. */
     private LocalDateTime createdAt;
+    /** Quantidade de edições consecutivas agregadas (mesmo ator, turma e tipo). */
+    private Integer eventCount;
+    /** Última edição agregada nesta entrada. */
+    private LocalDateTime lastAt;
 }
@@ -0,0 +1,21 @@
+package org.obeci.platform.dtos.collab;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * DTO de leitura de uma versão do histórico do instrumento (sem o conteúdo).
+ */
+@Data
+@AllArgsConstructor
+public class InstrumentoRevisionDto {
+    private Long version;
+    /** CHECKPOINT (documento inteiro) ou DELTA (diferença sobre a versão anterior). */
+    private String kind;
+    private String contentHash;
+    /** Tamanho armazenado, antes da compressão. */
+    private Integer sizeBytes;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,33 @@
+package org.obeci.platform.dtos.collab;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aviso enviado em {@code /user/queue/instrumentos/errors} à sessão que perdeu acesso à turma.
+ *
+ * <p>Mesmo formato dos demais erros ({@code code}, {@code message}, {@code turmaId}, {@code at}),
+ * com {@code code = ACCESS_REVOKED}. Quando ele chega, as assinaturas da sessão em
+ * {@code /topic/instrumentos/{turmaId}/**} já foram canceladas pelo servidor; o front deve
+ * fechar o editor.</p>
+ */
+@Data
+@AllArgsConstructor
+public class InstrumentoWsAccessRevoked {
+
+    public static final String CODE = "ACCESS_REVOKED";
+
+    private String code;
+
+    private String message;
+
+    private Long turmaId;
+
+    private LocalDateTime at;
+
+    public InstrumentoWsAccessRevoked(Long turmaId) {
+        this(CODE, "Acesso a este instrumento foi removido", turmaId, LocalDateTime.now());
+    }
+}
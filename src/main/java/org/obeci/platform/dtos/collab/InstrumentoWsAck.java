@@ -0,0 +1,40 @@
+package org.obeci.platform.dtos.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Confirmação individual enviada ao autor de uma atualização em
+ * {@code /user/queue/instrumentos/acks}.
+ *
+ * <p>Com o agrupamento de broadcasts, o eco da própria mensagem no tópico da turma pode
+ * chegar atrasado ou já fundido com a de outro cliente; o ACK é o sinal confiável de que
+ * o "save" foi aplicado e em qual versão.</p>
+ */
+@Data
+@AllArgsConstructor
+public class InstrumentoWsAck {
+
+    private Long turmaId;
+
+    /** clientId informado na requisição confirmada. */
+    private String clientId;
+
+    /** Versão do documento após a atualização. */
+    private Long version;
+
+    /** false quando a atualização não teve efeito (conteúdo idêntico ao atual). */
+    private boolean changed;
+
+    private LocalDateTime at;
+
+    /**
+     * Patch com imagens embutidas extraídas pelo servidor: as operações como foram aplicadas, com os
+     * {@code src} já trocados pelas URLs. O estado do autor passa a ser a versão base com estas
+     * operações. Null quando nada foi reescrito.
+     */
+    private JsonNode ops;
+}
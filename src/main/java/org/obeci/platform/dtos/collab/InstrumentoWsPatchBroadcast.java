@@ -0,0 +1,47 @@
+package org.obeci.platform.dtos.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Mensagem de delta enviada via WebSocket (STOMP) para os participantes da turma.
+ *
+ * <p>Publicada no mesmo tópico do snapshot ({@code /topic/instrumentos/{turmaId}}).
+ * O campo {@code type} ("PATCH") permite ao cliente diferenciar de um
+ * {@link InstrumentoWsUpdateBroadcast}: ele aplica {@code ops} somente se a sua versão local
+ * for igual a {@code baseVersion}; caso contrário, deve ressincronizar pelo snapshot.</p>
+ */
+@Data
+@AllArgsConstructor
+public class InstrumentoWsPatchBroadcast {
+
+    /** Discriminador do tipo de mensagem no tópico. */
+    private final String type = "PATCH";
+
+    private Long instrumentoId;
+    private Long turmaId;
+
+    /** Operações RFC 6902 aplicadas pelo servidor. */
+    private JsonNode ops;
+
+    /** Versão sobre a qual {@code ops} deve ser aplicado. */
+    private Long baseVersion;
+
+    /** Versão do documento após aplicar {@code ops}. */
+    private Long version;
+
+    /** Quem efetuou a alteração (username/email do token). */
+    private String updatedBy;
+
+    /** Quando o servidor aplicou a alteração. */
+    private LocalDateTime updatedAt;
+
+    /** clientId originador (para evitar eco). */
+    private String clientId;
+
+    /** Entrada já pronta para o painel de log em tempo real. */
+    private InstrumentoChangeLogDto changeLog;
+}
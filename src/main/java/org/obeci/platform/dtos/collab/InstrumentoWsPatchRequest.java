@@ -0,0 +1,40 @@
+package org.obeci.platform.dtos.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Data;
+
+/**
+ * Mensagem recebida via WebSocket (STOMP) com uma atualização incremental (delta) do instrumento.
+ *
+ * <p>Ao invés de enviar o snapshot inteiro ({@link InstrumentoWsUpdateRequest}), o cliente
+ * envia apenas as operações JSON Patch (RFC 6902) que transformam a versão
+ * {@code expectedVersion} do documento no novo estado.</p>
+ */
+@Data
+public class InstrumentoWsPatchRequest {
+
+    /** turmaId do instrumento sendo editado */
+    private Long turmaId;
+
+    /**
+     * Operações RFC 6902 (ex.: {@code [{"op":"replace","path":"/0/content","value":"..."}]}).
+     */
+    private JsonNode ops;
+
+    /**
+     * Versão sobre a qual as operações foram calculadas.
+     *
+     * <p>Obrigatória: os caminhos do patch são posicionais e só fazem sentido
+     * sobre a versão exata em que foram gerados.</p>
+     */
+    private Long expectedVersion;
+
+    /** Identificador do cliente (UUID no front) para evitar eco/loop. */
+    private String clientId;
+
+    /** Resumo legível para o log (ex.: "Editou texto no Slide 2"). */
+    private String summary;
+
+    /** Tipo do evento (ex.: PATCH_UPDATE). */
+    private String eventType;
+}
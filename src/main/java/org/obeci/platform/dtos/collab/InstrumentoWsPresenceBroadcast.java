@@ -0,0 +1,42 @@
+package org.obeci.platform.dtos.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Mensagem de presença publicada em {@code /topic/instrumentos/{turmaId}/presence}.
+ *
+ * <p>Tipos:
+ * <ul>
+ *   <li>{@code ROSTER}: lista completa de participantes (entrada de alguém);</li>
+ *   <li>{@code CURSOR}: slide/cursor de um participante mudou;</li>
+ *   <li>{@code LEAVE}: participante saiu (unsubscribe, desconexão ou heartbeat expirado).</li>
+ * </ul>
+ * Nada disso é persistido.</p>
+ */
+@Data
+@AllArgsConstructor
+public class InstrumentoWsPresenceBroadcast {
+
+    private String type;
+    private Long turmaId;
+    private List<Participant> participants;
+
+    @Data
+    @AllArgsConstructor
+    public static class Participant {
+
+        /** Identificador da sessão STOMP (um usuário pode ter várias abas). */
+        private String sessionId;
+
+        /** username/email do token. */
+        private String user;
+
+        private String clientId;
+        private String slideId;
+        private JsonNode cursor;
+    }
+}
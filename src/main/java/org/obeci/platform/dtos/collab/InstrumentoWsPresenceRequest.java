@@ -0,0 +1,26 @@
+package org.obeci.platform.dtos.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Data;
+
+/**
+ * Mensagem recebida via WebSocket (STOMP) em {@code /app/instrumentos/presence}.
+ *
+ * <p>Indica em qual slide o usuário está e a posição do cursor. Também serve de heartbeat:
+ * enviar periodicamente, mesmo sem mudança, mantém o participante no roster.</p>
+ */
+@Data
+public class InstrumentoWsPresenceRequest {
+
+    /** turmaId do instrumento sendo visualizado */
+    private Long turmaId;
+
+    /** Identificador do cliente (UUID no front). */
+    private String clientId;
+
+    /** {@code id} do slide aberto (opcional). */
+    private String slideId;
+
+    /** Posição do cursor (estrutura livre do front, ex.: {@code {"x":120,"y":80}}); opcional. */
+    private JsonNode cursor;
+}
@@ -0,0 +1,18 @@
+package org.obeci.platform.dtos.collab;
+
+import lombok.Data;
+
+/**
+ * Pedido de catch-up enviado em {@code /app/instrumentos/sync} ao (re)assinar a turma.
+ */
+@Data
+public class InstrumentoWsSyncRequest {
+
+    private Long turmaId;
+
+    /** Identificador do cliente (UUID no front), devolvido na resposta. */
+    private String clientId;
+
+    /** Última versão que o cliente aplicou; null = não tem estado (recebe snapshot). */
+    private Long lastVersion;
+}
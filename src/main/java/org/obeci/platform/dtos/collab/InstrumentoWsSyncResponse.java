@@ -0,0 +1,31 @@
+package org.obeci.platform.dtos.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Resposta do catch-up, enviada em {@code /user/queue/instrumentos/sync}.
+ *
+ * <p>Tipos:
+ * <ul>
+ *   <li>{@code UP_TO_DATE}: o cliente já está na versão atual;</li>
+ *   <li>{@code PATCH}: {@code ops} leva {@code baseVersion} (a do pedido) até {@code version};</li>
+ *   <li>{@code SNAPSHOT}: {@code slides} é o documento inteiro na {@code version} (lacuna grande demais).</li>
+ * </ul>
+ * </p>
+ */
+@Data
+@AllArgsConstructor
+public class InstrumentoWsSyncResponse {
+    private String type;
+    private Long turmaId;
+    private String clientId;
+    private Long baseVersion;
+    private Long version;
+    private JsonNode ops;
+    private JsonNode slides;
+    private LocalDateTime at;
+}
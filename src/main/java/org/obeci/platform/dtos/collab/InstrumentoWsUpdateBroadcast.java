@@ -36,4 +36,11 @@ public class InstrumentoWsUpdateBroadcast {
 
     /** Entrada já pronta para o painel de log em tempo real. */
     private InstrumentoChangeLogDto changeLog;
+
+    /**
+     * Preenchido quando o servidor mesclou (merge de três vias) um snapshot enviado sobre
+     * uma versão antiga: indica essa versão base. Nesse caso o cliente originador também
+     * deve aplicar {@code slides}, pois o resultado difere do que ele enviou.
+     */
+    private Long mergedFromVersion;
 }
@@ -0,0 +1,27 @@
+package org.obeci.platform.entities;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.obeci.platform.services.collab.Gzip;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converte o JSON (texto) de uma coluna {@code bytea} comprimida com gzip.
+ *
+ * <p>O conteúdo gravado é um stream gzip completo do JSON em UTF-8, o que permite servir
+ * os bytes do banco diretamente com {@code Content-Encoding: gzip}.</p>
+ */
+@Converter
+public class GzipJsonConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String json) {
+        return json == null ? null : Gzip.compress(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] data) {
+        return data == null ? null : new String(Gzip.decompress(data), StandardCharsets.UTF_8);
+    }
+}
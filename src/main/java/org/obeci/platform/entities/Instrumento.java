@@ -19,7 +19,8 @@ import java.time.LocalDateTime;
 /**
  * Entidade JPA que representa um "instrumento" (conjunto de slides) associado a uma turma.
  *
- * <p>O conteúdo dos slides é persistido como string JSON em {@code slidesJson}. O formato
+ * <p>O conteúdo dos slides é persistido como string JSON em {@code slidesJson} ou, com
+ * {@code app.instrumentos.storage.compression=GZIP}, comprimido em {@code slidesGzip}. O formato
  * do JSON é definido pelo front-end (editor) e não é validado estruturalmente aqui.</p>
  */
 public class Instrumento {
@@ -50,6 +51,25 @@ public class Instrumento {
     @Column(name = "slides_json", nullable = false, columnDefinition = "TEXT")
     private String slidesJson;
 
+    /**
+     * Mesmo JSON de {@code slidesJson}, comprimido (gzip) pelo {@link GzipJsonConverter}.
+     *
+     * <p>Quando preenchida, é a fonte do documento e {@code slides_json} fica vazio. Nullable:
+     * linhas antigas continuam em {@code slides_json} até a migração.</p>
+     */
+    @Convert(converter = GzipJsonConverter.class)
+    @Column(name = "slides_gzip", columnDefinition = "bytea")
+    private String slidesGzip;
+
+    /**
+     * SHA-256 (hex) da forma canônica de {@code slidesJson}.
+     *
+     * <p>Permite detectar atualizações sem efeito sem comparar o LOB inteiro. Nullable: linhas
+     * antigas são preenchidas pelo backfill.</p>
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @CreatedDate
     @Column(nullable = false)
     private LocalDateTime dataCriacao = LocalDateTime.now();
@@ -0,0 +1,35 @@
+package org.obeci.platform.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Entity
+@Table(name = "instrumento_broadcast_payloads", indexes = {
+        @Index(name = "idx_instrumento_broadcast_payloads_created_at", columnList = "created_at")
+})
+/**
+ * Corpo de um broadcast repassado entre instâncias por referência (modo POSTGRES).
+ *
+ * <p>O NOTIFY do Postgres aceita só payloads menores que 8000 bytes; mensagens maiores (snapshots)
+ * são gravadas aqui e a notificação leva o {@code id}. Cada instância lê a linha uma vez e entrega
+ * às suas sessões. Linhas são temporárias: apagadas depois de
+ * {@code app.websocket.broker.notify-payload-retention}.</p>
+ *
+ * <p>Escrita e leitura via JDBC em {@code InstrumentoClusterBridge}; a entidade existe para o schema.</p>
+ */
+public class InstrumentoBroadcastPayload {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /** Mensagem serializada (JSON), como sai no tópico. */
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
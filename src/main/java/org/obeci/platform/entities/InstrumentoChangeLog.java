@@ -19,11 +19,16 @@ import java.time.LocalDateTime;
  *   <li>Armazenamos metadados (quem/quando) e um resumo (summary) + payload opcional.</li>
  * </ul>
  * </p>
+ *
+ * <p>Retenção: entradas antigas são compactadas em {@link InstrumentoChangeLogDaily} e removidas
+ * daqui ({@code InstrumentoChangeLogRetention}).</p>
  */
 @Data
 @Entity
 @Table(name = "instrumento_change_logs", indexes = {
-        @Index(name = "idx_instrumento_change_logs_turma", columnList = "turma_id"),
+        // Histórico recente por turma (findByTurmaIdOrderByCreatedAtDesc) sem ordenar em memória.
+        @Index(name = "idx_instrumento_change_logs_turma_created", columnList = "turma_id, created_at DESC"),
+        // Varredura da retenção (entradas mais antigas que o corte).
         @Index(name = "idx_instrumento_change_logs_created", columnList = "created_at")
 })
 @EntityListeners(AuditingEntityListener.class)
@@ -33,6 +38,16 @@ public class InstrumentoChangeLog {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /**
+     * Chave gerada no servidor (UUID) no momento do evento.
+     *
+     * <p>O log é gravado de forma assíncrona ({@code InstrumentoChangeLogWriter}), então o {@code id}
+     * ainda não existe quando a entrada é publicada em tempo real; esta chave identifica a entrada
+     * desde o início e evita duplicidade ao reprocessar o arquivo de spill. Nullable para linhas antigas.</p>
+     */
+    @Column(name = "entry_key", length = 36, unique = true)
+    private String entryKey;
+
     @Column(name = "instrumento_id", nullable = false)
     private Long instrumentoId;
 
@@ -70,4 +85,15 @@ public class InstrumentoChangeLog {
     @CreatedDate
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
+
+    /**
+     * Quantidade de edições consecutivas (mesmo ator, turma e tipo) agregadas nesta linha.
+     *
+     * <p>{@code createdAt} é a primeira e {@code lastAt} a última. Nullable para linhas antigas (equivale a 1).</p>
+     */
+    @Column(name = "event_count")
+    private Integer eventCount = 1;
+
+    @Column(name = "last_at")
+    private LocalDateTime lastAt;
 }
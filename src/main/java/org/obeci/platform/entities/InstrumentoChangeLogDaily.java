@@ -0,0 +1,59 @@
+package org.obeci.platform.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Resumo diário do log de alterações, por turma, ator e tipo de evento.
+ *
+ * <p>Motivo: {@link InstrumentoChangeLog} só cresce. Entradas mais antigas que
+ * {@code app.instrumentos.change-log.retention.max-age} são compactadas aqui (uma linha por
+ * turma/ator/dia/tipo) e removidas da tabela principal, que fica pequena e rápida para o
+ * histórico recente.</p>
+ */
+@Data
+@Entity
+@Table(name = "instrumento_change_log_daily",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_instrumento_change_log_daily_key",
+                        columnNames = {"turma_id", "day", "actor", "event_type"})
+        })
+public class InstrumentoChangeLogDaily {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "instrumento_id", nullable = false)
+    private Long instrumentoId;
+
+    @Column(name = "turma_id", nullable = false)
+    private Long turmaId;
+
+    /** Dia (data local de {@code createdAt}) das entradas compactadas. */
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "actor", nullable = false)
+    private String actor;
+
+    @Column(name = "event_type", nullable = false)
+    private String eventType;
+
+    /** Linhas do log compactadas neste resumo. */
+    @Column(name = "entry_count", nullable = false)
+    private Long entryCount = 0L;
+
+    /** Edições representadas (soma de {@code event_count} das linhas compactadas). */
+    @Column(name = "event_count", nullable = false)
+    private Long eventCount = 0L;
+
+    @Column(name = "first_at", nullable = false)
+    private LocalDateTime firstAt;
+
+    @Column(name = "last_at", nullable = false)
+    private LocalDateTime lastAt;
+}
@@ -9,12 +9,17 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "instrumento_images")
+@Table(name = "instrumento_images", indexes = {
+        @Index(name = "idx_instrumento_images_sha256", columnList = "sha256")
+})
 @EntityListeners(AuditingEntityListener.class)
 /**
  * Entidade JPA para armazenar imagens enviadas pelo editor de instrumento.
  *
  * <p>Armazena bytes em {@code data} (LOB) e metadados como {@code contentType} e {@code originalName}.</p>
+ *
+ * <p>{@code sha256} permite reaproveitar a mesma imagem quando ela chega de novo embutida nos
+ * slides ({@code data:} URI); nullable em imagens enviadas antes da coluna existir.</p>
  */
 public class InstrumentoImage {
 
@@ -32,6 +37,10 @@ public class InstrumentoImage {
     @Column(name = "original_name")
     private String originalName;
 
+    /** SHA-256 (hex) de {@code data}. */
+    @Column(name = "sha256", length = 64)
+    private String sha256;
+
     @CreatedDate
     @Column(nullable = false)
     private LocalDateTime dataCriacao = LocalDateTime.now();
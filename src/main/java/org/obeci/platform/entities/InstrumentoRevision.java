@@ -0,0 +1,63 @@
+package org.obeci.platform.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Versão gravada do documento de um {@link Instrumento} (histórico para restauração).
+ *
+ * <p>Cada gravação do documento no banco gera uma revisão, de um de dois tipos:
+ * <ul>
+ *   <li>{@code CHECKPOINT}: documento inteiro;</li>
+ *   <li>{@code DELTA}: JSON Patch (RFC 6902) sobre a revisão anterior ({@code baseVersion}).</li>
+ * </ul>
+ * {@code data} é sempre gzip. Uma versão é reconstruída a partir do checkpoint mais próximo
+ * aplicando os deltas seguintes ({@code InstrumentoHistoryService}).</p>
+ */
+@Data
+@Entity
+@Table(name = "instrumento_revisions",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_instrumento_revisions_version", columnNames = {"instrumento_id", "version"})
+        })
+public class InstrumentoRevision {
+
+    public enum Kind {
+        CHECKPOINT,
+        DELTA
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "instrumento_id", nullable = false)
+    private Long instrumentoId;
+
+    /** Versão do documento ({@code Instrumento.version}) após esta gravação. */
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false, length = 16)
+    private Kind kind;
+
+    /** Revisão sobre a qual o delta foi calculado; null em checkpoints. */
+    @Column(name = "base_version")
+    private Long baseVersion;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /** Tamanho de {@code data} antes da compressão. */
+    @Column(name = "size_bytes", nullable = false)
+    private Integer sizeBytes;
+
+    @Column(name = "data", nullable = false, columnDefinition = "bytea")
+    private byte[] data;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -0,0 +1,54 @@
+package org.obeci.platform.entities;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Slide individual de um {@link Instrumento} (modo de armazenamento {@code SLIDES}).
+ *
+ * <p>Motivo: com o documento inteiro em um único TEXT, alterar uma caixa de texto reescrevia
+ * o deck todo (TOAST + WAL proporcionais ao tamanho). Aqui cada slide é uma linha, chaveada por
+ * ({@code instrumento_id}, {@code slide_key}), com versão e posição próprias.</p>
+ *
+ * <p>{@code slideKey} é o campo {@code id} do slide no JSON do front-end (como texto) e
+ * {@code contentJson} é o objeto do slide serializado, exatamente como aparece no array.</p>
+ */
+@Data
+@Entity
+@Table(name = "instrumento_slides",
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_instrumento_slides_key", columnNames = {"instrumento_id", "slide_key"})
+        },
+        indexes = {
+                @Index(name = "idx_instrumento_slides_position", columnList = "instrumento_id, position")
+        })
+public class InstrumentoSlide {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "instrumento_id", nullable = false)
+    private Long instrumentoId;
+
+    @Column(name = "slide_key", nullable = false, length = 100)
+    private String slideKey;
+
+    /** Posição (0..n-1) do slide no array do documento. */
+    @Column(name = "position", nullable = false)
+    private Integer position;
+
+    /** Versão do slide: incrementada a cada alteração de conteúdo deste slide. */
+    @Column(name = "version", nullable = false)
+    private Long version = 0L;
+
+    @Lob
+    @Basic(fetch = FetchType.EAGER)
+    @Column(name = "content_json", nullable = false, columnDefinition = "TEXT")
+    private String contentJson;
+
+    @Column(name = "data_modificacao", nullable = false)
+    private LocalDateTime dataModificacao = LocalDateTime.now();
+}
@@ -0,0 +1,14 @@
+package org.obeci.platform.exceptions;
+
+/**
+ * Exceção lançada quando o documento de slides recebido não pode ser aceito: JSON inválido,
+ * estrutura diferente de um array de slides (objetos) ou acima dos limites de
+ * {@code app.instrumentos.ingest.*}.
+ *
+ * No REST ela cai no handler genérico de {@link RuntimeException} (400).
+ */
+public class InvalidDocumentException extends RuntimeException {
+    public InvalidDocumentException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package org.obeci.platform.exceptions;
+
+/**
+ * Exceção lançada quando uma lista de operações JSON Patch (RFC 6902) não pode ser
+ * aplicada ao documento atual do instrumento (operação desconhecida, caminho inexistente,
+ * {@code test} que falhou, etc.).
+ *
+ * No canal STOMP ela é convertida no erro {@code INVALID_PATCH}, sinalizando ao cliente
+ * que ele deve ressincronizar via snapshot.
+ */
+public class InvalidPatchException extends RuntimeException {
+    public InvalidPatchException(String message) {
+        super(message);
+    }
+}
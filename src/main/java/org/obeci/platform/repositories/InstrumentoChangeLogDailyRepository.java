@@ -0,0 +1,22 @@
+package org.obeci.platform.repositories;
+
+import org.obeci.platform.entities.InstrumentoChangeLogDaily;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+/**
+ * Repositório dos resumos diários do log de alterações.
+ */
+public interface InstrumentoChangeLogDailyRepository extends JpaRepository<InstrumentoChangeLogDaily, Long> {
+
+    Optional<InstrumentoChangeLogDaily> findByTurmaIdAndDayAndActorAndEventType(
+            Long turmaId, LocalDate day, String actor, String eventType);
+
+    List<InstrumentoChangeLogDaily> findByTurmaIdOrderByDayDescActorAsc(Long turmaId, Pageable pageable);
+}
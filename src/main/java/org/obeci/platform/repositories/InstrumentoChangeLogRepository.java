@@ -3,8 +3,11 @@ package org.obeci.platform.repositories;
 import org.obeci.platform.entities.InstrumentoChangeLog;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -14,4 +17,11 @@ import java.util.List;
 public interface InstrumentoChangeLogRepository extends JpaRepository<InstrumentoChangeLog, Long> {
 
     List<InstrumentoChangeLog> findByTurmaIdOrderByCreatedAtDesc(Long turmaId, Pageable pageable);
+
+    /**
+     * Lote de entradas cuja última edição é anterior ao corte (retenção), mais antigas primeiro.
+     */
+    @Query("select l from InstrumentoChangeLog l where l.createdAt < :cutoff "
+            + "and (l.lastAt is null or l.lastAt < :cutoff) order by l.createdAt, l.id")
+    List<InstrumentoChangeLog> findOlderThan(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
 }
@@ -1,12 +1,21 @@
 package org.obeci.platform.repositories;
 
 import org.obeci.platform.entities.InstrumentoImage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 /**
  * Repositório JPA para {@link InstrumentoImage} (armazenamento de imagens em banco).
  */
 public interface InstrumentoImageRepository extends JpaRepository<InstrumentoImage, Long> {
+
+    /** Ids de imagens com o mesmo conteúdo (deduplicação), sem carregar os bytes. */
+    @Query("select i.id from InstrumentoImage i where i.sha256 = :sha256 and i.contentType = :contentType order by i.id")
+    List<Long> findIdsBySha256(@Param("sha256") String sha256, @Param("contentType") String contentType, Pageable pageable);
 }
@@ -1,11 +1,15 @@
 package org.obeci.platform.repositories;
 
 import org.obeci.platform.entities.Instrumento;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,10 +19,112 @@ import java.util.Optional;
  * <p>Garante lookup por turma (constraint de unicidade em {@code turma_id}).</p>
  */
 public interface InstrumentoRepository extends JpaRepository<Instrumento, Long> {
+
+    /**
+     * Documento gravado comprimido, com os bytes gzip como estão na coluna (sem passar pelo converter).
+     */
+    interface CompressedDocument {
+        Long getId();
+        Long getVersion();
+        String getContentHash();
+        byte[] getSlidesGzip();
+    }
+
     Optional<Instrumento> findByTurmaId(Long turmaId);
     boolean existsByTurmaId(Long turmaId);
 
+    /**
+     * Id, versão e hash do documento, sem carregar o conteúdo.
+     */
+    interface VersionState {
+        Long getId();
+        Long getVersion();
+        String getContentHash();
+    }
+
+    @Query("select i.id as id, i.version as version, i.contentHash as contentHash from Instrumento i where i.turmaId = :turmaId")
+    Optional<VersionState> findVersionStateByTurmaId(@Param("turmaId") Long turmaId);
+
+    /** Id do instrumento da turma, sem carregar o documento. */
+    @Query("select i.id from Instrumento i where i.turmaId = :turmaId")
+    Optional<Long> findIdByTurmaId(@Param("turmaId") Long turmaId);
+
     @Modifying
     @Query("update Instrumento i set i.version = 0 where i.version is null")
     int backfillNullVersions();
+
+    /**
+     * Grava o estado mantido em memória (write-behind) com a versão já calculada pelo cache.
+     *
+     * <p>Só altera a linha se a versão no banco ainda for {@code persistedVersion}; retorno 0
+     * indica que outro escritor alterou o registro por fora do cache.</p>
+     */
+    @Modifying
+    @Query("update Instrumento i set i.slidesJson = :slidesJson, i.slidesGzip = :slidesGzip, i.contentHash = :contentHash, "
+            + "i.version = :version, i.dataModificacao = :dataModificacao "
+            + "where i.id = :id and coalesce(i.version, 0) = :persistedVersion")
+    int writeBehind(@Param("id") Long id,
+                    @Param("slidesJson") String slidesJson,
+                    @Param("slidesGzip") String slidesGzip,
+                    @Param("contentHash") String contentHash,
+                    @Param("version") Long version,
+                    @Param("persistedVersion") Long persistedVersion,
+                    @Param("dataModificacao") LocalDateTime dataModificacao);
+
+    /**
+     * Igual a {@link #writeBehind}, mas sem tocar em {@code slides_json} (modo SLIDES: o conteúdo
+     * está em {@code instrumento_slides}; aqui só avançamos a versão do documento).
+     */
+    @Modifying
+    @Query("update Instrumento i set i.contentHash = :contentHash, i.version = :version, i.dataModificacao = :dataModificacao "
+            + "where i.id = :id and coalesce(i.version, 0) = :persistedVersion")
+    int bumpVersion(@Param("id") Long id,
+                    @Param("contentHash") String contentHash,
+                    @Param("version") Long version,
+                    @Param("persistedVersion") Long persistedVersion,
+                    @Param("dataModificacao") LocalDateTime dataModificacao);
+
+    /**
+     * Ids (em ordem) de instrumentos que ainda não foram divididos em slides, a partir de {@code afterId}.
+     */
+    @Query("select i.id from Instrumento i where i.id > :afterId "
+            + "and not exists (select 1 from InstrumentoSlide s where s.instrumentoId = i.id) order by i.id")
+    List<Long> findIdsWithoutSlides(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select i.id from Instrumento i where i.id > :afterId and i.contentHash is null order by i.id")
+    List<Long> findIdsWithoutContentHash(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Preenche o hash de uma linha antiga; não altera linhas que já ganharam hash por uma gravação concorrente.
+     */
+    @Modifying
+    @Query("update Instrumento i set i.contentHash = :contentHash where i.id = :id and i.contentHash is null")
+    int backfillContentHash(@Param("id") Long id, @Param("contentHash") String contentHash);
+
+    /**
+     * Bytes gzip do documento da turma, se ele estiver gravado inteiro e comprimido (sem linhas por slide).
+     */
+    @Query(value = "select i.id as id, i.version as version, i.content_hash as contentHash, i.slides_gzip as slidesGzip "
+            + "from instrumentos i where i.turma_id = :turmaId and i.slides_gzip is not null "
+            + "and not exists (select 1 from instrumento_slides s where s.instrumento_id = i.id)",
+            nativeQuery = true)
+    Optional<CompressedDocument> findCompressedByTurmaId(@Param("turmaId") Long turmaId);
+
+    @Query("select i.id from Instrumento i where i.id > :afterId and i.slidesGzip is null order by i.id")
+    List<Long> findIdsUncompressed(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select i.id from Instrumento i where i.id > :afterId and i.slidesGzip is not null order by i.id")
+    List<Long> findIdsCompressed(@Param("afterId") Long afterId, Pageable pageable);
+
+    /**
+     * Troca a coluna do documento (migração de compressão) sem alterar versão nem conteúdo; não altera
+     * linhas gravadas por outro escritor depois da leitura ({@code version} diferente).
+     */
+    @Modifying
+    @Query("update Instrumento i set i.slidesJson = :slidesJson, i.slidesGzip = :slidesGzip "
+            + "where i.id = :id and coalesce(i.version, 0) = :version")
+    int moveContent(@Param("id") Long id,
+                    @Param("slidesJson") String slidesJson,
+                    @Param("slidesGzip") String slidesGzip,
+                    @Param("version") Long version);
 }
@@ -0,0 +1,65 @@
+package org.obeci.platform.repositories;
+
+import org.obeci.platform.entities.InstrumentoRevision;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+/**
+ * Repositório do histórico de versões do instrumento.
+ *
+ * <p>As consultas de listagem usam {@link RevisionHead} para não carregar {@code data}.</p>
+ */
+public interface InstrumentoRevisionRepository extends JpaRepository<InstrumentoRevision, Long> {
+
+    /**
+     * Metadados de uma revisão (sem o conteúdo).
+     */
+    interface RevisionHead {
+        Long getVersion();
+
+        InstrumentoRevision.Kind getKind();
+
+        String getContentHash();
+
+        Integer getSizeBytes();
+
+        LocalDateTime getCreatedAt();
+    }
+
+    Optional<RevisionHead> findFirstByInstrumentoIdOrderByVersionDesc(Long instrumentoId);
+
+    Optional<RevisionHead> findFirstByInstrumentoIdAndKindOrderByVersionDesc(Long instrumentoId, InstrumentoRevision.Kind kind);
+
+    List<RevisionHead> findByInstrumentoIdOrderByVersionDesc(Long instrumentoId, Pageable pageable);
+
+    long countByInstrumentoIdAndVersionGreaterThan(Long instrumentoId, Long version);
+
+    /**
+     * Checkpoint mais recente até {@code version} (ponto de partida da reconstrução).
+     */
+    Optional<InstrumentoRevision> findFirstByInstrumentoIdAndKindAndVersionLessThanEqualOrderByVersionDesc(
+            Long instrumentoId, InstrumentoRevision.Kind kind, Long version);
+
+    List<InstrumentoRevision> findByInstrumentoIdAndVersionGreaterThanAndVersionLessThanEqualOrderByVersionAsc(
+            Long instrumentoId, Long afterVersion, Long upToVersion);
+
+    @Query("select r.version from InstrumentoRevision r where r.instrumentoId = :instrumentoId "
+            + "and r.kind = org.obeci.platform.entities.InstrumentoRevision.Kind.CHECKPOINT order by r.version desc")
+    List<Long> findCheckpointVersions(@Param("instrumentoId") Long instrumentoId, Pageable pageable);
+
+    /**
+     * Remove revisões anteriores a um checkpoint (que continua reconstruível sozinho).
+     */
+    @Modifying
+    @Query("delete from InstrumentoRevision r where r.instrumentoId = :instrumentoId and r.version < :version")
+    int deleteOlderThan(@Param("instrumentoId") Long instrumentoId, @Param("version") Long version);
+}
@@ -0,0 +1,51 @@
+package org.obeci.platform.repositories;
+
+import org.obeci.platform.entities.InstrumentoSlide;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+/**
+ * Repositório JPA para {@link InstrumentoSlide} (armazenamento por slide).
+ *
+ * <p>As atualizações são feitas por chave ({@code instrumentoId}, {@code slideKey}) com queries
+ * diretas, para que alterar um slide toque exatamente uma linha.</p>
+ */
+public interface InstrumentoSlideRepository extends JpaRepository<InstrumentoSlide, Long> {
+
+    List<InstrumentoSlide> findByInstrumentoIdOrderByPositionAsc(Long instrumentoId);
+
+    boolean existsByInstrumentoId(Long instrumentoId);
+
+    @Modifying
+    @Query("update InstrumentoSlide s set s.contentJson = :contentJson, s.position = :position, "
+            + "s.version = s.version + 1, s.dataModificacao = :dataModificacao "
+            + "where s.instrumentoId = :instrumentoId and s.slideKey = :slideKey")
+    int updateContent(@Param("instrumentoId") Long instrumentoId,
+                      @Param("slideKey") String slideKey,
+                      @Param("contentJson") String contentJson,
+                      @Param("position") Integer position,
+                      @Param("dataModificacao") LocalDateTime dataModificacao);
+
+    @Modifying
+    @Query("update InstrumentoSlide s set s.position = :position "
+            + "where s.instrumentoId = :instrumentoId and s.slideKey = :slideKey")
+    int updatePosition(@Param("instrumentoId") Long instrumentoId,
+                       @Param("slideKey") String slideKey,
+                       @Param("position") Integer position);
+
+    @Modifying
+    @Query("delete from InstrumentoSlide s where s.instrumentoId = :instrumentoId and s.slideKey in :slideKeys")
+    int deleteSlides(@Param("instrumentoId") Long instrumentoId, @Param("slideKeys") Collection<String> slideKeys);
+
+    @Modifying
+    @Query("delete from InstrumentoSlide s where s.instrumentoId = :instrumentoId")
+    int deleteByInstrumento(@Param("instrumentoId") Long instrumentoId);
+}
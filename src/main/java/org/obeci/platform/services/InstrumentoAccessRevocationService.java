@@ -0,0 +1,112 @@
+package org.obeci.platform.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.obeci.platform.dtos.collab.InstrumentoWsAccessRevoked;
+import org.obeci.platform.entities.Usuario;
+import org.obeci.platform.services.collab.TurmaMembershipRevokedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Revoga, nas sessões STOMP abertas, o acesso de professores removidos de uma turma.
+ *
+ * <p>Para cada sessão afetada (ver {@link InstrumentoSessionAccessCache#revoke}):
+ * <ul>
+ *   <li>a permissão em cache é descartada: a próxima mensagem da sessão consulta o banco e é recusada;</li>
+ *   <li>as assinaturas em {@code /topic/instrumentos/{turmaId}/**} são canceladas no broker (UNSUBSCRIBE
+ *       em nome da sessão), e {@link SessionUnsubscribeEvent} é publicado para a presença tirar o
+ *       participante do roster;</li>
+ *   <li>a sessão recebe {@link InstrumentoWsAccessRevoked} em {@code /user/queue/instrumentos/errors}.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Separado do cache porque depende de {@link SimpMessagingTemplate}, que só existe depois da
+ * configuração do canal inbound (onde o cache já é usado, em {@code StompAuthChannelInterceptor}).</p>
+ *
+ * <p>Métrica: {@code instrumento.access.revoked} (sessões revogadas).</p>
+ */
+@Service
+public class InstrumentoAccessRevocationService {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoAccessRevocationService.class);
+
+    private final InstrumentoSessionAccessCache accessCache;
+    private final UsuarioService usuarioService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Counter revoked;
+
+    public InstrumentoAccessRevocationService(
+            InstrumentoSessionAccessCache accessCache,
+            UsuarioService usuarioService,
+            SimpMessagingTemplate messagingTemplate,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry
+    ) {
+        this.accessCache = accessCache;
+        this.usuarioService = usuarioService;
+        this.messagingTemplate = messagingTemplate;
+        this.eventPublisher = eventPublisher;
+        this.revoked = Counter.builder("instrumento.access.revoked").register(meterRegistry);
+    }
+
+    /**
+     * Depois do commit da alteração da turma (ou na hora, sem transação).
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void on(TurmaMembershipRevokedEvent event) {
+        if (event.turmaId() == null || event.professorIds() == null || event.professorIds().isEmpty()) {
+            return;
+        }
+        Set<String> users = event.professorIds().stream()
+                .map(usuarioService::findById)
+                .flatMap(Optional::stream)
+                .map(Usuario::getEmail)
+                .filter(Objects::nonNull)
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+
+        for (InstrumentoSessionAccessCache.RevokedSession session : accessCache.revoke(event.turmaId(), users)) {
+            try {
+                unsubscribe(session);
+                SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+                headers.setSessionId(session.sessionId());
+                headers.setLeaveMutable(true);
+                messagingTemplate.convertAndSendToUser(session.authentication().getName(), "/queue/instrumentos/errors",
+                        new InstrumentoWsAccessRevoked(event.turmaId()), headers.getMessageHeaders());
+                revoked.increment();
+            } catch (Exception e) {
+                log.warn("Falha ao revogar sessão {} na turma {}: {}", session.sessionId(), event.turmaId(), e.getMessage());
+            }
+        }
+    }
+
+    private void unsubscribe(InstrumentoSessionAccessCache.RevokedSession session) {
+        session.subscriptions().forEach((subscriptionId, destination) -> {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+            accessor.setSessionId(session.sessionId());
+            accessor.setSubscriptionId(subscriptionId);
+            accessor.setDestination(destination);
+            accessor.setUser(session.authentication());
+            Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+            messagingTemplate.getMessageChannel().send(message);
+            eventPublisher.publishEvent(new SessionUnsubscribeEvent(this, message, session.authentication()));
+        });
+    }
+}
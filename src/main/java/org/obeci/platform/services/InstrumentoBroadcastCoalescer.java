@@ -0,0 +1,251 @@
+package org.obeci.platform.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.obeci.platform.configs.InstrumentoBroadcastProperties;
+import org.obeci.platform.configs.InstrumentoEchoFilter;
+import org.obeci.platform.dtos.collab.InstrumentoWsPatchBroadcast;
+import org.obeci.platform.dtos.collab.InstrumentoWsUpdateBroadcast;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agrupa, por turma, os broadcasts colaborativos publicados em {@code /topic/instrumentos/{turmaId}}.
+ *
+ * <p>Motivo: o autosave dispara várias atualizações por segundo durante a digitação e cada uma
+ * virava uma mensagem para todos os inscritos. Dentro da janela
+ * ({@code app.instrumentos.broadcast.coalesce-window}) só sai uma mensagem por turma:
+ * <ul>
+ *   <li>snapshot substitui o que estava pendente (é o estado completo);</li>
+ *   <li>delta do mesmo cliente sobre o pendente é concatenado (ops) ou aplicado ao snapshot pendente;</li>
+ *   <li>delta de outro cliente publica antes o pendente: o {@code clientId} da mensagem é usado
+ *       pelos clientes para ignorar o próprio eco, então deltas de autores diferentes não se misturam.</li>
+ * </ul>
+ * O autor continua recebendo confirmação individual (ACK) na hora, fora deste fluxo, e a sessão
+ * dele não recebe a mensagem ({@link InstrumentoEchoFilter}), a menos que o servidor tenha mesclado
+ * o conteúdo (snapshot com {@code mergedFromVersion}).</p>
+ *
+ * <p>Cada mensagem que sai daqui também é repassada às outras instâncias por
+ * {@link InstrumentoClusterBridge} (só no modo POSTGRES).</p>
+ *
+ * <p>Métricas: {@code instrumento.broadcast.window} (ms), {@code instrumento.broadcast.submitted},
+ * {@code instrumento.broadcast.sent} e {@code instrumento.broadcast.coalesced.ratio}
+ * (fração das mensagens absorvidas pelo agrupamento).</p>
+ */
+@Service
+public class InstrumentoBroadcastCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoBroadcastCoalescer.class);
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final InstrumentoEchoFilter echoFilter;
+    private final InstrumentoClusterBridge clusterBridge;
+    private final long windowMillis;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final ConcurrentHashMap<Long, Slot> slots = new ConcurrentHashMap<>();
+
+    private final Counter submitted;
+    private final Counter sent;
+
+    /**
+     * Mensagem pendente de uma turma. Todo acesso acontece com o monitor do slot, inclusive o
+     * envio: isso mantém a ordem entre publicações imediatas e as disparadas pelo agendador.
+     */
+    private static final class Slot {
+        Object message;
+        /** Estado do documento após {@link #message} (para aplicar deltas sobre snapshot pendente). */
+        JsonNode state;
+        /** Sessão que não recebe {@link #message} (autor); null = todas. */
+        String excludeSessionId;
+        boolean retired;
+    }
+
+    public InstrumentoBroadcastCoalescer(
+            SimpMessagingTemplate messagingTemplate,
+            InstrumentoEchoFilter echoFilter,
+            InstrumentoClusterBridge clusterBridge,
+            InstrumentoBroadcastProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.messagingTemplate = messagingTemplate;
+        this.echoFilter = echoFilter;
+        this.clusterBridge = clusterBridge;
+        this.windowMillis = Math.max(properties.getCoalesceWindow().toMillis(), 0L);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "instrumento.broadcast");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.setRemoveOnCancelPolicy(true);
+
+        this.submitted = Counter.builder("instrumento.broadcast.submitted").register(meterRegistry);
+        this.sent = Counter.builder("instrumento.broadcast.sent").register(meterRegistry);
+        Gauge.builder("instrumento.broadcast.window", () -> windowMillis)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("instrumento.broadcast.coalesced.ratio", this, c -> c.coalescedRatio())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publica (ou agenda) um broadcast da turma.
+     *
+     * @param message {@link InstrumentoWsUpdateBroadcast} ou {@link InstrumentoWsPatchBroadcast}
+     * @param state árvore do documento após a mensagem (tratada como imutável)
+     * @param excludeSessionId sessão do autor, que já tem o estado (null = entrega a todas)
+     */
+    public void publish(Long turmaId, Object message, JsonNode state, String excludeSessionId) {
+        submitted.increment();
+        if (windowMillis == 0) {
+            send(turmaId, message, excludeSessionId);
+            return;
+        }
+
+        while (true) {
+            Slot slot = slots.computeIfAbsent(turmaId, id -> new Slot());
+            synchronized (slot) {
+                // Pode ter sido descartado pelo agendador entre o get e o lock.
+                if (slot.retired) {
+                    continue;
+                }
+                if (slot.message == null) {
+                    slot.message = message;
+                    slot.state = state;
+                    slot.excludeSessionId = excludeSessionId;
+                    scheduler.schedule(() -> flush(turmaId, slot), windowMillis, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                Object combined = combine(slot.message, message, state);
+                String exclude;
+                if (combined == null) {
+                    // Não combinável: publica o pendente agora e o novo abre/continua a janela.
+                    send(turmaId, slot.message, slot.excludeSessionId);
+                    combined = message;
+                    exclude = excludeSessionId;
+                } else if (combined == message) {
+                    exclude = excludeSessionId;
+                } else {
+                    // Fusão: só exclui o autor se as duas partes o excluíam (ex.: snapshot mesclado pendente não).
+                    exclude = Objects.equals(slot.excludeSessionId, excludeSessionId) ? excludeSessionId : null;
+                }
+                slot.message = combined;
+                slot.state = state;
+                slot.excludeSessionId = exclude;
+                return;
+            }
+        }
+    }
+
+    /**
+     * No shutdown, publica tudo que ainda está pendente.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        slots.forEach(this::flush);
+    }
+
+    private void flush(Long turmaId, Slot slot) {
+        synchronized (slot) {
+            if (slot.retired) {
+                return;
+            }
+            slot.retired = true;
+            slots.remove(turmaId, slot);
+            if (slot.message != null) {
+                send(turmaId, slot.message, slot.excludeSessionId);
+            }
+        }
+    }
+
+    /**
+     * Funde {@code next} na mensagem pendente.
+     *
+     * @return mensagem combinada, ou null se precisam sair separadas
+     */
+    private static Object combine(Object pending, Object next, JsonNode nextState) {
+        if (next instanceof InstrumentoWsUpdateBroadcast) {
+            // Snapshot é o estado completo: o pendente fica obsoleto.
+            return next;
+        }
+        InstrumentoWsPatchBroadcast patch = (InstrumentoWsPatchBroadcast) next;
+
+        if (pending instanceof InstrumentoWsPatchBroadcast prev) {
+            if (!Objects.equals(prev.getClientId(), patch.getClientId())
+                    || !Objects.equals(prev.getVersion(), patch.getBaseVersion())) {
+                return null;
+            }
+            ArrayNode ops = JsonNodeFactory.instance.arrayNode();
+            ops.addAll((ArrayNode) prev.getOps());
+            ops.addAll((ArrayNode) patch.getOps());
+            return new InstrumentoWsPatchBroadcast(
+                    patch.getInstrumentoId(),
+                    patch.getTurmaId(),
+                    ops,
+                    prev.getBaseVersion(),
+                    patch.getVersion(),
+                    patch.getUpdatedBy(),
+                    patch.getUpdatedAt(),
+                    patch.getClientId(),
+                    patch.getChangeLog() != null ? patch.getChangeLog() : prev.getChangeLog()
+            );
+        }
+
+        InstrumentoWsUpdateBroadcast prev = (InstrumentoWsUpdateBroadcast) pending;
+        if (!Objects.equals(prev.getClientId(), patch.getClientId()) || nextState == null) {
+            return null;
+        }
+        // Delta sobre snapshot pendente do mesmo autor: publica o snapshot já com o delta aplicado.
+        return new InstrumentoWsUpdateBroadcast(
+                patch.getInstrumentoId(),
+                patch.getTurmaId(),
+                nextState,
+                patch.getVersion(),
+                patch.getUpdatedBy(),
+                patch.getUpdatedAt(),
+                patch.getClientId(),
+                patch.getChangeLog() != null ? patch.getChangeLog() : prev.getChangeLog(),
+                prev.getMergedFromVersion()
+        );
+    }
+
+    private void send(Long turmaId, Object message, String excludeSessionId) {
+        try {
+            String destination = "/topic/instrumentos/" + turmaId;
+            if (excludeSessionId != null) {
+                messagingTemplate.convertAndSend(destination, message, echoFilter.excluding(excludeSessionId));
+            } else {
+                messagingTemplate.convertAndSend(destination, message);
+            }
+            sent.increment();
+            // Sessões em outras instâncias (modo POSTGRES); o autor nunca está lá.
+            clusterBridge.forward(destination, turmaId, versionOf(message), message);
+        } catch (Exception e) {
+            log.warn("Falha ao publicar broadcast turmaId={}: {}", turmaId, e.getMessage());
+        }
+    }
+
+    private static long versionOf(Object message) {
+        Long version = message instanceof InstrumentoWsPatchBroadcast patch
+                ? patch.getVersion()
+                : ((InstrumentoWsUpdateBroadcast) message).getVersion();
+        return version == null ? 0L : version;
+    }
+
+    private double coalescedRatio() {
+        double total = submitted.count();
+        return total == 0 ? 0.0 : 1.0 - (sent.count() / total);
+    }
+}
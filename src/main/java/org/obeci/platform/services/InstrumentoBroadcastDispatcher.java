@@ -0,0 +1,138 @@
+package org.obeci.platform.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.obeci.platform.configs.InstrumentoBroadcastProperties;
+import org.obeci.platform.services.collab.InstrumentoBroadcastEvent;
+import org.obeci.platform.services.collab.OrderedLaneExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Entrega, fora do lock do documento, o que uma atualização colaborativa gerou
+ * ({@link InstrumentoBroadcastEvent}): broadcast no tópico da turma (via
+ * {@link InstrumentoBroadcastCoalescer}), entrada de log em {@code /changes} e ACK do autor.
+ *
+ * <p>Motivo: a serialização e os envios por sessão aconteciam dentro de
+ * {@code InstrumentoDocumentCache#withDocument}, segurando o documento (e a lane da turma) pelo
+ * tempo do fan-out; com o documento inteiro no broadcast, esse era o maior custo da atualização.
+ * Agora o serviço só publica o evento e a entrega roda em lanes próprias
+ * ({@code instrumento.broadcast.dispatch}, ver {@link OrderedLaneExecutor}).</p>
+ *
+ * <p>Ordem e consistência:
+ * <ul>
+ *   <li>a mesma turma cai sempre na mesma lane, então as mensagens saem na ordem das versões;</li>
+ *   <li>dentro de uma transação Spring, a entrega só é enfileirada após o commit e descartada no
+ *       rollback ({@link TransactionalEventListener}); sem transação (caso do cache em memória),
+ *       é enfileirada na hora, ainda dentro do lock, o que fixa a ordem;</li>
+ *   <li>a entrega nunca roda na thread de quem publicou (estaria dentro do lock e sairia fora de
+ *       ordem). O backpressure fica antes: {@link InstrumentoUpdateDispatcher} recusa atualizações
+ *       ({@code OVERLOADED}) quando a lane da turma passa de {@link #hasCapacity três quartos};</li>
+ *   <li>se ainda assim a lane encher (REST, merge no flush), a entrega é descartada e contada: os
+ *       clientes veem o salto de versão no próximo broadcast e se recuperam pelo sync.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Métricas: {@code instrumento.broadcast.dispatch.*} (fila, espera, execução, rejeições) e
+ * {@code instrumento.broadcast.dispatch.dropped} (entregas descartadas com a lane cheia).</p>
+ */
+@Service
+public class InstrumentoBroadcastDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoBroadcastDispatcher.class);
+
+    private final InstrumentoBroadcastCoalescer broadcastCoalescer;
+    private final InstrumentoClusterBridge clusterBridge;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final OrderedLaneExecutor executor;
+    private final int reserve;
+    private final Counter dropped;
+
+    public InstrumentoBroadcastDispatcher(
+            InstrumentoBroadcastCoalescer broadcastCoalescer,
+            InstrumentoClusterBridge clusterBridge,
+            SimpMessagingTemplate messagingTemplate,
+            InstrumentoBroadcastProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.broadcastCoalescer = broadcastCoalescer;
+        this.clusterBridge = clusterBridge;
+        this.messagingTemplate = messagingTemplate;
+        this.executor = new OrderedLaneExecutor(
+                "instrumento.broadcast.dispatch",
+                properties.getDispatchLanes(),
+                properties.getDispatchQueueCapacity(),
+                meterRegistry
+        );
+        // Último quarto da fila: atualizações já aceitas, REST e merge no flush.
+        this.reserve = Math.max(properties.getDispatchQueueCapacity() / 4, 1);
+        this.dropped = Counter.builder("instrumento.broadcast.dispatch.dropped").register(meterRegistry);
+    }
+
+    /**
+     * Enfileira a entrega na lane da turma (após o commit, se houver transação).
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void on(InstrumentoBroadcastEvent event) {
+        try {
+            executor.execute(event.turmaId(), () -> deliver(event));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+            log.warn("Lane de entrega cheia; atualização turmaId={} version={} não será entregue (clientes recuperam pelo sync)",
+                    event.turmaId(), event.version());
+        }
+    }
+
+    /**
+     * Se a lane da turma ainda aceita novas atualizações (mais que a reserva livre).
+     */
+    public boolean hasCapacity(Long turmaId) {
+        return executor.remainingCapacity(turmaId) > reserve;
+    }
+
+    /**
+     * Entrega o evento na thread atual.
+     */
+    public void deliver(InstrumentoBroadcastEvent event) {
+        Long turmaId = event.turmaId();
+        try {
+            if (event.broadcast() != null) {
+                broadcastCoalescer.publish(turmaId, event.broadcast(), event.state(), event.excludeSessionId());
+            }
+            // Broadcast também do log (painel de alterações pode assinar esse tópico).
+            if (event.changeLog() != null) {
+                String changes = "/topic/instrumentos/" + turmaId + "/changes";
+                messagingTemplate.convertAndSend(changes, event.changeLog());
+                clusterBridge.forward(changes, turmaId, event.version(), event.changeLog());
+            }
+            if (event.ack() != null) {
+                if (event.sessionId() != null) {
+                    // Só para a sessão autora (o usuário pode ter outras abas abertas).
+                    SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+                    headers.setSessionId(event.sessionId());
+                    headers.setLeaveMutable(true);
+                    messagingTemplate.convertAndSendToUser(event.actor(), "/queue/instrumentos/acks", event.ack(), headers.getMessageHeaders());
+                } else {
+                    messagingTemplate.convertAndSendToUser(event.actor(), "/queue/instrumentos/acks", event.ack());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Falha ao entregar atualização turmaId={} version={}: {}", turmaId, event.version(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,417 @@
+package org.obeci.platform.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.obeci.platform.configs.InstrumentoChangeLogProperties;
+import org.obeci.platform.entities.InstrumentoChangeLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gravação assíncrona, em batch, do log de alterações do Instrumento.
+ *
+ * <p>Motivo: cada atualização persistida fazia um {@code INSERT} síncrono em
+ * {@code instrumento_change_logs} no caminho quente. Agora o serviço de colaboração só enfileira
+ * a entrada ({@link #enqueue}) e uma thread dedicada grava em batches JDBC
+ * ({@code app.instrumentos.change-log.batch-size}), no máximo a cada
+ * {@code app.instrumentos.change-log.flush-interval}.</p>
+ *
+ * <p>Agrupamento ({@code app.instrumentos.change-log.coalesce-window}): uma edição do mesmo ator e
+ * tipo que a última entrada da turma, dentro da janela, não gera linha nova — a entrada anterior
+ * ganha {@code eventCount + 1}, {@code lastAt} e o resumo/payload mais recentes, e é regravada
+ * no lugar (update por {@code entry_key}).</p>
+ *
+ * <p>Durabilidade:
+ * <ul>
+ *   <li>fila limitada em memória; no shutdown é gravada antes de encerrar ({@code flush-on-shutdown});</li>
+ *   <li>se a fila enche (banco lento) ou um batch falha, as entradas vão para um arquivo local
+ *       (JSON por linha, {@code spill-dir}), reprocessado quando o banco volta a responder;</li>
+ *   <li>a gravação é um upsert por {@code entry_key}, então o reprocessamento pode ser repetido.</li>
+ * </ul>
+ * Com {@code spill-enabled=false}, o excedente é descartado (contado em métrica).</p>
+ *
+ * <p>Métricas: {@code instrumento.changelog.queue.depth}, {@code instrumento.changelog.written},
+ * {@code instrumento.changelog.spilled} e {@code instrumento.changelog.dropped}.</p>
+ */
+@Service
+public class InstrumentoChangeLogWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoChangeLogWriter.class);
+
+    private static final String INSERT_SQL = "insert into instrumento_change_logs "
+            + "(instrumento_id, turma_id, actor, event_type, summary, payload_json, created_at, entry_key, event_count, last_at) "
+            + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Só avança: uma versão mais antiga da entrada (ex.: vinda do spill) não desfaz a agregação.
+    private static final String UPDATE_SQL = "update instrumento_change_logs "
+            + "set summary = ?, payload_json = ?, event_count = ?, last_at = ? "
+            + "where entry_key = ? and coalesce(event_count, 1) <= ?";
+
+    // Reprocessamento do spill: a entrada pode já existir (gravada por outro caminho).
+    private static final String INSERT_IF_ABSENT_SQL = "insert into instrumento_change_logs "
+            + "(instrumento_id, turma_id, actor, event_type, summary, payload_json, created_at, entry_key, event_count, last_at) "
+            + "select ?, ?, ?, ?, ?, ?, ?, ?, ?, ? "
+            + "where not exists (select 1 from instrumento_change_logs where entry_key = ?)";
+
+    private static final int SUMMARY_MAX_LENGTH = 300;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final InstrumentoChangeLogProperties properties;
+
+    private final BlockingQueue<InstrumentoChangeLog> queue;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final Object spillLock = new Object();
+
+    /** Última entrada de cada turma (candidata a agregar a próxima edição). */
+    private final ConcurrentHashMap<Long, InstrumentoChangeLog> openEntries = new ConcurrentHashMap<>();
+
+    private final Counter written;
+    private final Counter spilled;
+    private final Counter dropped;
+
+    private volatile boolean running = true;
+    private Thread worker;
+
+    public InstrumentoChangeLogWriter(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            InstrumentoChangeLogProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(Math.max(properties.getQueueCapacity(), 1));
+        this.spillFile = Path.of(properties.getSpillDir(), "change-log-spill.jsonl");
+        this.replayFile = Path.of(properties.getSpillDir(), "change-log-replay.jsonl");
+
+        Gauge.builder("instrumento.changelog.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        this.written = Counter.builder("instrumento.changelog.written").register(meterRegistry);
+        this.spilled = Counter.builder("instrumento.changelog.spilled").register(meterRegistry);
+        this.dropped = Counter.builder("instrumento.changelog.dropped").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = new Thread(this::run, "instrumento.changelog-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Registra uma nova entrada, agregando-a à última da turma quando aplicável, e enfileira a gravação.
+     *
+     * @param entry entrada nova (com {@code entryKey}, {@code createdAt} e {@code lastAt} preenchidos)
+     * @return entrada efetiva: a própria ou a anterior já agregada (cópia; pode ser publicada)
+     */
+    public InstrumentoChangeLog record(InstrumentoChangeLog entry) {
+        long windowMillis = properties.getCoalesceWindow().toMillis();
+        if (windowMillis <= 0) {
+            enqueue(entry);
+            return entry;
+        }
+        InstrumentoChangeLog effective = openEntries.compute(entry.getTurmaId(), (turmaId, open) -> {
+            if (open == null || !canCoalesce(open, entry, windowMillis)) {
+                return copy(entry);
+            }
+            InstrumentoChangeLog merged = copy(open);
+            merged.setEventCount(open.getEventCount() + 1);
+            merged.setLastAt(entry.getLastAt());
+            merged.setSummary(entry.getSummary());
+            merged.setPayloadJson(entry.getPayloadJson());
+            return merged;
+        });
+        // Cópias imutáveis: a thread de gravação nunca vê um objeto sendo alterado.
+        InstrumentoChangeLog snapshot = copy(effective);
+        enqueue(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Enfileira a entrada para gravação. Não bloqueia: com a fila cheia, vai para o spill (ou é descartada).
+     */
+    public void enqueue(InstrumentoChangeLog entry) {
+        if (running && queue.offer(entry)) {
+            return;
+        }
+        spillOrDrop(List.of(entry));
+    }
+
+    /**
+     * No shutdown, grava (ou envia para o spill) o que ainda está na fila.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(Math.max(properties.getFlushInterval().toMillis(), 100L) * 4);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<InstrumentoChangeLog> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (remaining.isEmpty()) {
+            return;
+        }
+        if (properties.isFlushOnShutdown()) {
+            writeBatches(remaining);
+        } else {
+            spillOrDrop(remaining);
+        }
+    }
+
+    private void run() {
+        int batchSize = Math.max(properties.getBatchSize(), 1);
+        long flushMillis = Math.max(properties.getFlushInterval().toMillis(), 1L);
+        List<InstrumentoChangeLog> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                InstrumentoChangeLog first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    // Fila ociosa: bom momento para reprocessar o spill e esquecer agrupamentos vencidos.
+                    replaySpill();
+                    expireOpenEntries();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Falha inesperada no writer do change log: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatches(List<InstrumentoChangeLog> entries) {
+        int batchSize = Math.max(properties.getBatchSize(), 1);
+        for (int i = 0; i < entries.size(); i += batchSize) {
+            write(entries.subList(i, Math.min(i + batchSize, entries.size())));
+        }
+    }
+
+    /**
+     * Grava um batch em uma transação; se falhar, manda o batch inteiro para o spill.
+     */
+    private void write(List<InstrumentoChangeLog> batch) {
+        try {
+            upsert(batch);
+            written.increment(batch.size());
+        } catch (Exception e) {
+            log.warn("Falha ao gravar {} entrada(s) do change log: {}", batch.size(), e.getMessage());
+            spillOrDrop(batch);
+        }
+    }
+
+    /**
+     * Grava o batch em uma transação: versões repetidas da mesma entrada ficam só com a última;
+     * entradas agregadas (ou reprocessadas) tentam update por {@code entry_key} e as que não
+     * existem ainda são inseridas. SQL portável (sem upsert específico de banco).
+     */
+    private void upsert(List<InstrumentoChangeLog> batch, boolean replay) {
+        Map<String, InstrumentoChangeLog> latest = new LinkedHashMap<>();
+        for (InstrumentoChangeLog e : batch) {
+            latest.put(e.getEntryKey(), e);
+        }
+        List<InstrumentoChangeLog> updates = new ArrayList<>();
+        List<InstrumentoChangeLog> inserts = new ArrayList<>();
+        for (InstrumentoChangeLog e : latest.values()) {
+            if (replay || e.getEventCount() > 1) {
+                updates.add(e);
+            } else {
+                inserts.add(e);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!updates.isEmpty()) {
+                int[][] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, updates, updates.size(), (ps, e) -> {
+                    ps.setString(1, truncate(e.getSummary()));
+                    ps.setString(2, e.getPayloadJson());
+                    ps.setInt(3, e.getEventCount());
+                    ps.setTimestamp(4, Timestamp.valueOf(e.getLastAt()));
+                    ps.setString(5, e.getEntryKey());
+                    ps.setInt(6, e.getEventCount());
+                });
+                for (int i = 0; i < updates.size(); i++) {
+                    if (counts[0][i] == 0) {
+                        inserts.add(updates.get(i));
+                    }
+                }
+            }
+            if (!inserts.isEmpty()) {
+                jdbcTemplate.batchUpdate(replay ? INSERT_IF_ABSENT_SQL : INSERT_SQL, inserts, inserts.size(), (ps, e) -> {
+                    ps.setLong(1, e.getInstrumentoId());
+                    ps.setLong(2, e.getTurmaId());
+                    ps.setString(3, e.getActor());
+                    ps.setString(4, e.getEventType());
+                    ps.setString(5, truncate(e.getSummary()));
+                    ps.setString(6, e.getPayloadJson());
+                    ps.setTimestamp(7, Timestamp.valueOf(e.getCreatedAt()));
+                    ps.setString(8, e.getEntryKey());
+                    ps.setInt(9, e.getEventCount());
+                    ps.setTimestamp(10, Timestamp.valueOf(e.getLastAt()));
+                    if (replay) {
+                        ps.setString(11, e.getEntryKey());
+                    }
+                });
+            }
+        });
+    }
+
+    private void upsert(List<InstrumentoChangeLog> batch) {
+        upsert(batch, false);
+    }
+
+    private static boolean canCoalesce(InstrumentoChangeLog open, InstrumentoChangeLog next, long windowMillis) {
+        return Objects.equals(open.getActor(), next.getActor())
+                && Objects.equals(open.getEventType(), next.getEventType())
+                && Duration.between(open.getLastAt(), next.getLastAt()).toMillis() <= windowMillis;
+    }
+
+    private void expireOpenEntries() {
+        LocalDateTime limit = LocalDateTime.now().minus(properties.getCoalesceWindow());
+        openEntries.values().removeIf(e -> e.getLastAt().isBefore(limit));
+    }
+
+    private static InstrumentoChangeLog copy(InstrumentoChangeLog e) {
+        InstrumentoChangeLog c = new InstrumentoChangeLog();
+        c.setId(e.getId());
+        c.setEntryKey(e.getEntryKey());
+        c.setInstrumentoId(e.getInstrumentoId());
+        c.setTurmaId(e.getTurmaId());
+        c.setActor(e.getActor());
+        c.setEventType(e.getEventType());
+        c.setSummary(e.getSummary());
+        c.setPayloadJson(e.getPayloadJson());
+        c.setCreatedAt(e.getCreatedAt());
+        c.setEventCount(e.getEventCount() == null ? 1 : e.getEventCount());
+        c.setLastAt(e.getLastAt() == null ? e.getCreatedAt() : e.getLastAt());
+        return c;
+    }
+
+    private void spillOrDrop(List<InstrumentoChangeLog> entries) {
+        if (!properties.isSpillEnabled()) {
+            dropped.increment(entries.size());
+            log.warn("Change log: {} entrada(s) descartada(s) (fila cheia ou banco indisponível, spill desativado)", entries.size());
+            return;
+        }
+        synchronized (spillLock) {
+            try {
+                Files.createDirectories(spillFile.getParent());
+                try (BufferedWriter out = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (InstrumentoChangeLog e : entries) {
+                        out.write(objectMapper.writeValueAsString(e));
+                        out.newLine();
+                    }
+                }
+                spilled.increment(entries.size());
+            } catch (IOException e) {
+                dropped.increment(entries.size());
+                log.error("Change log: falha ao gravar spill em {}; {} entrada(s) perdida(s): {}",
+                        spillFile, entries.size(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reprocessa o arquivo de spill. Novas entradas continuam indo para um arquivo novo enquanto isso;
+     * se o banco falhar no meio, o arquivo de replay fica para a próxima tentativa.
+     */
+    private void replaySpill() {
+        synchronized (spillLock) {
+            try {
+                if (!Files.exists(replayFile)) {
+                    if (!Files.exists(spillFile)) {
+                        return;
+                    }
+                    Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                log.warn("Change log: falha ao preparar reprocessamento do spill: {}", e.getMessage());
+                return;
+            }
+        }
+
+        int batchSize = Math.max(properties.getBatchSize(), 1);
+        int replayed = 0;
+        try (BufferedReader in = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            List<InstrumentoChangeLog> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                batch.add(objectMapper.readValue(line, InstrumentoChangeLog.class));
+                if (batch.size() == batchSize) {
+                    upsert(batch, true);
+                    replayed += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                upsert(batch, true);
+                replayed += batch.size();
+            }
+        } catch (Exception e) {
+            log.warn("Change log: reprocessamento do spill interrompido após {} entrada(s): {}", replayed, e.getMessage());
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(replayFile);
+            written.increment(replayed);
+            log.info("Change log: {} entrada(s) do spill gravadas", replayed);
+        } catch (IOException e) {
+            log.warn("Change log: falha ao remover {}: {}", replayFile, e.getMessage());
+        }
+    }
+
+    private static String truncate(String summary) {
+        if (summary == null || summary.length() <= SUMMARY_MAX_LENGTH) {
+            return summary;
+        }
+        return summary.substring(0, SUMMARY_MAX_LENGTH);
+    }
+}
@@ -0,0 +1,356 @@
+package org.obeci.platform.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.obeci.platform.configs.WebSocketBrokerProperties;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Repasse dos broadcasts do Instrumento entre instâncias via LISTEN/NOTIFY do Postgres
+ * ({@code app.websocket.broker.mode=POSTGRES}) e aviso de gravações entre instâncias
+ * (modos POSTGRES e RELAY).
+ *
+ * <p>Motivo: um broker STOMP externo (modo RELAY) é pesado para o nosso porte, e o Postgres já
+ * existe. Cada instância mantém o broker simples em memória; o que ela publica em
+ * {@code /topic/instrumentos/**} (já agrupado por {@link InstrumentoBroadcastCoalescer}) também
+ * vira um NOTIFY, e as demais instâncias entregam a mensagem às suas próprias sessões. O corpo é
+ * serializado uma vez na origem e lido uma vez por instância, não uma vez por cliente.</p>
+ *
+ * <p>Notificação (texto, primeira linha = cabeçalho):
+ * <ul>
+ *   <li>{@code B <instância> <turmaId> <version> <destino>} + quebra de linha + JSON da mensagem;</li>
+ *   <li>{@code B <instância> <turmaId> <version> <destino> <id>}: mensagem acima de
+ *       {@code notify-max-payload-bytes}, gravada em {@code instrumento_broadcast_payloads};</li>
+ *   <li>{@code C <instância> <turmaId> <version>}: versão gravada no banco por
+ *       {@link InstrumentoDocumentCache}. Acorda o long-poll ({@link InstrumentoVersionWatcher}) e
+ *       faz as outras instâncias descartarem cópias em memória mais antigas ({@link #isBehind}).</li>
+ * </ul>
+ * Notificações da própria instância são ignoradas (ela já entregou localmente). No modo RELAY
+ * os broadcasts já passam pelo broker externo: só as notificações {@code C} são trocadas.</p>
+ *
+ * <p>Pontos críticos:
+ * <ul>
+ *   <li>O envio sai de uma fila com uma thread só (ordem preservada); fila cheia descarta.</li>
+ *   <li>O LISTEN usa uma conexão própria, fora do pool, reaberta se cair. Notificações emitidas
+ *       enquanto ela está fora se perdem: os clientes se recuperam pelo catch-up
+ *       ({@code /app/instrumentos/sync}) ao ver um salto de versão.</li>
+ *   <li>Presença e ACKs não passam por aqui: ficam na instância da sessão.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Métricas: {@code instrumento.cluster.notify.sent}, {@code instrumento.cluster.notify.by-reference},
+ * {@code instrumento.cluster.notify.dropped}, {@code instrumento.cluster.notify.received} e
+ * {@code instrumento.cluster.notify.queue.depth}.</p>
+ */
+@Service
+public class InstrumentoClusterBridge {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoClusterBridge.class);
+
+    private static final String NOTIFY_SQL = "select pg_notify(?, ?)";
+    private static final String INSERT_PAYLOAD_SQL =
+            "insert into instrumento_broadcast_payloads (payload, created_at) values (?, ?) returning id";
+    private static final String SELECT_PAYLOAD_SQL = "select payload from instrumento_broadcast_payloads where id = ?";
+    private static final String DELETE_EXPIRED_SQL = "delete from instrumento_broadcast_payloads where created_at < ?";
+
+    /** LISTEN não aceita parâmetro: o canal entra no SQL, então só identificadores simples. */
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]{0,62}");
+    private static final String TOPIC_PREFIX = "/topic/instrumentos/";
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final InstrumentoVersionWatcher versionWatcher;
+    private final ObjectMapper objectMapper;
+    private final WebSocketBrokerProperties properties;
+
+    /** Avisos de gravação (C): qualquer modo com várias instâncias. */
+    private final boolean enabled;
+    /** Repasse de broadcasts (B): só no modo POSTGRES. */
+    private final boolean forwarding;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ThreadPoolExecutor sender;
+
+    /** Maior versão gravada por outra instância, por turma. */
+    private final ConcurrentHashMap<Long, Long> remoteCommitted = new ConcurrentHashMap<>();
+
+    private final Counter sent;
+    private final Counter byReference;
+    private final Counter dropped;
+    private final Counter received;
+
+    private volatile boolean running = true;
+    private Thread listener;
+
+    public InstrumentoClusterBridge(
+            JdbcTemplate jdbcTemplate,
+            DataSourceProperties dataSourceProperties,
+            SimpMessagingTemplate messagingTemplate,
+            InstrumentoVersionWatcher versionWatcher,
+            ObjectMapper objectMapper,
+            WebSocketBrokerProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.messagingTemplate = messagingTemplate;
+        this.versionWatcher = versionWatcher;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.forwarding = properties.isPostgres();
+        this.enabled = forwarding || properties.isRelay();
+        if (enabled && !CHANNEL_NAME.matcher(properties.getNotifyChannel()).matches()) {
+            throw new IllegalStateException("app.websocket.broker.notify-channel inválido: " + properties.getNotifyChannel());
+        }
+
+        this.sent = Counter.builder("instrumento.cluster.notify.sent").register(meterRegistry);
+        this.byReference = Counter.builder("instrumento.cluster.notify.by-reference").register(meterRegistry);
+        this.dropped = Counter.builder("instrumento.cluster.notify.dropped").register(meterRegistry);
+        this.received = Counter.builder("instrumento.cluster.notify.received").register(meterRegistry);
+
+        this.sender = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(properties.getNotifyQueueCapacity(), 1)),
+                r -> {
+                    Thread t = new Thread(r, "instrumento.cluster-notify");
+                    t.setDaemon(true);
+                    return t;
+                },
+                (r, executor) -> dropped.increment());
+        // Só depois de sender atribuído: uma coleta de métricas pode ler o gauge a qualquer momento.
+        Gauge.builder("instrumento.cluster.notify.queue.depth", sender, e -> e.getQueue().size()).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        listener = new Thread(this::listen, "instrumento.cluster-listen");
+        listener.setDaemon(true);
+        listener.start();
+        log.info("Avisos entre instâncias via Postgres ativos: canal={} instância={} repasse de broadcasts={}",
+                properties.getNotifyChannel(), nodeId, forwarding);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        sender.shutdown();
+        try {
+            sender.awaitTermination(5, TimeUnit.SECONDS);
+            if (listener != null) {
+                listener.join(5_000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Repassa às outras instâncias uma mensagem já entregue às sessões locais. Não bloqueia.
+     *
+     * @param destination destino em {@code /topic/instrumentos/**}
+     * @param message mensagem como foi publicada localmente (serializada aqui, na thread de envio)
+     */
+    public void forward(String destination, Long turmaId, long version, Object message) {
+        if (!forwarding || !running) {
+            return;
+        }
+        sender.execute(() -> {
+            String json;
+            try {
+                json = objectMapper.writeValueAsString(message);
+            } catch (Exception e) {
+                log.warn("Falha ao serializar broadcast turmaId={} para repasse: {}", turmaId, e.getMessage());
+                return;
+            }
+            String header = "B " + nodeId + " " + turmaId + " " + version + " " + destination;
+            String inline = header + "\n" + json;
+            if (fits(inline)) {
+                notify(inline);
+                return;
+            }
+            Long id = jdbcTemplate.queryForObject(INSERT_PAYLOAD_SQL, Long.class, json, Timestamp.valueOf(LocalDateTime.now()));
+            byReference.increment();
+            notify(header + " " + id);
+        });
+    }
+
+    /**
+     * Versão gravada no banco por esta instância: avisa as outras.
+     */
+    public void committed(Long turmaId, long version) {
+        if (!enabled) {
+            return;
+        }
+        // Gravamos por cima do que outra instância tinha gravado: não estamos mais atrás.
+        remoteCommitted.computeIfPresent(turmaId, (id, remote) -> remote <= version ? null : remote);
+        if (running) {
+            sender.execute(() -> notify("C " + nodeId + " " + turmaId + " " + version));
+        }
+    }
+
+    /**
+     * Se outra instância já gravou uma versão maior que {@code version} para a turma (cópia local desatualizada).
+     */
+    public boolean isBehind(Long turmaId, long version) {
+        Long remote = remoteCommitted.get(turmaId);
+        return remote != null && remote > version;
+    }
+
+    /**
+     * Apaga os corpos gravados por referência que já foram lidos (ou nunca serão).
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.broker.notify-payload-retention:PT5M}")
+    public void purgeExpiredPayloads() {
+        if (!forwarding) {
+            return;
+        }
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minus(properties.getNotifyPayloadRetention());
+            jdbcTemplate.update(DELETE_EXPIRED_SQL, Timestamp.valueOf(cutoff));
+        } catch (Exception e) {
+            log.warn("Falha ao apagar corpos de broadcast expirados: {}", e.getMessage());
+        }
+    }
+
+    private boolean fits(String text) {
+        int max = properties.getNotifyMaxPayloadBytes();
+        // Cada char ocupa ao menos 1 byte em UTF-8: só conta os bytes se puder caber.
+        return text.length() <= max && text.getBytes(StandardCharsets.UTF_8).length <= max;
+    }
+
+    private void notify(String payload) {
+        try {
+            jdbcTemplate.query(NOTIFY_SQL, (RowCallbackHandler) rs -> { }, properties.getNotifyChannel(), payload);
+            sent.increment();
+        } catch (Exception e) {
+            log.warn("Falha no NOTIFY do repasse de broadcasts: {}", e.getMessage());
+        }
+    }
+
+    private void listen() {
+        long delay = 1_000;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + properties.getNotifyChannel());
+                }
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                delay = 1_000;
+                while (running) {
+                    // Timeout curto para perceber o shutdown.
+                    PGNotification[] notifications = pg.getNotifications(1_000);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        handle(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Conexão do LISTEN caiu ({}); reconectando em {} ms", e.getMessage(), delay);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        try {
+            int newline = payload.indexOf('\n');
+            String[] header = (newline < 0 ? payload : payload.substring(0, newline)).split(" ");
+            if (header.length < 4 || nodeId.equals(header[1])) {
+                return;
+            }
+            received.increment();
+            Long turmaId = Long.valueOf(header[2]);
+            long version = Long.parseLong(header[3]);
+
+            if ("C".equals(header[0])) {
+                remoteCommitted.merge(turmaId, version, Math::max);
+                versionWatcher.committed(turmaId, version);
+                return;
+            }
+            if (!forwarding) {
+                return;
+            }
+            if (!"B".equals(header[0]) || header.length < 5 || !header[4].startsWith(TOPIC_PREFIX)) {
+                log.warn("Notificação de repasse ignorada: {}", payload.substring(0, Math.min(payload.length(), 120)));
+                return;
+            }
+            String json;
+            if (newline >= 0) {
+                json = payload.substring(newline + 1);
+            } else if (header.length > 5) {
+                List<String> rows = jdbcTemplate.queryForList(SELECT_PAYLOAD_SQL, String.class, Long.valueOf(header[5]));
+                if (rows.isEmpty()) {
+                    log.warn("Corpo de broadcast {} não encontrado (turmaId={} version={})", header[5], turmaId, version);
+                    return;
+                }
+                json = rows.get(0);
+            } else {
+                return;
+            }
+            deliver(header[4], json);
+        } catch (Exception e) {
+            log.warn("Falha ao repassar broadcast recebido: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Entrega às sessões locais o JSON já serializado (sem converter de novo).
+     */
+    private void deliver(String destination, String json) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), headers.getMessageHeaders()));
+    }
+}
@@ -2,19 +2,37 @@ package org.obeci.platform.services;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import jakarta.persistence.OptimisticLockException;
+import org.obeci.platform.configs.InstrumentoCacheProperties;
+import org.obeci.platform.configs.InstrumentoIngestProperties;
+import org.obeci.platform.dtos.collab.InstrumentoChangeLogDailyDto;
 import org.obeci.platform.dtos.collab.InstrumentoChangeLogDto;
+import org.obeci.platform.dtos.collab.InstrumentoRevisionDto;
+import org.obeci.platform.dtos.collab.InstrumentoWsAck;
+import org.obeci.platform.dtos.collab.InstrumentoWsPatchBroadcast;
+import org.obeci.platform.dtos.collab.InstrumentoWsSyncResponse;
 import org.obeci.platform.dtos.collab.InstrumentoWsUpdateBroadcast;
-import org.obeci.platform.entities.Instrumento;
 import org.obeci.platform.entities.InstrumentoChangeLog;
+import org.obeci.platform.exceptions.InvalidPatchException;
+import org.obeci.platform.repositories.InstrumentoChangeLogDailyRepository;
 import org.obeci.platform.repositories.InstrumentoChangeLogRepository;
-import org.obeci.platform.repositories.InstrumentoRepository;
+import org.obeci.platform.services.collab.ContentHash;
+import org.obeci.platform.services.collab.HotInstrumento;
+import org.obeci.platform.services.collab.InstrumentoBroadcastEvent;
+import org.obeci.platform.services.collab.JsonDiff;
+import org.obeci.platform.services.collab.JsonPatch;
+import org.obeci.platform.services.collab.SlideMerger;
+import org.obeci.platform.services.collab.SlidesIngest;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Serviço responsável por orquestrar colaboração em tempo real do Instrumento.
@@ -22,145 +40,503 @@ import java.time.LocalDateTime;
  * <p>Este serviço foi separado do {@link InstrumentoService} para não quebrar o que já funciona:
  * o fluxo REST atual continua existindo, e o modo colaborativo usa este serviço para:
  * <ul>
- *   <li>validar concorrência (version/optimistic locking)</li>
- *   <li>persistir o snapshot do documento</li>
- *   <li>registrar log de alterações</li>
- *   <li>broadcast para participantes via WebSocket</li>
+ *   <li>validar concorrência (version/optimistic locking), mesclando por slide
+ *       envios sobre versões recentes ({@link SlideMerger})</li>
+ *   <li>aplicar o snapshot do documento (ou um delta JSON Patch) no cache em memória,
+ *       que grava no banco em write-behind ({@link InstrumentoDocumentCache})</li>
+ *   <li>registrar log de alterações (gravado em batch, fora do caminho da atualização,
+ *       por {@link InstrumentoChangeLogWriter})</li>
+ *   <li>broadcast para participantes via WebSocket (agrupado por {@link InstrumentoBroadcastCoalescer}
+ *       e repassado entre instâncias por {@link InstrumentoClusterBridge}) e ACK individual ao autor,
+ *       entregues fora do lock do documento por {@link InstrumentoBroadcastDispatcher}</li>
  * </ul>
  * </p>
  */
 @Service
 public class InstrumentoCollaborationService {
 
-    private final InstrumentoRepository instrumentoRepository;
+    private final InstrumentoDocumentCache documentCache;
     private final InstrumentoChangeLogRepository changeLogRepository;
     private final ObjectMapper objectMapper;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final InstrumentoChangeLogWriter changeLogWriter;
+    private final InstrumentoChangeLogDailyRepository changeLogDailyRepository;
+    private final InstrumentoHistoryService historyService;
+    private final InstrumentoCacheProperties cacheProperties;
+    private final InstrumentoInlineImageExtractor inlineImageExtractor;
+    /** Limites do REST ({@code app.instrumentos.ingest}) aplicados aos documentos recebidos pelo WebSocket. */
+    private final SlidesIngest limits;
 
     public InstrumentoCollaborationService(
-            InstrumentoRepository instrumentoRepository,
+            InstrumentoDocumentCache documentCache,
             InstrumentoChangeLogRepository changeLogRepository,
             ObjectMapper objectMapper,
-            SimpMessagingTemplate messagingTemplate
+            ApplicationEventPublisher eventPublisher,
+            InstrumentoChangeLogWriter changeLogWriter,
+            InstrumentoChangeLogDailyRepository changeLogDailyRepository,
+            InstrumentoHistoryService historyService,
+            InstrumentoCacheProperties cacheProperties,
+            InstrumentoInlineImageExtractor inlineImageExtractor,
+            InstrumentoIngestProperties ingestProperties
     ) {
-        this.instrumentoRepository = instrumentoRepository;
+        this.documentCache = documentCache;
         this.changeLogRepository = changeLogRepository;
         this.objectMapper = objectMapper;
-        this.messagingTemplate = messagingTemplate;
+        this.eventPublisher = eventPublisher;
+        this.changeLogWriter = changeLogWriter;
+        this.changeLogDailyRepository = changeLogDailyRepository;
+        this.historyService = historyService;
+        this.cacheProperties = cacheProperties;
+        this.inlineImageExtractor = inlineImageExtractor;
+        this.limits = new SlidesIngest(
+                ingestProperties.getMaxDocumentSize().toBytes(),
+                ingestProperties.getMaxDepth(),
+                ingestProperties.getMaxSlides(),
+                null);
     }
 
     /**
      * Aplica uma atualização (snapshot) no instrumento e faz broadcast em seguida.
      *
+     * <p>A atualização é aplicada no {@link InstrumentoDocumentCache} (memória); a gravação
+     * no banco acontece depois, em write-behind.</p>
+     *
      * @param turmaId turma alvo
      * @param slidesNode snapshot (estrutura livre)
      * @param expectedVersion versão que o cliente acredita estar atual
      * @param actor username/email do autor
      * @param clientId id do cliente originador (para evitar eco)
+     * @param sessionId sessão STOMP do autor: não recebe o broadcast, só o ACK (null = REST)
      * @param eventType tipo do evento (ex.: SNAPSHOT_UPDATE)
      * @param summary resumo legível para o log
      */
-    @Transactional
     public InstrumentoWsUpdateBroadcast applySnapshotUpdate(
             Long turmaId,
             JsonNode slidesNode,
             Long expectedVersion,
             String actor,
             String clientId,
+            String sessionId,
             String eventType,
             String summary
     ) {
-        Instrumento instrumento = instrumentoRepository.findByTurmaId(turmaId)
-                .orElseThrow(() -> new IllegalStateException("Instrumento não encontrado para turmaId=" + turmaId));
+        limits.check(slidesNode);
+        // Antes do lock: decodificar, calcular o hash e gravar as imagens não trava o documento. Um
+        // VERSION_CONFLICT em seguida deixa as imagens gravadas sem uso até o novo envio, que as
+        // reaproveita (deduplicadas por SHA-256). Se algo foi reescrito, o autor também precisa
+        // receber o snapshot: o estado local dele ainda tem as data: URIs.
+        boolean rewritten = inlineImageExtractor.extract(slidesNode);
+        return documentCache.withDocument(turmaId, doc -> {
+            // Controle de concorrência explícito: se o cliente está desatualizado, não sobrescrevemos
+            // às cegas; tentamos o merge por slide contra a versão base que ele conhecia.
+            JsonNode effective = slidesNode;
+            Long mergedFrom = null;
+            if (expectedVersion != null && doc.getVersion() != expectedVersion) {
+                effective = mergeStale(doc, expectedVersion, slidesNode);
+                mergedFrom = expectedVersion;
+            }
+            return applySnapshot(doc, effective, mergedFrom, rewritten, actor, clientId, sessionId, eventType, summary);
+        });
+    }
 
-        // Controle de concorrência explícito: se o cliente está desatualizado, não sobrescrevemos.
-        if (expectedVersion != null && instrumento.getVersion() != null && !instrumento.getVersion().equals(expectedVersion)) {
-            throw new OptimisticLockException("Versão desatualizada. expected=" + expectedVersion + " actual=" + instrumento.getVersion());
+    /**
+     * Catch-up de um cliente que (re)assinou a turma conhecendo a versão {@code lastVersion}.
+     *
+     * <p>Responde só com as operações perdidas (juntadas em um único patch) enquanto os passos
+     * estiverem no buffer do documento em memória; senão, ou se o patch passaria de
+     * {@code app.instrumentos.cache.sync-max-ops}, com o snapshot completo.</p>
+     */
+    public InstrumentoWsSyncResponse sync(Long turmaId, Long lastVersion, String clientId) {
+        return documentCache.withDocument(turmaId, doc -> {
+            long version = doc.getVersion();
+            if (lastVersion != null && lastVersion == version) {
+                return new InstrumentoWsSyncResponse("UP_TO_DATE", turmaId, clientId, lastVersion, version,
+                        null, null, LocalDateTime.now());
+            }
+            if (lastVersion != null && lastVersion < version) {
+                List<HotInstrumento.Step> steps = doc.stepsSince(lastVersion);
+                if (steps != null) {
+                    ArrayNode ops = objectMapper.createArrayNode();
+                    for (HotInstrumento.Step step : steps) {
+                        ops.addAll((ArrayNode) step.ops());
+                    }
+                    if (ops.size() <= cacheProperties.getSyncMaxOps()) {
+                        return new InstrumentoWsSyncResponse("PATCH", turmaId, clientId, lastVersion, version,
+                                ops, null, LocalDateTime.now());
+                    }
+                }
+            }
+            return new InstrumentoWsSyncResponse("SNAPSHOT", turmaId, clientId, lastVersion, version,
+                    null, currentTree(doc), LocalDateTime.now());
+        });
+    }
+
+    /**
+     * Restaura uma versão do histórico como nova versão do documento.
+     *
+     * <p>Não reescreve o passado: o conteúdo reconstruído ({@link InstrumentoHistoryService}) é aplicado
+     * como um snapshot comum (broadcast, log {@code RESTORE} e nova revisão), gravado antes de retornar.</p>
+     *
+     * @return vazio se a versão não está no histórico
+     */
+    public Optional<InstrumentoWsUpdateBroadcast> restoreVersion(Long instrumentoId, Long turmaId, long version, String actor) {
+        Optional<InstrumentoHistoryService.Materialized> revision = historyService.materialize(instrumentoId, version);
+        if (revision.isEmpty()) {
+            return Optional.empty();
         }
+        InstrumentoWsUpdateBroadcast broadcast = applySnapshotUpdate(turmaId, revision.get().slides(), null, actor, null, null,
+                "RESTORE", "Restaurou a versão " + version);
+        documentCache.flush(turmaId);
+        return Optional.of(broadcast);
+    }
 
-        try {
-            String json = objectMapper.writeValueAsString(slidesNode);
-
-            // Defesa: se o snapshot recebido é idêntico ao que já está no banco,
-            // evitamos gravar novamente e evitamos criar spam no change log.
-            // Ainda assim fazemos broadcast como ACK para o cliente concluir o "save".
-            if (json != null && json.equals(instrumento.getSlidesJson())) {
-                InstrumentoWsUpdateBroadcast broadcast = new InstrumentoWsUpdateBroadcast(
-                        instrumento.getId(),
-                        instrumento.getTurmaId(),
-                        slidesNode,
-                        instrumento.getVersion(),
+    /**
+     * Versões disponíveis no histórico, mais recentes primeiro.
+     */
+    public List<InstrumentoRevisionDto> getRevisions(Long instrumentoId, int limit) {
+        return historyService.list(instrumentoId, limit).stream()
+                .map(r -> new InstrumentoRevisionDto(
+                        r.getVersion(),
+                        r.getKind().name(),
+                        r.getContentHash(),
+                        r.getSizeBytes(),
+                        r.getCreatedAt()
+                ))
+                .toList();
+    }
+
+    /**
+     * Aplica uma atualização incremental (JSON Patch, RFC 6902) no instrumento.
+     *
+     * <p>Diferente do snapshot, o broadcast carrega apenas as operações e a nova versão,
+     * reduzindo drasticamente o tráfego em documentos grandes. O snapshot continua sendo
+     * o caminho de ressincronização.</p>
+     *
+     * @param turmaId turma alvo
+     * @param ops operações RFC 6902
+     * @param expectedVersion versão sobre a qual as operações foram calculadas (obrigatória;
+     *                        se antiga mas ainda no histórico, o resultado é mesclado por slide)
+     * @param actor username/email do autor
+     * @param clientId id do cliente originador (para evitar eco)
+     * @param sessionId sessão STOMP do autor: não recebe o broadcast, só o ACK
+     * @param eventType tipo do evento (ex.: PATCH_UPDATE)
+     * @param summary resumo legível para o log
+     */
+    public void applyPatchUpdate(
+            Long turmaId,
+            JsonNode ops,
+            Long expectedVersion,
+            String actor,
+            String clientId,
+            String sessionId,
+            String eventType,
+            String summary
+    ) {
+        // Como no snapshot, fora do lock. As operações reescritas são as que ficam no buffer de
+        // catch-up e vão no broadcast; o autor as recebe no ACK.
+        JsonNode rewrittenOps = inlineImageExtractor.extractPatch(ops) ? ops : null;
+        // Os dois caminhos abaixo produzem broadcasts de tipos diferentes (snapshot mesclado ou delta).
+        documentCache.<Object>withDocument(turmaId, doc -> {
+            if (expectedVersion == null) {
+                throw new OptimisticLockException("expectedVersion é obrigatório para patch. actual=" + doc.getVersion());
+            }
+            // Patch é posicional: sobre uma versão antiga, aplicamos as operações na base que o
+            // cliente conhecia e mesclamos o resultado por slide (vira um broadcast de snapshot).
+            if (doc.getVersion() != expectedVersion) {
+                JsonNode base = doc.getVersionTree(expectedVersion);
+                if (base == null) {
+                    throw new OptimisticLockException("Versão desatualizada. expected=" + expectedVersion + " actual=" + doc.getVersion());
+                }
+                JsonNode incoming = requireSlides(JsonPatch.apply(base, ops));
+                limits.check(incoming);
+                return applySnapshot(doc, mergeStale(doc, expectedVersion, incoming), expectedVersion, rewrittenOps != null,
+                        actor, clientId, sessionId, eventType, summary);
+            }
+
+            JsonNode patched = requireSlides(JsonPatch.apply(currentTree(doc), ops));
+            limits.check(patched);
+            long baseVersion = doc.getVersion();
+            String hash = ContentHash.canonical(patched);
+
+            // Mesmo critério do snapshot: patch sem efeito vira apenas ACK (sem gravar nem logar).
+            if (hash.equals(currentHash(doc))) {
+                InstrumentoWsPatchBroadcast broadcast = new InstrumentoWsPatchBroadcast(
+                        doc.getInstrumentoId(),
+                        doc.getTurmaId(),
+                        objectMapper.createArrayNode(),
+                        baseVersion,
+                        baseVersion,
                         actor,
                         LocalDateTime.now(),
                         clientId,
                         null
                 );
-                messagingTemplate.convertAndSend("/topic/instrumentos/" + turmaId, broadcast);
+                publish(doc, broadcast, null, actor, clientId, sessionId, null, false, false, rewrittenOps);
                 return broadcast;
             }
 
-            instrumento.setSlidesJson(json);
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Falha ao serializar slides", e);
-        }
+            long version = doc.apply(writeDocument(patched), patched, hash);
+            doc.recordStep(baseVersion, version, ops);
+            InstrumentoChangeLogDto logDto = recordChange(doc, actor, clientId, eventType, summary, "PATCH_UPDATE");
 
-        Instrumento saved = instrumentoRepository.save(instrumento);
+            InstrumentoWsPatchBroadcast broadcast = new InstrumentoWsPatchBroadcast(
+                    doc.getInstrumentoId(),
+                    doc.getTurmaId(),
+                    ops,
+                    baseVersion,
+                    version,
+                    actor,
+                    LocalDateTime.now(),
+                    clientId,
+                    logDto
+            );
 
-        String effectiveEventType = (eventType == null || eventType.isBlank()) ? "SNAPSHOT_UPDATE" : eventType;
-        String effectiveSummary = (summary == null || summary.isBlank()) ? "Atualizou o instrumento" : summary;
+            publish(doc, broadcast, logDto, actor, clientId, sessionId, null, false, true, rewrittenOps);
+            return broadcast;
+        });
+    }
 
-        InstrumentoChangeLogDto logDto = null;
-        if (shouldPersistChangeLog(effectiveEventType, effectiveSummary)) {
-            // Log de alterações (humano + auditável)
-            InstrumentoChangeLog log = new InstrumentoChangeLog();
-            log.setInstrumentoId(saved.getId());
-            log.setTurmaId(saved.getTurmaId());
-            log.setActor(actor);
-            log.setEventType(effectiveEventType);
-            log.setSummary(effectiveSummary);
-
-            // Payload reduzido (não o documento inteiro). Útil para depuração e UI.
-            try {
-                log.setPayloadJson(objectMapper.createObjectNode()
-                        .put("clientId", clientId == null ? "" : clientId)
-                        .put("version", saved.getVersion() == null ? -1 : saved.getVersion())
-                        .toString());
-            } catch (Exception ignored) {
-                // Não falhar operação por causa do payload do log.
-            }
+    /**
+     * Aplica um snapshot (possivelmente já mesclado) e publica o broadcast.
+     *
+     * <p>Deve ser chamado dentro de {@link InstrumentoDocumentCache#withDocument}.</p>
+     */
+    private InstrumentoWsUpdateBroadcast applySnapshot(
+            HotInstrumento doc,
+            JsonNode slidesNode,
+            Long mergedFrom,
+            boolean rewritten,
+            String actor,
+            String clientId,
+            String sessionId,
+            String eventType,
+            String summary
+    ) {
+        Long turmaId = doc.getTurmaId();
+        String hash = ContentHash.canonical(slidesNode);
 
-            InstrumentoChangeLog persistedLog = changeLogRepository.save(log);
-            logDto = new InstrumentoChangeLogDto(
-                    persistedLog.getId(),
-                    persistedLog.getInstrumentoId(),
-                    persistedLog.getTurmaId(),
-                    persistedLog.getActor(),
-                    persistedLog.getEventType(),
-                    persistedLog.getSummary(),
-                    persistedLog.getPayloadJson(),
-                    persistedLog.getCreatedAt()
+        // Defesa: se o snapshot recebido é idêntico ao estado atual (mesmo hash canônico),
+        // evitamos gravar novamente e evitamos criar spam no change log.
+        // Ainda assim fazemos broadcast como ACK para o cliente concluir o "save".
+        if (hash.equals(currentHash(doc))) {
+            InstrumentoWsUpdateBroadcast broadcast = new InstrumentoWsUpdateBroadcast(
+                    doc.getInstrumentoId(),
+                    turmaId,
+                    slidesNode,
+                    doc.getVersion(),
+                    actor,
+                    LocalDateTime.now(),
+                    clientId,
+                    null,
+                    mergedFrom
             );
+            publish(doc, broadcast, null, actor, clientId, sessionId, mergedFrom, rewritten, false, null);
+            return broadcast;
         }
 
+        // Garante a árvore da versão atual no histórico antes de substituí-la (base de merges futuros).
+        JsonNode previous = currentTree(doc);
+        long baseVersion = doc.getVersion();
+        long version = doc.apply(writeDocument(slidesNode), slidesNode, hash);
+        // Catch-up de quem reconecta: guarda só a diferença, não o snapshot.
+        doc.recordStep(baseVersion, version, JsonDiff.diff(previous, slidesNode));
+        InstrumentoChangeLogDto logDto = recordChange(doc, actor, clientId, eventType, summary, "SNAPSHOT_UPDATE");
+
         InstrumentoWsUpdateBroadcast broadcast = new InstrumentoWsUpdateBroadcast(
-                saved.getId(),
-                saved.getTurmaId(),
+                doc.getInstrumentoId(),
+                turmaId,
                 slidesNode,
-                saved.getVersion(),
+                version,
                 actor,
                 LocalDateTime.now(),
                 clientId,
-                logDto
+                logDto,
+                mergedFrom
         );
 
         // Broadcast do estado atualizado para todos os clientes da turma.
-        messagingTemplate.convertAndSend("/topic/instrumentos/" + turmaId, broadcast);
-        // Broadcast também do log (painel de alterações pode assinar esse tópico).
-        if (logDto != null) {
-            messagingTemplate.convertAndSend("/topic/instrumentos/" + turmaId + "/changes", logDto);
+        publish(doc, broadcast, logDto, actor, clientId, sessionId, mergedFrom, rewritten, true, null);
+        return broadcast;
+    }
+
+    /**
+     * Merge de três vias de um envio feito sobre a versão {@code expectedVersion}.
+     *
+     * @throws OptimisticLockException se a base já saiu do histórico ou se o mesmo slide
+     *                                 foi alterado dos dois lados
+     */
+    private JsonNode mergeStale(HotInstrumento doc, long expectedVersion, JsonNode incoming) {
+        JsonNode base = doc.getVersionTree(expectedVersion);
+        if (base == null) {
+            throw new OptimisticLockException("Versão desatualizada. expected=" + expectedVersion + " actual=" + doc.getVersion());
         }
+        return SlideMerger.merge(base, currentTree(doc), incoming)
+                .orElseThrow(() -> new OptimisticLockException(
+                        "Conflito no mesmo slide. expected=" + expectedVersion + " actual=" + doc.getVersion()));
+    }
 
-        return broadcast;
+    /**
+     * O patch pode trocar ou remover qualquer coisa, inclusive a raiz ({@code replace ""}); o resultado
+     * ainda precisa ser o documento que o resto do sistema espera: um array de slides (objetos).
+     */
+    private static JsonNode requireSlides(JsonNode patched) {
+        if (patched == null || !patched.isArray()) {
+            throw new InvalidPatchException("O patch deve manter o documento como um array de slides");
+        }
+        for (JsonNode slide : patched) {
+            if (!slide.isObject()) {
+                throw new InvalidPatchException("O patch deve manter cada slide como um objeto");
+            }
+        }
+        return patched;
+    }
+
+    /**
+     * Árvore atual do documento, reaproveitando a já parseada quando disponível.
+     */
+    private JsonNode currentTree(HotInstrumento doc) {
+        if (doc.getSlidesTree() == null) {
+            try {
+                doc.setSlidesTree(objectMapper.readTree(doc.getSlidesJson()));
+            } catch (Exception e) {
+                throw new IllegalStateException("Falha ao ler slides atuais do instrumento", e);
+            }
+        }
+        return doc.getSlidesTree();
+    }
+
+    /**
+     * Hash canônico do estado atual; documentos antigos (sem hash gravado) têm o hash calculado uma vez.
+     */
+    private String currentHash(HotInstrumento doc) {
+        if (doc.getContentHash() == null) {
+            doc.setContentHash(ContentHash.canonical(currentTree(doc)));
+        }
+        return doc.getContentHash();
+    }
+
+    /**
+     * JSON do documento que vai ser aplicado, dentro do limite de tamanho do REST.
+     */
+    private String writeDocument(JsonNode slides) {
+        String json = writeJson(slides);
+        limits.checkSize(json);
+        return json;
+    }
+
+    private String writeJson(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsString(node);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Falha ao serializar slides", e);
+        }
+    }
+
+    /**
+     * Registra a entrada de log (quando aplicável) para uma atualização já aplicada.
+     *
+     * @return DTO do log (ainda sem id, gravado depois pelo {@link InstrumentoChangeLogWriter};
+     *         possivelmente a entrada anterior agregada), ou null se o evento foi filtrado
+     */
+    private InstrumentoChangeLogDto recordChange(
+            HotInstrumento doc,
+            String actor,
+            String clientId,
+            String eventType,
+            String summary,
+            String defaultEventType
+    ) {
+        String effectiveEventType = (eventType == null || eventType.isBlank()) ? defaultEventType : eventType;
+        String effectiveSummary = (summary == null || summary.isBlank()) ? "Atualizou o instrumento" : summary;
+
+        if (!shouldPersistChangeLog(effectiveEventType, effectiveSummary)) {
+            return null;
+        }
+
+        // Log de alterações (humano + auditável)
+        InstrumentoChangeLog log = new InstrumentoChangeLog();
+        log.setInstrumentoId(doc.getInstrumentoId());
+        log.setTurmaId(doc.getTurmaId());
+        log.setActor(actor);
+        log.setEventType(effectiveEventType);
+        log.setSummary(effectiveSummary);
+
+        // Payload reduzido (não o documento inteiro). Útil para depuração e UI.
+        try {
+            log.setPayloadJson(objectMapper.createObjectNode()
+                    .put("clientId", clientId == null ? "" : clientId)
+                    .put("version", doc.getVersion())
+                    .toString());
+        } catch (Exception ignored) {
+            // Não falhar operação por causa do payload do log.
+        }
+
+        // Gravação assíncrona em batch: o caminho da atualização não espera o INSERT.
+        // Edições seguidas do mesmo ator são agregadas na entrada anterior (mesmo entryKey).
+        LocalDateTime now = LocalDateTime.now();
+        log.setEntryKey(UUID.randomUUID().toString());
+        log.setCreatedAt(now);
+        log.setLastAt(now);
+        return toDto(changeLogWriter.record(log));
+    }
+
+    /**
+     * Publica o que a atualização gerou (broadcast no tópico da turma, entrada de log, ACK do autor)
+     * como {@link InstrumentoBroadcastEvent}; {@link InstrumentoBroadcastDispatcher} entrega fora do
+     * lock do documento, na ordem das versões.
+     *
+     * <p>O autor já tem o estado que enviou: a sessão dele fica fora do broadcast e recebe só o
+     * ACK. Exceção: conteúdo mesclado pelo servidor ({@code mergedFrom}) ou com imagens extraídas
+     * ({@code rewritten}), que o autor ainda não tem. Atualização sem efeito não gera broadcast
+     * (os demais já têm esse estado), salvo nessas exceções. Um patch com imagens extraídas não é
+     * reenviado ao autor (aplicar as operações de novo duplicaria o que ele já aplicou): as operações
+     * reescritas ({@code rewrittenOps}) vão no ACK.</p>
+     */
+    private void publish(
+            HotInstrumento doc,
+            Object broadcast,
+            InstrumentoChangeLogDto logDto,
+            String actor,
+            String clientId,
+            String sessionId,
+            Long mergedFrom,
+            boolean rewritten,
+            boolean changed,
+            JsonNode rewrittenOps
+    ) {
+        Long turmaId = doc.getTurmaId();
+        boolean authorOutdated = mergedFrom != null || rewritten;
+        // O eco no tópico pode sair atrasado ou fundido com o de outro cliente; o ACK não.
+        InstrumentoWsAck ack = actor == null
+                ? null
+                : new InstrumentoWsAck(turmaId, clientId, doc.getVersion(), changed, LocalDateTime.now(), rewrittenOps);
+        eventPublisher.publishEvent(new InstrumentoBroadcastEvent(
+                turmaId,
+                changed || authorOutdated ? broadcast : null,
+                doc.getSlidesTree(),
+                authorOutdated ? null : sessionId,
+                logDto,
+                doc.getVersion(),
+                actor,
+                sessionId,
+                ack
+        ));
+    }
+
+    private static InstrumentoChangeLogDto toDto(InstrumentoChangeLog e) {
+        return new InstrumentoChangeLogDto(
+                e.getId(),
+                e.getEntryKey(),
+                e.getInstrumentoId(),
+                e.getTurmaId(),
+                e.getActor(),
+                e.getEventType(),
+                e.getSummary(),
+                e.getPayloadJson(),
+                e.getCreatedAt(),
+                e.getEventCount() == null ? 1 : e.getEventCount(),
+                e.getLastAt() == null ? e.getCreatedAt() : e.getLastAt()
+        );
     }
 
     private static boolean shouldPersistChangeLog(String eventType, String summary) {
@@ -179,20 +555,32 @@ public class InstrumentoCollaborationService {
      * Carrega o histórico mais recente de alterações para uma turma.
      */
     @Transactional(readOnly = true)
-    public java.util.List<InstrumentoChangeLogDto> getRecentChanges(Long turmaId, int limit) {
+    public List<InstrumentoChangeLogDto> getRecentChanges(Long turmaId, int limit) {
         int safeLimit = Math.min(Math.max(limit, 1), 200);
         return changeLogRepository
                 .findByTurmaIdOrderByCreatedAtDesc(turmaId, PageRequest.of(0, safeLimit))
                 .stream()
-                .map(e -> new InstrumentoChangeLogDto(
-                        e.getId(),
-                        e.getInstrumentoId(),
-                        e.getTurmaId(),
-                        e.getActor(),
-                        e.getEventType(),
-                        e.getSummary(),
-                        e.getPayloadJson(),
-                        e.getCreatedAt()
+                .map(InstrumentoCollaborationService::toDto)
+                .toList();
+    }
+
+    /**
+     * Resumos diários (entradas antigas já compactadas pela retenção), mais recentes primeiro.
+     */
+    @Transactional(readOnly = true)
+    public List<InstrumentoChangeLogDailyDto> getDailySummaries(Long turmaId, int limit) {
+        int safeLimit = Math.min(Math.max(limit, 1), 500);
+        return changeLogDailyRepository
+                .findByTurmaIdOrderByDayDescActorAsc(turmaId, PageRequest.of(0, safeLimit))
+                .stream()
+                .map(d -> new InstrumentoChangeLogDailyDto(
+                        d.getTurmaId(),
+                        d.getDay(),
+                        d.getActor(),
+                        d.getEventType(),
+                        d.getEventCount(),
+                        d.getFirstAt(),
+                        d.getLastAt()
                 ))
                 .toList();
     }
@@ -0,0 +1,614 @@
+package org.obeci.platform.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.OptimisticLockException;
+import org.obeci.platform.configs.InstrumentoCacheProperties;
+import org.obeci.platform.dtos.collab.InstrumentoWsUpdateBroadcast;
+import org.obeci.platform.entities.Instrumento;
+import org.obeci.platform.repositories.InstrumentoRepository;
+import org.obeci.platform.services.collab.ContentHash;
+import org.obeci.platform.services.collab.HotInstrumento;
+import org.obeci.platform.services.collab.InstrumentoBroadcastEvent;
+import org.obeci.platform.services.collab.SlideMerger;
+import org.obeci.platform.services.collab.TurmaDeletedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Cache autoritativo em memória para instrumentos em edição ("documentos quentes").
+ *
+ * <p>Motivo: no modo colaborativo cada mensagem fazia uma leitura e uma escrita do LOB
+ * inteiro no Postgres. Com este cache, as atualizações são aplicadas em memória e o
+ * documento é gravado no banco de forma assíncrona (write-behind):
+ * <ul>
+ *   <li>periodicamente ({@code app.instrumentos.cache.flush-interval})</li>
+ *   <li>quando as edições param ({@code app.instrumentos.cache.idle-flush-after})</li>
+ *   <li>antes de sair da memória (LRU/ociosidade) e no shutdown</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Pontos críticos:
+ * <ul>
+ *   <li>Enquanto o documento está no cache, ele é a fonte de verdade; leituras REST devem
+ *       passar por {@link #peek(Long)} antes de ir ao banco.</li>
+ *   <li>Escritas que não passam por aqui são detectadas no flush (versão divergente). As
+ *       versões em memória já foram confirmadas aos clientes, então não são descartadas: são
+ *       mescladas por slide sobre o que está no banco ({@link SlideMerger}) e viram uma versão
+ *       nova, enviada como snapshot a toda a turma. Slide alterado dos dois lados fica com o
+ *       conteúdo do banco.</li>
+ *   <li>Com várias instâncias, cada uma sabe pelo {@link InstrumentoClusterBridge} quando outra
+ *       gravou a turma. Cópia limpa atrás do banco é descartada; cópia suja é gravada (e, portanto,
+ *       mesclada) antes da próxima escrita e na próxima varredura, para as duas não divergirem.</li>
+ *   <li>Turma excluída ({@link TurmaDeletedEvent}, ou linha ausente no flush): o documento sai da
+ *       memória mesmo com alterações não gravadas.</li>
+ *   <li>Alterações ainda não gravadas são perdidas se o processo morrer abruptamente
+ *       (trade-off aceito do write-behind; ajuste flush-interval conforme necessário).</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Métricas: {@code instrumento.document.lock.held} (tempo dentro de {@link #withDocument}),
+ * {@code instrumento.document.rebased} (conflitos no flush resolvidos por merge) e
+ * {@code instrumento.document.rebase.conflicts} (conflitos em que o conteúdo do banco prevaleceu).</p>
+ */
+@Service
+public class InstrumentoDocumentCache {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoDocumentCache.class);
+
+    private final InstrumentoRepository instrumentoRepository;
+    private final InstrumentoDocumentStore documentStore;
+    private final InstrumentoCacheProperties properties;
+    private final InstrumentoHistoryService historyService;
+    private final InstrumentoVersionWatcher versionWatcher;
+    private final InstrumentoClusterBridge clusterBridge;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Timer lockHeld;
+    private final Counter rebased;
+    private final Counter rebaseConflicts;
+
+    private final ConcurrentHashMap<Long, HotInstrumento> documents = new ConcurrentHashMap<>();
+
+    /**
+     * Identificação da versão atual do documento.
+     *
+     * @param contentHash null em linhas antigas ainda sem backfill
+     */
+    public record DocumentHead(Long id, long version, String contentHash) {
+    }
+
+    /**
+     * Documento como está armazenado (texto em memória/{@code slides_json} ou bytes gzip de
+     * {@code slides_gzip}), para ser copiado para a resposta sem montar uma árvore JSON.
+     *
+     * @param json documento em texto; null quando vem em {@code gzip}
+     * @param gzip bytes gzip gravados; null quando vem em {@code json}
+     */
+    public record RawDocument(Long id, Long turmaId, Long version, String contentHash, String json, byte[] gzip) {
+
+        /**
+         * Stream do array de slides em UTF-8 (descomprimido sob demanda, se vier em {@code gzip}).
+         */
+        public InputStream openSlides() throws IOException {
+            if (gzip == null) {
+                return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+            }
+            return new GZIPInputStream(new ByteArrayInputStream(gzip));
+        }
+    }
+
+    public InstrumentoDocumentCache(
+            InstrumentoRepository instrumentoRepository,
+            InstrumentoDocumentStore documentStore,
+            InstrumentoCacheProperties properties,
+            InstrumentoHistoryService historyService,
+            InstrumentoVersionWatcher versionWatcher,
+            InstrumentoClusterBridge clusterBridge,
+            PlatformTransactionManager transactionManager,
+            ObjectMapper objectMapper,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry
+    ) {
+        this.instrumentoRepository = instrumentoRepository;
+        this.documentStore = documentStore;
+        this.properties = properties;
+        this.historyService = historyService;
+        this.versionWatcher = versionWatcher;
+        this.clusterBridge = clusterBridge;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.eventPublisher = eventPublisher;
+        this.lockHeld = Timer.builder("instrumento.document.lock.held").register(meterRegistry);
+        this.rebased = Counter.builder("instrumento.document.rebased").register(meterRegistry);
+        this.rebaseConflicts = Counter.builder("instrumento.document.rebase.conflicts").register(meterRegistry);
+    }
+
+    /**
+     * Executa {@code action} com acesso exclusivo ao documento da turma, carregando-o do banco se necessário.
+     *
+     * @throws IllegalStateException se não existir instrumento para a turma
+     */
+    public <T> T withDocument(Long turmaId, Function<HotInstrumento, T> action) {
+        while (true) {
+            HotInstrumento doc = acquire(turmaId);
+            long before;
+            long after;
+            T result;
+            synchronized (doc) {
+                // Pode ter sido removido entre o get e o lock: tenta de novo com uma nova instância.
+                if (doc.isEvicted()) {
+                    continue;
+                }
+                doc.touch();
+                before = doc.getVersion();
+                long start = System.nanoTime();
+                try {
+                    result = action.apply(doc);
+                } finally {
+                    lockHeld.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                after = doc.getVersion();
+            }
+            // A versão nova já é servida pelas leituras (peek): o long-poll não espera o write-behind.
+            if (after != before) {
+                versionWatcher.committed(turmaId, after);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Retorna o estado em memória (cópia destacada), sem ir ao banco.
+     */
+    public Optional<Instrumento> peek(Long turmaId) {
+        HotInstrumento doc = hot(turmaId);
+        if (doc == null) {
+            return Optional.empty();
+        }
+        synchronized (doc) {
+            if (doc.isEvicted()) {
+                return Optional.empty();
+            }
+            doc.touch();
+            return Optional.of(doc.toEntity());
+        }
+    }
+
+    /**
+     * Versão e hash atuais do documento (memória, se quente; senão banco), sem copiar o conteúdo.
+     * Usado para responder requisições condicionais antes de ler o documento.
+     */
+    public Optional<DocumentHead> readHead(Long turmaId) {
+        HotInstrumento doc = hot(turmaId);
+        if (doc != null) {
+            synchronized (doc) {
+                if (!doc.isEvicted()) {
+                    return Optional.of(new DocumentHead(doc.getInstrumentoId(), doc.getVersion(), doc.getContentHash()));
+                }
+            }
+        }
+        return instrumentoRepository.findVersionStateByTurmaId(turmaId)
+                .map(s -> new DocumentHead(s.getId(), s.getVersion() == null ? 0L : s.getVersion(), s.getContentHash()));
+    }
+
+    /**
+     * Leitura para REST: estado em memória se o documento está quente; caso contrário, carrega
+     * do banco (montando os slides, se for o caso) sem colocar o documento no cache.
+     */
+    public Optional<Instrumento> read(Long turmaId) {
+        Optional<Instrumento> hot = peek(turmaId);
+        if (hot.isPresent()) {
+            return hot;
+        }
+        return transactionTemplate.execute(status -> instrumentoRepository.findByTurmaId(turmaId)
+                .map(entity -> {
+                    Instrumento copy = new Instrumento();
+                    copy.setId(entity.getId());
+                    copy.setTurmaId(entity.getTurmaId());
+                    copy.setSlidesJson(documentStore.load(entity).slidesJson());
+                    copy.setContentHash(entity.getContentHash());
+                    copy.setVersion(entity.getVersion());
+                    copy.setDataCriacao(entity.getDataCriacao());
+                    copy.setDataModificacao(entity.getDataModificacao());
+                    return copy;
+                }));
+    }
+
+    /**
+     * Igual a {@link #read(Long)}, mas sem descomprimir nem copiar o documento gravado comprimido.
+     */
+    public Optional<RawDocument> readRaw(Long turmaId) {
+        Optional<Instrumento> hot = peek(turmaId);
+        if (hot.isEmpty()) {
+            Optional<InstrumentoRepository.CompressedDocument> stored = readCompressed(turmaId);
+            if (stored.isPresent()) {
+                InstrumentoRepository.CompressedDocument d = stored.get();
+                return Optional.of(new RawDocument(d.getId(), turmaId, d.getVersion(), d.getContentHash(), null, d.getSlidesGzip()));
+            }
+        }
+        return hot.or(() -> read(turmaId))
+                .map(i -> new RawDocument(i.getId(), i.getTurmaId(), i.getVersion(), i.getContentHash(), i.getSlidesJson(), null));
+    }
+
+    /**
+     * Bytes gzip gravados do documento, só quando ele não está quente (no cache, o banco pode estar atrás).
+     */
+    private Optional<InstrumentoRepository.CompressedDocument> readCompressed(Long turmaId) {
+        if (documents.containsKey(turmaId)) {
+            return Optional.empty();
+        }
+        return instrumentoRepository.findCompressedByTurmaId(turmaId);
+    }
+
+    /**
+     * Grava imediatamente o documento da turma, se houver alterações pendentes.
+     */
+    public void flush(Long turmaId) {
+        HotInstrumento doc = documents.get(turmaId);
+        if (doc != null) {
+            flush(doc);
+        }
+    }
+
+    /**
+     * Rotina periódica: grava documentos alterados e libera os ociosos.
+     */
+    @Scheduled(fixedDelayString = "${app.instrumentos.cache.sweep-interval:PT1S}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        long flushInterval = properties.getFlushInterval().toMillis();
+        long idleFlush = properties.getIdleFlushAfter().toMillis();
+        long evictAfter = properties.getEvictAfter().toMillis();
+
+        for (HotInstrumento doc : documents.values()) {
+            boolean dueFlush;
+            synchronized (doc) {
+                dueFlush = doc.isDirty()
+                        && (now - doc.getDirtySinceMillis() >= flushInterval || now - doc.getLastWriteMillis() >= idleFlush
+                            || isBehind(doc));
+            }
+            if (dueFlush) {
+                flush(doc);
+            }
+            if (now - doc.getLastAccessMillis() >= evictAfter) {
+                evict(doc);
+            }
+        }
+    }
+
+    /**
+     * No shutdown, grava tudo que ainda está pendente.
+     */
+    @PreDestroy
+    public void flushAll() {
+        for (HotInstrumento doc : documents.values()) {
+            flush(doc);
+        }
+    }
+
+    /**
+     * Documento em memória da turma. Com várias instâncias, descarta antes a cópia sem alterações
+     * pendentes se outra instância já gravou uma versão mais nova (o próximo acesso relê do banco).
+     * Cópias sujas não podem ser descartadas (já confirmadas aos clientes): ficam para
+     * {@link #acquire}, que as mescla com o banco antes da próxima escrita.
+     */
+    private HotInstrumento hot(Long turmaId) {
+        HotInstrumento doc = documents.get(turmaId);
+        if (doc == null || !clusterBridge.isEnabled()) {
+            return doc;
+        }
+        synchronized (doc) {
+            if (!doc.isDirty() && !doc.isEvicted() && isBehind(doc)) {
+                doc.setEvicted(true);
+                documents.remove(turmaId, doc);
+                return null;
+            }
+        }
+        return doc;
+    }
+
+    /**
+     * Outra instância gravou por cima da última versão que esta cópia gravou. Compara com a versão
+     * gravada, não com a em memória: as versões não gravadas de duas cópias sujas não se relacionam.
+     * Chamado sob o monitor do documento.
+     */
+    private boolean isBehind(HotInstrumento doc) {
+        return clusterBridge.isEnabled() && clusterBridge.isBehind(doc.getTurmaId(), doc.getPersistedVersion());
+    }
+
+    private HotInstrumento acquire(Long turmaId) {
+        HotInstrumento doc = hot(turmaId);
+        if (doc != null) {
+            boolean behind;
+            synchronized (doc) {
+                behind = !doc.isEvicted() && isBehind(doc);
+            }
+            if (behind) {
+                // Cópia suja e atrás do banco: grava antes de aceitar mais uma escrita. A gravação
+                // esbarra na versão da outra instância e mescla as duas (rebase), então a
+                // escrita seguinte parte do conteúdo combinado em vez de divergir.
+                flush(doc);
+            }
+            return doc;
+        }
+
+        // Carrega fora do mapa para não bloquear outras turmas durante a leitura do LOB.
+        HotInstrumento loaded = transactionTemplate.execute(status -> {
+            Instrumento entity = instrumentoRepository.findByTurmaId(turmaId)
+                    .orElseThrow(() -> new IllegalStateException("Instrumento não encontrado para turmaId=" + turmaId));
+            InstrumentoDocumentStore.Loaded content = documentStore.load(entity);
+            return new HotInstrumento(entity, content.slidesJson(), content.slides(),
+                    properties.getMergeHistorySize(), properties.getSyncBufferSize());
+        });
+        HotInstrumento existing = documents.putIfAbsent(turmaId, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        evictIfNeeded();
+        return loaded;
+    }
+
+    private void flush(HotInstrumento doc) {
+        synchronized (doc.getFlushLock()) {
+            // Segunda tentativa só depois de reaplicar as alterações sobre o que outro escritor gravou.
+            for (int attempt = 0; ; attempt++) {
+                String json;
+                JsonNode tree;
+                String contentHash;
+                long version;
+                long persistedVersion;
+                LocalDateTime dataModificacao;
+                synchronized (doc) {
+                    if (!doc.isDirty() || doc.isEvicted()) {
+                        return;
+                    }
+                    json = doc.getSlidesJson();
+                    tree = doc.getSlidesTree();
+                    contentHash = doc.getContentHash();
+                    version = doc.getVersion();
+                    persistedVersion = doc.getPersistedVersion();
+                    dataModificacao = doc.getDataModificacao();
+                }
+
+                Map<String, InstrumentoDocumentStore.PersistedSlide> slides;
+                try {
+                    slides = transactionTemplate.execute(status -> documentStore.write(
+                            doc.getInstrumentoId(), json, tree, contentHash, version, persistedVersion, dataModificacao,
+                            doc.getPersistedSlides()));
+                } catch (OptimisticLockException e) {
+                    // Alguém gravou por fora do cache. As versões em memória já foram confirmadas aos
+                    // clientes: não podem ser descartadas, então são mescladas sobre o que está no banco.
+                    if (attempt == 0 && rebase(doc)) {
+                        continue;
+                    }
+                    synchronized (doc) {
+                        if (doc.isEvicted()) {
+                            // Linha excluída: rebase já descartou o documento.
+                            return;
+                        }
+                    }
+                    // Mantém sujo: a próxima varredura tenta de novo.
+                    log.warn("Instrumento turmaId={} alterado fora do cache (persistedVersion={}); gravação adiada",
+                            doc.getTurmaId(), persistedVersion);
+                    return;
+                } catch (Exception e) {
+                    // Mantém sujo: a próxima varredura tenta novamente.
+                    log.warn("Falha ao gravar instrumento turmaId={} version={}: {}", doc.getTurmaId(), version, e.getMessage());
+                    return;
+                }
+
+                doc.setPersistedSlides(slides);
+                synchronized (doc) {
+                    doc.markPersisted(version);
+                }
+                versionWatcher.committed(doc.getTurmaId(), version);
+                clusterBridge.committed(doc.getTurmaId(), version);
+
+                // Histórico em transação própria: falha aqui não desfaz a gravação do documento,
+                // só faz a próxima revisão ser um checkpoint.
+                try {
+                    historyService.record(doc.getInstrumentoId(), version, json, tree, contentHash,
+                            doc.getHistoryVersion(), doc.getHistoryJson());
+                    doc.setHistoryBase(version, json);
+                } catch (Exception e) {
+                    log.warn("Falha ao registrar histórico do instrumento turmaId={} version={}: {}",
+                            doc.getTurmaId(), version, e.getMessage());
+                    doc.setHistoryBase(version, null);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reaplica as versões ainda não gravadas sobre o estado atual do banco (merge de três vias por
+     * slide, com base na última versão gravada por esta cópia) e envia o resultado como snapshot a
+     * toda a turma, inclusive aos autores. Sem base ou com o mesmo slide alterado dos dois lados,
+     * prevalece o conteúdo do banco; ainda assim a versão avança, para os clientes não ignorarem o snapshot.
+     *
+     * <p>Chamado sob {@link HotInstrumento#getFlushLock()}.</p>
+     *
+     * <p>Se a linha não existe mais (turma excluída), descarta o documento: senão ele ficaria sujo
+     * para sempre, sem poder ser gravado nem sair da memória.</p>
+     *
+     * @return false se não foi possível ler o estado gravado (o documento continua sujo, ou foi descartado)
+     */
+    private boolean rebase(HotInstrumento doc) {
+        Stored stored;
+        JsonNode theirs;
+        try {
+            stored = transactionTemplate.execute(status -> instrumentoRepository.findByTurmaId(doc.getTurmaId())
+                    .map(e -> new Stored(e.getVersion() == null ? 0L : e.getVersion(), documentStore.load(e)))
+                    .orElse(null));
+            if (stored == null) {
+                discard(doc);
+                return false;
+            }
+            theirs = objectMapper.readTree(stored.content().slidesJson());
+        } catch (Exception e) {
+            log.warn("Falha ao reler instrumento turmaId={} após conflito: {}", doc.getTurmaId(), e.getMessage());
+            return false;
+        }
+        long storedVersion = stored.version();
+        String storedJson = stored.content().slidesJson();
+
+        synchronized (doc) {
+            if (doc.isEvicted() || storedVersion == doc.getPersistedVersion()) {
+                return false;
+            }
+            JsonNode mine = doc.getSlidesTree() != null ? doc.getSlidesTree() : readTree(doc.getSlidesJson());
+            JsonNode base = baseTree(doc);
+            Optional<ArrayNode> merged = base == null || mine == null
+                    ? Optional.empty()
+                    : SlideMerger.merge(base, theirs, mine);
+
+            long previous = doc.getVersion();
+            long previousPersisted = doc.getPersistedVersion();
+            JsonNode tree = merged.isPresent() ? merged.get() : theirs;
+            String json = merged.isPresent() ? writeJson(tree) : storedJson;
+            long version = doc.rebase(storedVersion, storedJson, stored.content().slides(), json, tree, ContentHash.canonical(tree));
+            if (merged.isPresent()) {
+                rebased.increment();
+                log.info("Instrumento turmaId={} alterado fora do cache: versões {}..{} mescladas sobre a versão gravada {} (nova versão {})",
+                        doc.getTurmaId(), previousPersisted + 1, previous, storedVersion, version);
+            } else {
+                rebaseConflicts.increment();
+                log.warn("Instrumento turmaId={} alterado fora do cache com conflito: versão gravada {} prevalece sobre a versão {} em memória (nova versão {})",
+                        doc.getTurmaId(), storedVersion, previous, version);
+            }
+
+            // Publicado sob o lock, como as atualizações: fixa a ordem na lane de entrega.
+            InstrumentoWsUpdateBroadcast broadcast = new InstrumentoWsUpdateBroadcast(
+                    doc.getInstrumentoId(),
+                    doc.getTurmaId(),
+                    tree,
+                    version,
+                    null,
+                    LocalDateTime.now(),
+                    null,
+                    null,
+                    previous
+            );
+            eventPublisher.publishEvent(new InstrumentoBroadcastEvent(
+                    doc.getTurmaId(), broadcast, tree, null, null, version, null, null, null));
+            return true;
+        }
+    }
+
+    /**
+     * Versão e conteúdo gravados no banco, relidos após um conflito.
+     */
+    private record Stored(long version, InstrumentoDocumentStore.Loaded content) {
+    }
+
+    /**
+     * Conteúdo da última versão gravada por esta cópia (base do merge), ou null se já não está em memória.
+     */
+    private JsonNode baseTree(HotInstrumento doc) {
+        JsonNode base = doc.getVersionTree(doc.getPersistedVersion());
+        if (base == null && doc.getHistoryVersion() == doc.getPersistedVersion() && doc.getHistoryJson() != null) {
+            base = readTree(doc.getHistoryJson());
+        }
+        return base;
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private String writeJson(JsonNode tree) {
+        try {
+            return objectMapper.writeValueAsString(tree);
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao serializar slides", e);
+        }
+    }
+
+    private void evict(HotInstrumento doc) {
+        flush(doc);
+        synchronized (doc) {
+            if (doc.isDirty() || doc.isEvicted()) {
+                return;
+            }
+            doc.setEvicted(true);
+            documents.remove(doc.getTurmaId(), doc);
+        }
+    }
+
+    /**
+     * Turma excluída: a cópia em memória sai já, em vez de esperar o próximo flush esbarrar na linha ausente.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void on(TurmaDeletedEvent event) {
+        HotInstrumento doc = documents.get(event.turmaId());
+        if (doc != null) {
+            discard(doc);
+        } else {
+            versionWatcher.discarded(event.turmaId());
+        }
+    }
+
+    /**
+     * Tira o documento da memória mesmo sujo (o instrumento não existe mais no banco) e acorda o
+     * long-poll da turma, que passa a responder 404.
+     */
+    private void discard(HotInstrumento doc) {
+        synchronized (doc) {
+            if (doc.isDirty()) {
+                log.warn("Instrumento turmaId={} excluído do banco: versões {}..{} não gravadas descartadas",
+                        doc.getTurmaId(), doc.getPersistedVersion() + 1, doc.getVersion());
+            }
+            doc.setEvicted(true);
+            documents.remove(doc.getTurmaId(), doc);
+        }
+        versionWatcher.discarded(doc.getTurmaId());
+    }
+
+    private void evictIfNeeded() {
+        int max = Math.max(properties.getMaxDocuments(), 1);
+        if (documents.size() <= max) {
+            return;
+        }
+        List<HotInstrumento> candidates = new ArrayList<>(documents.values());
+        candidates.sort(Comparator.comparingLong(HotInstrumento::getLastAccessMillis));
+        for (HotInstrumento doc : candidates) {
+            if (documents.size() <= max) {
+                break;
+            }
+            evict(doc);
+        }
+    }
+}
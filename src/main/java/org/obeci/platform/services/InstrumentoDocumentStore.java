@@ -0,0 +1,274 @@
+package org.obeci.platform.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.OptimisticLockException;
+import org.obeci.platform.configs.InstrumentoStorageProperties;
+import org.obeci.platform.entities.Instrumento;
+import org.obeci.platform.entities.InstrumentoSlide;
+import org.obeci.platform.repositories.InstrumentoRepository;
+import org.obeci.platform.repositories.InstrumentoSlideRepository;
+import org.obeci.platform.services.collab.ContentHash;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Leitura e gravação do conteúdo do Instrumento conforme o modo de armazenamento.
+ *
+ * <p>Modos ({@link InstrumentoStorageProperties.Mode}):
+ * <ul>
+ *   <li>{@code DOCUMENT}: grava o documento inteiro em {@code instrumentos.slides_json}.</li>
+ *   <li>{@code SLIDES}: grava apenas os slides que mudaram em {@code instrumento_slides}
+ *       (insert/update/delete por chave) e avança a versão em {@code instrumentos}.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>O documento inteiro vai para {@code slides_gzip} (comprimido) ou {@code slides_json}, conforme
+ * {@link InstrumentoStorageProperties.Compression}; a outra coluna fica vazia.</p>
+ *
+ * <p>Leitura: se existirem linhas em {@code instrumento_slides}, o array é montado a partir delas
+ * (concatenação dos JSON dos slides, sem parse); caso contrário vale {@code slides_gzip}, se
+ * preenchida, ou {@code slides_json}.
+ * Isso permite migrar aos poucos e também voltar para DOCUMENT (a primeira gravação nesse
+ * modo remove as linhas por slide).</p>
+ *
+ * <p>Os métodos de gravação devem ser chamados dentro de uma transação. Conflito de versão
+ * (alguém gravou por fora) é sinalizado com {@link OptimisticLockException}, desfazendo a transação.</p>
+ */
+@Service
+public class InstrumentoDocumentStore {
+
+    /**
+     * Estado gravado de um slide (posição + hash do conteúdo), usado para calcular o que mudou.
+     */
+    public record PersistedSlide(int position, String hash) {
+    }
+
+    /**
+     * Conteúdo carregado do banco.
+     *
+     * @param slidesJson documento completo (array JSON)
+     * @param slides estado por slide, ou null se o conteúdo veio de {@code slides_json}
+     */
+    public record Loaded(String slidesJson, Map<String, PersistedSlide> slides) {
+    }
+
+    private final InstrumentoRepository instrumentoRepository;
+    private final InstrumentoSlideRepository slideRepository;
+    private final InstrumentoStorageProperties properties;
+    private final ObjectMapper objectMapper;
+
+    public InstrumentoDocumentStore(
+            InstrumentoRepository instrumentoRepository,
+            InstrumentoSlideRepository slideRepository,
+            InstrumentoStorageProperties properties,
+            ObjectMapper objectMapper
+    ) {
+        this.instrumentoRepository = instrumentoRepository;
+        this.slideRepository = slideRepository;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    public Loaded load(Instrumento entity) {
+        List<InstrumentoSlide> rows = slideRepository.findByInstrumentoIdOrderByPositionAsc(entity.getId());
+        if (rows.isEmpty()) {
+            return new Loaded(documentJson(entity), null);
+        }
+
+        StringBuilder json = new StringBuilder();
+        Map<String, PersistedSlide> slides = new LinkedHashMap<>();
+        json.append('[');
+        for (int i = 0; i < rows.size(); i++) {
+            InstrumentoSlide row = rows.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(row.getContentJson());
+            slides.put(row.getSlideKey(), new PersistedSlide(row.getPosition(), ContentHash.sha256Hex(row.getContentJson())));
+        }
+        json.append(']');
+        return new Loaded(json.toString(), slides);
+    }
+
+    /**
+     * Grava uma nova versão do documento.
+     *
+     * @param persisted estado por slide da última gravação (null se o documento está em {@code slides_json})
+     * @return novo estado por slide (null quando gravado em {@code slides_json})
+     * @throws OptimisticLockException se a versão no banco não for {@code persistedVersion}
+     */
+    public Map<String, PersistedSlide> write(
+            Long instrumentoId,
+            String json,
+            JsonNode tree,
+            String contentHash,
+            long version,
+            long persistedVersion,
+            LocalDateTime dataModificacao,
+            Map<String, PersistedSlide> persisted
+    ) {
+        Map<String, JsonNode> slides = null;
+        if (properties.getMode() == InstrumentoStorageProperties.Mode.SLIDES) {
+            slides = splitSlides(tree != null ? tree : readTree(json));
+        }
+
+        if (slides == null || slides.isEmpty()) {
+            // DOCUMENT, documento não divisível ou vazio (sem linhas a leitura cairia no blob antigo):
+            // grava o blob inteiro.
+            boolean gzip = compressed();
+            int updated = instrumentoRepository.writeBehind(instrumentoId, gzip ? "" : json, gzip ? json : null,
+                    contentHash, version, persistedVersion, dataModificacao);
+            if (updated == 0) {
+                throw new OptimisticLockException("Instrumento alterado por outro escritor. id=" + instrumentoId);
+            }
+            // O blob passa a ser a fonte: linhas de slides (inclusive as criadas pela migração depois da
+            // última leitura, que persisted não conhece) ficariam obsoletas e voltariam numa leitura por slide.
+            slideRepository.deleteByInstrumento(instrumentoId);
+            return null;
+        }
+
+        // Primeiro a versão do documento: detecta conflito antes de tocar nos slides.
+        int updated = instrumentoRepository.bumpVersion(instrumentoId, contentHash, version, persistedVersion, dataModificacao);
+        if (updated == 0) {
+            throw new OptimisticLockException("Instrumento alterado por outro escritor. id=" + instrumentoId);
+        }
+
+        if (persisted == null) {
+            // Documento vinha do blob; linhas eventualmente criadas pela migração nesse meio-tempo são refeitas.
+            slideRepository.deleteByInstrumento(instrumentoId);
+        }
+        Map<String, PersistedSlide> before = persisted == null ? Map.of() : persisted;
+        Map<String, PersistedSlide> next = new LinkedHashMap<>();
+        int position = 0;
+        for (Map.Entry<String, JsonNode> e : slides.entrySet()) {
+            String key = e.getKey();
+            String content = writeJson(e.getValue());
+            String hash = ContentHash.sha256Hex(content);
+            PersistedSlide old = before.get(key);
+
+            if (old == null) {
+                insertSlide(instrumentoId, key, position, content, dataModificacao);
+            } else if (!old.hash().equals(hash)) {
+                slideRepository.updateContent(instrumentoId, key, content, position, dataModificacao);
+            } else if (old.position() != position) {
+                slideRepository.updatePosition(instrumentoId, key, position);
+            }
+            next.put(key, new PersistedSlide(position, hash));
+            position++;
+        }
+
+        Set<String> removed = new HashSet<>(before.keySet());
+        removed.removeAll(next.keySet());
+        if (!removed.isEmpty()) {
+            slideRepository.deleteSlides(instrumentoId, removed);
+        }
+        return next;
+    }
+
+    /**
+     * Divide um documento ainda armazenado em {@code slides_json} em linhas por slide (migração).
+     *
+     * @return false se o documento não é divisível (fica em {@code slides_json})
+     */
+    public boolean splitLegacy(Instrumento entity) {
+        if (slideRepository.existsByInstrumentoId(entity.getId())) {
+            return true;
+        }
+        Map<String, JsonNode> slides = splitSlides(readTree(documentJson(entity)));
+        if (slides == null) {
+            return false;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int position = 0;
+        for (Map.Entry<String, JsonNode> e : slides.entrySet()) {
+            insertSlide(entity.getId(), e.getKey(), position++, writeJson(e.getValue()), now);
+        }
+        return true;
+    }
+
+    /**
+     * Preenche o documento de um instrumento novo na coluna do modo de compressão atual.
+     */
+    public void assign(Instrumento entity, String json) {
+        boolean gzip = compressed();
+        entity.setSlidesJson(gzip ? "" : json);
+        entity.setSlidesGzip(gzip ? json : null);
+    }
+
+    /**
+     * Move o documento de um instrumento antigo para a coluna do modo de compressão atual (migração).
+     *
+     * @return false se já estava na coluna certa ou se foi alterado por outro escritor durante a migração
+     */
+    public boolean migrateCompression(Instrumento entity) {
+        boolean gzip = compressed();
+        if (gzip == (entity.getSlidesGzip() != null)) {
+            return false;
+        }
+        String json = documentJson(entity);
+        long version = entity.getVersion() == null ? 0L : entity.getVersion();
+        return instrumentoRepository.moveContent(entity.getId(), gzip ? "" : json, gzip ? json : null, version) > 0;
+    }
+
+    private boolean compressed() {
+        return properties.getCompression() == InstrumentoStorageProperties.Compression.GZIP;
+    }
+
+    private static String documentJson(Instrumento entity) {
+        return entity.getSlidesGzip() != null ? entity.getSlidesGzip() : entity.getSlidesJson();
+    }
+
+    /**
+     * Mapa chave → slide, ou null se o documento não for um array de objetos com {@code id} único.
+     */
+    private static Map<String, JsonNode> splitSlides(JsonNode tree) {
+        if (tree == null || !tree.isArray()) {
+            return null;
+        }
+        Map<String, JsonNode> slides = new LinkedHashMap<>();
+        for (JsonNode slide : tree) {
+            JsonNode id = slide == null || !slide.isObject() ? null : slide.get("id");
+            if (id == null || id.isNull() || id.isContainerNode()) {
+                return null;
+            }
+            String key = id.asText();
+            if (key.length() > 100 || slides.put(key, slide) != null) {
+                return null;
+            }
+        }
+        return slides;
+    }
+
+    private void insertSlide(Long instrumentoId, String key, int position, String content, LocalDateTime now) {
+        InstrumentoSlide row = new InstrumentoSlide();
+        row.setInstrumentoId(instrumentoId);
+        row.setSlideKey(key);
+        row.setPosition(position);
+        row.setContentJson(content);
+        row.setDataModificacao(now);
+        slideRepository.save(row);
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao ler slides do instrumento", e);
+        }
+    }
+
+    private String writeJson(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsString(node);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Falha ao serializar slide", e);
+        }
+    }
+}
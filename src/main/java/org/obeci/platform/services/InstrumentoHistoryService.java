@@ -0,0 +1,207 @@
+package org.obeci.platform.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.obeci.platform.configs.InstrumentoHistoryProperties;
+import org.obeci.platform.entities.InstrumentoRevision;
+import org.obeci.platform.repositories.InstrumentoRevisionRepository;
+import org.obeci.platform.services.collab.Gzip;
+import org.obeci.platform.services.collab.JsonDiff;
+import org.obeci.platform.services.collab.JsonPatch;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Histórico de versões do Instrumento: checkpoints periódicos + deltas entre gravações.
+ *
+ * <p>Motivo: só a última versão de {@code slides_json} era mantida, então uma edição ruim só
+ * era desfeita restaurando o banco. Cada gravação do {@link InstrumentoDocumentCache} vira uma
+ * {@link InstrumentoRevision}: normalmente um delta JSON Patch sobre a anterior; um checkpoint
+ * (documento inteiro) quando
+ * <ul>
+ *   <li>não há revisão anterior que sirva de base (primeira gravação, escrita fora do cache);</li>
+ *   <li>já há {@code checkpoint-every-revisions} revisões desde o último, ou ele é mais antigo que
+ *       {@code checkpoint-interval};</li>
+ *   <li>o delta não compensa ({@code max-delta-ratio}).</li>
+ * </ul>
+ * Tudo em gzip. O crescimento é limitado: ao gravar um checkpoint, revisões anteriores ao
+ * {@code keep-checkpoints}-ésimo checkpoint mais recente são apagadas.</p>
+ *
+ * <p>As versões disponíveis são as gravadas no banco (o write-behind agrupa edições), não cada
+ * edição em memória.</p>
+ */
+@Service
+public class InstrumentoHistoryService {
+
+    private final InstrumentoRevisionRepository revisionRepository;
+    private final InstrumentoHistoryProperties properties;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Versão reconstruída.
+     */
+    public record Materialized(long version, String contentHash, LocalDateTime createdAt, JsonNode slides) {
+    }
+
+    public InstrumentoHistoryService(
+            InstrumentoRevisionRepository revisionRepository,
+            InstrumentoHistoryProperties properties,
+            ObjectMapper objectMapper
+    ) {
+        this.revisionRepository = revisionRepository;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Registra a versão recém-gravada do documento.
+     *
+     * @param tree árvore de {@code json}, se já parseada (opcional)
+     * @param baseVersion versão de {@code baseJson}; o delta só é usado se ela for a última revisão gravada
+     * @param baseJson conteúdo da última versão registrada por este processo (null = desconhecido)
+     */
+    @Transactional
+    public void record(
+            Long instrumentoId,
+            long version,
+            String json,
+            JsonNode tree,
+            String contentHash,
+            long baseVersion,
+            String baseJson
+    ) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        Optional<InstrumentoRevisionRepository.RevisionHead> head =
+                revisionRepository.findFirstByInstrumentoIdOrderByVersionDesc(instrumentoId);
+        if (head.isPresent() && head.get().getVersion() >= version) {
+            return;
+        }
+
+        byte[] full = json.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = full;
+        boolean checkpoint = baseJson == null
+                || head.isEmpty()
+                || head.get().getVersion() != baseVersion
+                || checkpointDue(instrumentoId);
+        if (!checkpoint) {
+            JsonNode target = tree != null ? tree : readTree(json);
+            byte[] delta = writeBytes(JsonDiff.diff(readTree(baseJson), target));
+            if (delta.length > full.length * properties.getMaxDeltaRatio()) {
+                checkpoint = true;
+            } else {
+                payload = delta;
+            }
+        }
+
+        InstrumentoRevision revision = new InstrumentoRevision();
+        revision.setInstrumentoId(instrumentoId);
+        revision.setVersion(version);
+        revision.setKind(checkpoint ? InstrumentoRevision.Kind.CHECKPOINT : InstrumentoRevision.Kind.DELTA);
+        revision.setBaseVersion(checkpoint ? null : baseVersion);
+        revision.setContentHash(contentHash);
+        revision.setSizeBytes(payload.length);
+        revision.setData(Gzip.compress(payload));
+        revision.setCreatedAt(LocalDateTime.now());
+        revisionRepository.save(revision);
+
+        if (checkpoint) {
+            prune(instrumentoId);
+        }
+    }
+
+    /**
+     * Revisões disponíveis, mais recentes primeiro (sem conteúdo).
+     */
+    @Transactional(readOnly = true)
+    public List<InstrumentoRevisionRepository.RevisionHead> list(Long instrumentoId, int limit) {
+        int safeLimit = Math.min(Math.max(limit, 1), 200);
+        return revisionRepository.findByInstrumentoIdOrderByVersionDesc(instrumentoId, PageRequest.of(0, safeLimit));
+    }
+
+    /**
+     * Reconstrói a versão pedida a partir do checkpoint mais próximo.
+     *
+     * @return vazio se a versão não foi registrada (ou já saiu do histórico)
+     */
+    @Transactional(readOnly = true)
+    public Optional<Materialized> materialize(Long instrumentoId, long version) {
+        Optional<InstrumentoRevision> checkpoint = revisionRepository
+                .findFirstByInstrumentoIdAndKindAndVersionLessThanEqualOrderByVersionDesc(
+                        instrumentoId, InstrumentoRevision.Kind.CHECKPOINT, version);
+        if (checkpoint.isEmpty()) {
+            return Optional.empty();
+        }
+        InstrumentoRevision last = checkpoint.get();
+        JsonNode slides = readTree(Gzip.decompress(last.getData()));
+        List<InstrumentoRevision> deltas = revisionRepository
+                .findByInstrumentoIdAndVersionGreaterThanAndVersionLessThanEqualOrderByVersionAsc(
+                        instrumentoId, last.getVersion(), version);
+        for (InstrumentoRevision delta : deltas) {
+            if (delta.getKind() != InstrumentoRevision.Kind.DELTA || !last.getVersion().equals(delta.getBaseVersion())) {
+                throw new IllegalStateException("Histórico inconsistente: instrumentoId=" + instrumentoId
+                        + " revisão " + delta.getVersion() + " não continua " + last.getVersion());
+            }
+            slides = JsonPatch.apply(slides, readTree(Gzip.decompress(delta.getData())));
+            last = delta;
+        }
+        if (last.getVersion() != version) {
+            return Optional.empty();
+        }
+        return Optional.of(new Materialized(last.getVersion(), last.getContentHash(), last.getCreatedAt(), slides));
+    }
+
+    private boolean checkpointDue(Long instrumentoId) {
+        Optional<InstrumentoRevisionRepository.RevisionHead> lastCheckpoint = revisionRepository
+                .findFirstByInstrumentoIdAndKindOrderByVersionDesc(instrumentoId, InstrumentoRevision.Kind.CHECKPOINT);
+        if (lastCheckpoint.isEmpty()) {
+            return true;
+        }
+        if (lastCheckpoint.get().getCreatedAt().isBefore(LocalDateTime.now().minus(properties.getCheckpointInterval()))) {
+            return true;
+        }
+        long since = revisionRepository.countByInstrumentoIdAndVersionGreaterThan(instrumentoId, lastCheckpoint.get().getVersion());
+        return since >= Math.max(properties.getCheckpointEveryRevisions(), 1);
+    }
+
+    private void prune(Long instrumentoId) {
+        int keep = Math.max(properties.getKeepCheckpoints(), 1);
+        List<Long> oldest = revisionRepository.findCheckpointVersions(instrumentoId, PageRequest.of(keep - 1, 1));
+        if (!oldest.isEmpty()) {
+            revisionRepository.deleteOlderThan(instrumentoId, oldest.get(0));
+        }
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JsonNode readTree(byte[] json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] writeBytes(JsonNode node) {
+        try {
+            return objectMapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.obeci.platform.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.obeci.platform.configs.InstrumentoInlineImageProperties;
+import org.obeci.platform.entities.InstrumentoImage;
+import org.obeci.platform.repositories.InstrumentoImageRepository;
+import org.obeci.platform.services.collab.ContentHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Extrai imagens embutidas nos slides ({@code "src": "data:image/...;base64,..."}) para o
+ * armazenamento de imagens, trocando o {@code src} pela URL {@code /api/instrumentos/images/{id}}.
+ *
+ * <p>Motivo: clientes que colam imagens sem passar por {@code POST /api/instrumentos/images}
+ * deixavam o documento com vários MB, repetidos em cada gravação e em cada broadcast.</p>
+ *
+ * <p>Regras:
+ * <ul>
+ *   <li>Só objetos dentro de arrays {@code images} (em qualquer nível) com {@code src} em base64 e
+ *       tipo {@code image/*}; SVG fica embutido (servido pela API, poderia executar script).</li>
+ *   <li>A mesma imagem (SHA-256 + tipo) é gravada uma vez; envios seguidos reaproveitam o id.</li>
+ *   <li>URIs inválidas ou acima de {@code app.instrumentos.inline-images.max-image-size} ficam como estão.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Métricas: {@code instrumento.images.inline.extracted}, {@code .deduplicated} e
+ * {@code .bytes.removed} (tamanho do documento economizado).</p>
+ */
+@Service
+public class InstrumentoInlineImageExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(InstrumentoInlineImageExtractor.class);
+
+    private static final String IMAGE_URL_PREFIX = "/api/instrumentos/images/";
+
+    private final InstrumentoImageRepository imageRepository;
+    private final InstrumentoInlineImageProperties properties;
+    private final Counter extracted;
+    private final Counter deduplicated;
+    private final Counter bytesRemoved;
+
+    public InstrumentoInlineImageExtractor(
+            InstrumentoImageRepository imageRepository,
+            InstrumentoInlineImageProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.imageRepository = imageRepository;
+        this.properties = properties;
+        this.extracted = Counter.builder("instrumento.images.inline.extracted").register(meterRegistry);
+        this.deduplicated = Counter.builder("instrumento.images.inline.deduplicated").register(meterRegistry);
+        this.bytesRemoved = Counter.builder("instrumento.images.inline.bytes.removed").baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Substitui as imagens embutidas no próprio {@code slides} (árvore alterada no lugar). Também
+     * aplicado slide a slide pela leitura em streaming ({@link org.obeci.platform.services.collab.SlidesIngest}).
+     *
+     * @return true se algum {@code src} foi reescrito
+     */
+    public boolean extract(JsonNode slides) {
+        if (!properties.isEnabled() || slides == null) {
+            return false;
+        }
+        return walk(slides, false);
+    }
+
+    /**
+     * Substitui as imagens embutidas nos valores de um JSON Patch (operações alteradas no lugar).
+     *
+     * <p>Só {@code add}, {@code replace} e {@code test} trazem conteúdo novo; {@code copy} e {@code move}
+     * partem do documento (já extraído) ou de um valor anterior do mesmo patch (extraído aqui). O caminho
+     * diz onde o valor cai: uma entrada de {@code images} ({@code /0/images/-}), o próprio array
+     * {@code images}, o {@code src} de uma entrada ({@code /0/images/2/src}) ou algo que contém imagens.</p>
+     *
+     * @return true se algum {@code src} foi reescrito
+     */
+    public boolean extractPatch(JsonNode ops) {
+        if (!properties.isEnabled() || ops == null || !ops.isArray()) {
+            return false;
+        }
+        boolean changed = false;
+        for (JsonNode op : ops) {
+            if (!(op instanceof ObjectNode operation)) {
+                continue;
+            }
+            String name = operation.path("op").asText("");
+            JsonNode path = operation.get("path");
+            JsonNode value = operation.get("value");
+            if (!("add".equals(name) || "replace".equals(name) || "test".equals(name))
+                    || path == null || !path.isTextual() || value == null) {
+                continue;
+            }
+            String[] tokens = path.textValue().split("/", -1);
+            int n = tokens.length;
+            if (value.isTextual()) {
+                if (n >= 4 && "src".equals(tokens[n - 1]) && "images".equals(tokens[n - 3])) {
+                    String url = toImageUrl(value.textValue());
+                    if (url != null) {
+                        operation.put("value", url);
+                        changed = true;
+                    }
+                }
+            } else if (value.isContainerNode()) {
+                boolean imageEntry = (n >= 3 && "images".equals(tokens[n - 2]))
+                        || (value.isArray() && "images".equals(tokens[n - 1]));
+                changed |= walk(value, imageEntry);
+            }
+        }
+        return changed;
+    }
+
+    private boolean walk(JsonNode node, boolean imageEntry) {
+        boolean changed = false;
+        if (node.isObject()) {
+            if (imageEntry) {
+                JsonNode src = node.get("src");
+                if (src != null && src.isTextual()) {
+                    String url = toImageUrl(src.textValue());
+                    if (url != null) {
+                        ((ObjectNode) node).put("src", url);
+                        changed = true;
+                    }
+                }
+            }
+            for (Map.Entry<String, JsonNode> field : node.properties()) {
+                JsonNode child = field.getValue();
+                if (child.isContainerNode()) {
+                    changed |= walk(child, child.isArray() && "images".equals(field.getKey()));
+                }
+            }
+        } else if (node.isArray()) {
+            for (JsonNode child : node) {
+                if (child.isContainerNode()) {
+                    changed |= walk(child, imageEntry);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Decodifica a data URI (direto da String, sem copiar o trecho base64), grava ou reaproveita a
+     * imagem e devolve a URL; null se o valor não é uma data URI aceita (fica como está).
+     */
+    public String toImageUrl(String dataUri) {
+        if (!properties.isEnabled() || !dataUri.startsWith("data:")) {
+            return null;
+        }
+        int comma = dataUri.indexOf(',');
+        if (comma < 0) {
+            return null;
+        }
+        String[] header = dataUri.substring("data:".length(), comma).split(";");
+        String contentType = header[0].trim().toLowerCase(Locale.ROOT);
+        boolean base64 = false;
+        for (int i = 1; i < header.length; i++) {
+            base64 |= header[i].trim().equalsIgnoreCase("base64");
+        }
+        if (!base64 || !contentType.startsWith("image/") || contentType.startsWith("image/svg")) {
+            return null;
+        }
+
+        long max = properties.getMaxImageSize().toBytes();
+        byte[] data;
+        try (InputStream in = Base64.getMimeDecoder().wrap(new AsciiInputStream(dataUri, comma + 1))) {
+            data = in.readNBytes((int) Math.min(max + 1, Integer.MAX_VALUE - 8));
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Imagem embutida ignorada (base64 inválido): {}", e.getMessage());
+            return null;
+        }
+        if (data.length == 0 || data.length > max) {
+            return null;
+        }
+
+        String sha256 = ContentHash.sha256Hex(data);
+        List<Long> existing = imageRepository.findIdsBySha256(sha256, contentType, PageRequest.of(0, 1));
+        Long id;
+        if (!existing.isEmpty()) {
+            id = existing.get(0);
+            deduplicated.increment();
+        } else {
+            InstrumentoImage img = new InstrumentoImage();
+            img.setContentType(contentType);
+            img.setData(data);
+            img.setSha256(sha256);
+            id = imageRepository.save(img).getId();
+            extracted.increment();
+        }
+        String url = IMAGE_URL_PREFIX + id;
+        bytesRemoved.increment(dataUri.length() - url.length());
+        return url;
+    }
+
+    /**
+     * Bytes (ASCII) de um trecho da String, para o decoder base64 ler sem cópia intermediária.
+     */
+    private static final class AsciiInputStream extends InputStream {
+
+        private final String source;
+        private int position;
+
+        AsciiInputStream(String source, int offset) {
+            this.source = source;
+            this.position = offset;
+        }
+
+        @Override
+        public int read() {
+            return position < source.length() ? source.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int remaining = source.length() - position;
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = Math.min(len, remaining);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) source.charAt(position++);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.obeci.platform.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.obeci.platform.configs.InstrumentoPresenceProperties;
+import org.obeci.platform.dtos.collab.InstrumentoWsPresenceBroadcast;
+import org.obeci.platform.dtos.collab.InstrumentoWsPresenceRequest;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Presença e cursor dos participantes de um Instrumento — estado efêmero, só em memória.
+ *
+ * <p>Diferente de {@code /app/instrumentos/update}, nada aqui é versionado, persistido ou
+ * logado: este serviço não usa repositórios. O roster de cada turma é alimentado pelos
+ * eventos da sessão STOMP:
+ * <ul>
+ *   <li>CONNECT registra a sessão;</li>
+ *   <li>SUBSCRIBE em {@code /topic/instrumentos/{turmaId}/presence} coloca o participante no
+ *       roster (o acesso à turma já foi validado por {@code StompAuthChannelInterceptor});</li>
+ *   <li>UNSUBSCRIBE/DISCONNECT o removem.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>Cursor: mensagens em {@code /app/instrumentos/presence} são limitadas por sessão
+ * ({@code app.instrumentos.presence.min-interval}); a última posição descartada pelo limite
+ * sai na próxima varredura. As mesmas mensagens servem de heartbeat: sem elas por
+ * {@code app.instrumentos.presence.ttl}, o participante expira.</p>
+ */
+@Service
+public class InstrumentoPresenceService {
+
+    private static final Pattern TOPIC_PRESENCE = Pattern.compile("^/topic/instrumentos/(\\d+)/presence$");
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final InstrumentoPresenceProperties properties;
+
+    /** turmaId → (sessionId → participante). */
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<String, Entry>> rosters = new ConcurrentHashMap<>();
+
+    /** sessionId → (subscriptionId → turmaId) das assinaturas de presença. */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Long>> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Estado de um participante. Acessado com o monitor do próprio objeto.
+     */
+    private static final class Entry {
+        final String sessionId;
+        final String user;
+        String clientId;
+        String slideId;
+        JsonNode cursor;
+        long lastSeenMillis;
+        long lastSentMillis;
+        /** Há posição recebida e ainda não publicada (limitada pelo min-interval). */
+        boolean pending;
+
+        Entry(String sessionId, String user) {
+            this.sessionId = sessionId;
+            this.user = user;
+            this.lastSeenMillis = System.currentTimeMillis();
+        }
+
+        InstrumentoWsPresenceBroadcast.Participant toParticipant() {
+            return new InstrumentoWsPresenceBroadcast.Participant(sessionId, user, clientId, slideId, cursor);
+        }
+    }
+
+    public InstrumentoPresenceService(SimpMessagingTemplate messagingTemplate, InstrumentoPresenceProperties properties) {
+        this.messagingTemplate = messagingTemplate;
+        this.properties = properties;
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) {
+            sessions.putIfAbsent(sessionId, new ConcurrentHashMap<>());
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (destination == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Matcher m = TOPIC_PRESENCE.matcher(destination);
+        if (!m.matches()) {
+            return;
+        }
+        Long turmaId = Long.parseLong(m.group(1));
+        sessions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), turmaId);
+        join(turmaId, accessor.getSessionId(), userName(event.getUser()));
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = accessor.getSessionId();
+        Map<String, Long> subscriptions = sessionId == null ? null : sessions.get(sessionId);
+        if (subscriptions == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Long turmaId = subscriptions.remove(accessor.getSubscriptionId());
+        // Só sai se não houver outra assinatura da mesma sessão para a turma.
+        if (turmaId != null && !subscriptions.containsValue(turmaId)) {
+            leave(turmaId, sessionId);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, Long> subscriptions = sessions.remove(event.getSessionId());
+        if (subscriptions == null) {
+            return;
+        }
+        for (Long turmaId : new ArrayList<>(subscriptions.values())) {
+            leave(turmaId, event.getSessionId());
+        }
+    }
+
+    /**
+     * Atualiza slide/cursor do participante e publica respeitando o limite por sessão.
+     *
+     * @return false se a sessão não assina a presença da turma (mensagem ignorada)
+     */
+    public boolean update(String sessionId, String user, InstrumentoWsPresenceRequest req) {
+        Map<String, Long> subscriptions = sessionId == null ? null : sessions.get(sessionId);
+        if (subscriptions == null || !subscriptions.containsValue(req.getTurmaId())) {
+            return false;
+        }
+        Long turmaId = req.getTurmaId();
+        // Participante expirado por falta de heartbeat volta ao roster na próxima mensagem.
+        Entry entry = join(turmaId, sessionId, user);
+
+        long now = System.currentTimeMillis();
+        synchronized (entry) {
+            entry.clientId = req.getClientId();
+            entry.slideId = req.getSlideId();
+            entry.cursor = req.getCursor();
+            entry.lastSeenMillis = now;
+            if (now - entry.lastSentMillis < properties.getMinInterval().toMillis()) {
+                entry.pending = true;
+                return true;
+            }
+            entry.pending = false;
+            entry.lastSentMillis = now;
+            send(turmaId, "CURSOR", List.of(entry.toParticipant()));
+        }
+        return true;
+    }
+
+    /**
+     * Participantes atuais da turma (cópia).
+     */
+    public List<InstrumentoWsPresenceBroadcast.Participant> roster(Long turmaId) {
+        Map<String, Entry> roster = rosters.get(turmaId);
+        List<InstrumentoWsPresenceBroadcast.Participant> out = new ArrayList<>();
+        if (roster == null) {
+            return out;
+        }
+        for (Entry entry : roster.values()) {
+            synchronized (entry) {
+                out.add(entry.toParticipant());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Rotina periódica: publica cursores retidos pelo limite e expira participantes sem heartbeat.
+     */
+    @Scheduled(fixedDelayString = "${app.instrumentos.presence.sweep-interval:PT1S}")
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        long ttl = properties.getTtl().toMillis();
+        long minInterval = properties.getMinInterval().toMillis();
+
+        rosters.forEach((turmaId, roster) -> {
+            for (Entry entry : roster.values()) {
+                synchronized (entry) {
+                    if (now - entry.lastSeenMillis >= ttl) {
+                        if (roster.remove(entry.sessionId, entry)) {
+                            send(turmaId, "LEAVE", List.of(entry.toParticipant()));
+                        }
+                    } else if (entry.pending && now - entry.lastSentMillis >= minInterval) {
+                        entry.pending = false;
+                        entry.lastSentMillis = now;
+                        send(turmaId, "CURSOR", List.of(entry.toParticipant()));
+                    }
+                }
+            }
+            // Atômico em relação ao compute de join(): não descarta um roster que acabou de ganhar alguém.
+            rosters.computeIfPresent(turmaId, (id, r) -> r.isEmpty() ? null : r);
+        });
+    }
+
+    /**
+     * Coloca a sessão no roster da turma (publicando o ROSTER) ou retorna a entrada existente.
+     */
+    private Entry join(Long turmaId, String sessionId, String user) {
+        Entry created = new Entry(sessionId, user);
+        Entry[] current = new Entry[1];
+        rosters.compute(turmaId, (id, roster) -> {
+            ConcurrentHashMap<String, Entry> r = roster == null ? new ConcurrentHashMap<>() : roster;
+            Entry existing = r.putIfAbsent(sessionId, created);
+            current[0] = existing != null ? existing : created;
+            return r;
+        });
+        if (current[0] == created) {
+            send(turmaId, "ROSTER", roster(turmaId));
+        }
+        return current[0];
+    }
+
+    private void leave(Long turmaId, String sessionId) {
+        Map<String, Entry> roster = rosters.get(turmaId);
+        Entry entry = roster == null ? null : roster.remove(sessionId);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            send(turmaId, "LEAVE", List.of(entry.toParticipant()));
+        }
+    }
+
+    private void send(Long turmaId, String type, List<InstrumentoWsPresenceBroadcast.Participant> participants) {
+        messagingTemplate.convertAndSend("/topic/instrumentos/" + turmaId + "/presence",
+                new InstrumentoWsPresenceBroadcast(type, turmaId, participants));
+    }
+
+    private static String userName(Principal user) {
+        return user == null ? null : user.getName();
+    }
+}
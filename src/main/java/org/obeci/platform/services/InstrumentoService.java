@@ -4,16 +4,21 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import org.obeci.platform.configs.InstrumentoIngestProperties;
 import org.obeci.platform.entities.Instrumento;
 import org.obeci.platform.entities.InstrumentoImage;
 import org.obeci.platform.repositories.InstrumentoImageRepository;
 import org.obeci.platform.repositories.InstrumentoRepository;
+import org.obeci.platform.services.collab.ContentHash;
+import org.obeci.platform.services.collab.SlidesIngest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Optional;
 
 @Service
@@ -23,14 +28,14 @@ import java.util.Optional;
  * <p>Responsabilidades:
  * <ul>
  *   <li>Buscar/criar instrumento por turma.</li>
- *   <li>Persistir JSON de slides (string) a partir de {@link JsonNode}.</li>
+ *   <li>Persistir JSON de slides (string) a partir do corpo da requisição (streaming).</li>
  *   <li>Armazenar e recuperar imagens (bytes) via {@link InstrumentoImage}.</li>
  * </ul>
  * </p>
  *
  * <p>Pontos críticos:
  * <ul>
- *   <li>{@link #defaultSlidesJson()} define o formato inicial esperado pelo editor do front-end.</li>
+ *   <li>{@link #defaultSlides()} define o formato inicial esperado pelo editor do front-end.</li>
  *   <li>As operações de save executam escrita no banco e podem lançar {@link IOException} ao serializar JSON.</li>
  * </ul>
  * </p>
@@ -46,12 +51,62 @@ public class InstrumentoService {
     @Autowired
     private ObjectMapper objectMapper;
 
-    @Transactional(readOnly = true)
+    @Autowired
+    private InstrumentoDocumentCache documentCache;
+
+    @Autowired
+    private InstrumentoDocumentStore documentStore;
+
+    @Autowired
+    private InstrumentoInlineImageExtractor inlineImageExtractor;
+
+    @Autowired
+    private InstrumentoIngestProperties ingestProperties;
+
+    private SlidesIngest slidesIngest;
+
+    @PostConstruct
+    void initIngest() {
+        slidesIngest = new SlidesIngest(
+                ingestProperties.getMaxDocumentSize().toBytes(),
+                ingestProperties.getMaxDepth(),
+                ingestProperties.getMaxSlides(),
+                inlineImageExtractor::extract);
+    }
+
     /**
-     * Busca instrumento por id da turma.</p>
+     * Busca instrumento por id da turma.
+     *
+     * <p>Se o documento estiver em edição (cache em memória), retorna o estado do cache,
+     * que pode estar à frente do banco por conta do write-behind. Caso contrário, o conteúdo
+     * é lido conforme o modo de armazenamento (documento inteiro ou linhas por slide).</p>
      */
     public Optional<Instrumento> getByTurmaId(Long turmaId) {
-        return instrumentoRepository.findByTurmaId(turmaId);
+        return documentCache.read(turmaId);
+    }
+
+    /**
+     * Versão e hash atuais do documento da turma, sem ler o conteúdo (requisições condicionais).
+     */
+    public Optional<InstrumentoDocumentCache.DocumentHead> getHeadByTurmaId(Long turmaId) {
+        return documentCache.readHead(turmaId);
+    }
+
+    /**
+     * Documento da turma como está armazenado (texto ou bytes gzip), para respostas que copiam o
+     * JSON dos slides sem montar uma árvore nem descomprimir/recomprimir no servidor.
+     *
+     * <p>Mesma regra de {@link #getByTurmaId(Long)}: documento em edição vem do cache.</p>
+     */
+    public Optional<InstrumentoDocumentCache.RawDocument> getRawByTurmaId(Long turmaId) {
+        return documentCache.readRaw(turmaId);
+    }
+
+    /**
+     * Id do instrumento da turma (sem carregar o documento).
+     */
+    public Optional<Long> findIdByTurmaId(Long turmaId) {
+        return instrumentoRepository.findIdByTurmaId(turmaId);
     }
 
     @Transactional
@@ -66,25 +121,45 @@ public class InstrumentoService {
         }
         Instrumento instrumento = new Instrumento();
         instrumento.setTurmaId(turmaId);
-        instrumento.setSlidesJson(defaultSlidesJson());
+        ArrayNode slides = defaultSlides();
+        documentStore.assign(instrumento, slides.toString());
+        instrumento.setContentHash(ContentHash.canonical(slides));
         return instrumentoRepository.save(instrumento);
     }
 
-    @Transactional
     /**
      * Persiste os slides (JSON) do instrumento da turma.
      *
-     * <p>Entrada: {@link JsonNode} (estrutura livre vinda do front-end).</p>
+     * <p>Entrada: corpo JSON (array de slides vindo do front-end), lido em streaming por
+     * {@link SlidesIngest}: um slide por vez, sem a árvore do documento inteiro, com validação de estrutura/limites, hash
+     * canônico e extração de imagens embutidas na mesma passada.</p>
      * <p>Saída: entidade {@link Instrumento} persistida.</p>
+     *
+     * <p>Passa pelo {@link InstrumentoDocumentCache} para não divergir do estado colaborativo em memória;
+     * diferente do WebSocket, o REST grava de forma síncrona antes de responder.</p>
+     *
+     * @throws org.obeci.platform.exceptions.InvalidDocumentException JSON inválido ou acima dos limites
      */
-    public Instrumento saveSlides(Long turmaId, JsonNode slidesNode) throws IOException {
+    public Instrumento saveSlides(Long turmaId, InputStream body) throws IOException {
         // Regra: não criar instrumento implicitamente a partir de um turmaId arbitrário.
-        // O instrumento deve ser criado no fluxo de criação de turma.
-        Instrumento instrumento = instrumentoRepository.findByTurmaId(turmaId)
-            .orElseThrow(() -> new IllegalStateException("Instrumento não encontrado para a turmaId=" + turmaId));
-        String json = objectMapper.writeValueAsString(slidesNode);
-        instrumento.setSlidesJson(json);
-        return instrumentoRepository.save(instrumento);
+        // O instrumento deve ser criado no fluxo de criação de turma (withDocument falha se não existir).
+        // Imagens coladas como data: URI vão para o armazenamento de imagens durante a leitura.
+        SlidesIngest.Result ingested = slidesIngest.read(body);
+        String json = ingested.json();
+        String hash = ingested.contentHash();
+        Instrumento saved = documentCache.withDocument(turmaId, doc -> {
+            // Documentos antigos podem não ter hash ainda: nesse caso compara o JSON.
+            boolean unchanged = doc.getContentHash() != null
+                    ? hash.equals(doc.getContentHash())
+                    : json.equals(doc.getSlidesJson());
+            if (!unchanged) {
+                // Sem árvore: quem precisar (merge/patch colaborativo) faz o parse sob demanda.
+                doc.apply(json, null, hash);
+            }
+            return doc.toEntity();
+        });
+        documentCache.flush(turmaId);
+        return saved;
     }
 
     public InstrumentoImage saveImage(MultipartFile file) throws IOException {
@@ -93,6 +168,7 @@ public class InstrumentoService {
         img.setContentType(file.getContentType() == null ? "application/octet-stream" : file.getContentType());
         img.setOriginalName(file.getOriginalFilename());
         img.setData(file.getBytes());
+        img.setSha256(ContentHash.sha256Hex(img.getData()));
         return imageRepository.save(img);
     }
 
@@ -100,7 +176,7 @@ public class InstrumentoService {
         return imageRepository.findById(id);
     }
 
-    private String defaultSlidesJson() {
+    private ArrayNode defaultSlides() {
         // Cria dois slides iniciais vazios compatíveis com o editor.
         // Observação: os campos e defaults aqui precisam ficar alinhados ao contrato implícito do front-end.
         ArrayNode arr = objectMapper.createArrayNode();
@@ -137,6 +213,6 @@ public class InstrumentoService {
         slide2.set("tags", objectMapper.createArrayNode());
         arr.add(slide2);
 
-        return arr.toString();
+        return arr;
     }
 }
@@ -0,0 +1,180 @@
+package org.obeci.platform.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.obeci.platform.configs.InstrumentoAccessProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Permissões de Instrumento já verificadas, por sessão STOMP e turma.
+ *
+ * <p>Motivo: {@link InstrumentoAccessService#assertCanAccessTurmaInstrumento} faz duas consultas
+ * (usuário por e-mail e turma com {@code professorIds}) e era chamado em todo SUBSCRIBE e em toda
+ * mensagem de update/patch/sync, ou seja, a cada salvamento do editor. Aqui só a primeira
+ * verificação da sessão em cada turma vai ao banco; as seguintes usam o resultado, por até
+ * {@code app.instrumentos.access.session-cache-ttl}. Só acessos liberados são guardados: uma
+ * recusa é verificada de novo na próxima mensagem.</p>
+ *
+ * <p>Revogação: a remoção de um professor da turma ({@code TurmaMembershipRevokedEvent}) chega
+ * em {@link #revoke}, chamado por {@link InstrumentoAccessRevocationService}, que também cancela as
+ * assinaturas da sessão e avisa o cliente. Por isso as permissões ficam neste mapa, e não nos
+ * atributos de cada sessão: a revogação precisa achar todas as sessões de uma turma.</p>
+ *
+ * <p>Métricas: {@code instrumento.access.cache.hit}, {@code instrumento.access.cache.miss}.</p>
+ */
+@Service
+public class InstrumentoSessionAccessCache {
+
+    private final InstrumentoAccessService accessService;
+    private final long ttlMillis;
+    private final Counter hits;
+    private final Counter misses;
+
+    /** sessionId → permissões e assinaturas da sessão. */
+    private final ConcurrentHashMap<String, SessionAccess> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * turmaId → contador de revogações. Uma verificação que começou antes de uma revogação não
+     * deixa permissão no cache (o banco pode ter sido lido antes do commit).
+     */
+    private final ConcurrentHashMap<Long, Long> revocations = new ConcurrentHashMap<>();
+
+    /**
+     * Sessão que perdeu acesso a uma turma.
+     *
+     * @param subscriptions subscriptionId → destino das assinaturas em {@code /topic/instrumentos/{turmaId}/**}
+     */
+    public record RevokedSession(String sessionId, Authentication authentication, Map<String, String> subscriptions) {
+    }
+
+    private record Subscription(Long turmaId, String destination) {
+    }
+
+    private static final class SessionAccess {
+        final Authentication authentication;
+        /** turmaId → instante (ms) em que o acesso foi verificado. */
+        final ConcurrentHashMap<Long, Long> granted = new ConcurrentHashMap<>();
+        /** subscriptionId → assinatura em tópico de turma. */
+        final ConcurrentHashMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+        SessionAccess(Authentication authentication) {
+            this.authentication = authentication;
+        }
+    }
+
+    public InstrumentoSessionAccessCache(
+            InstrumentoAccessService accessService,
+            InstrumentoAccessProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.accessService = accessService;
+        this.ttlMillis = properties.getSessionCacheTtl().toMillis();
+        this.hits = Counter.builder("instrumento.access.cache.hit").register(meterRegistry);
+        this.misses = Counter.builder("instrumento.access.cache.miss").register(meterRegistry);
+    }
+
+    /**
+     * Mesmo contrato de {@link InstrumentoAccessService#assertCanAccessTurmaInstrumento}, com cache
+     * por sessão. Sem {@code sessionId}, sempre consulta.
+     */
+    public void assertCanAccess(String sessionId, Long turmaId, Authentication authentication) {
+        if (sessionId == null || turmaId == null || authentication == null || authentication.getName() == null) {
+            accessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+            return;
+        }
+        SessionAccess access = sessions.get(sessionId);
+        if (access != null && authentication.getName().equals(access.authentication.getName())) {
+            Long grantedAt = access.granted.get(turmaId);
+            if (grantedAt != null && System.currentTimeMillis() - grantedAt < ttlMillis) {
+                hits.increment();
+                return;
+            }
+        }
+
+        misses.increment();
+        long epoch = revocations.getOrDefault(turmaId, 0L);
+        accessService.assertCanAccessTurmaInstrumento(turmaId, authentication);
+
+        access = sessions.compute(sessionId, (id, current) ->
+                current != null && authentication.getName().equals(current.authentication.getName())
+                        ? current
+                        : new SessionAccess(authentication));
+        access.granted.put(turmaId, System.currentTimeMillis());
+        // Revogação durante a consulta: descarta (a revogação já pode ter varrido esta sessão).
+        if (revocations.getOrDefault(turmaId, 0L) != epoch) {
+            access.granted.remove(turmaId);
+        }
+    }
+
+    /**
+     * Registra uma assinatura já autorizada em tópico da turma, para poder cancelá-la na revogação.
+     */
+    public void subscribed(String sessionId, String subscriptionId, String destination, Long turmaId) {
+        if (sessionId == null || subscriptionId == null) {
+            return;
+        }
+        SessionAccess access = sessions.get(sessionId);
+        if (access != null) {
+            access.subscriptions.put(subscriptionId, new Subscription(turmaId, destination));
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        SessionAccess access = accessor.getSessionId() == null ? null : sessions.get(accessor.getSessionId());
+        if (access != null && accessor.getSubscriptionId() != null) {
+            access.subscriptions.remove(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    /**
+     * Remove a permissão na turma das sessões desses usuários (ADMIN não depende da turma e é mantido).
+     *
+     * @param users nomes de usuário (e-mail), comparados sem diferenciar maiúsculas/minúsculas
+     * @return sessões que tinham a permissão em cache ou assinaturas na turma
+     */
+    public List<RevokedSession> revoke(Long turmaId, Set<String> users) {
+        revocations.merge(turmaId, 1L, Long::sum);
+        List<RevokedSession> revoked = new ArrayList<>();
+        sessions.forEach((sessionId, access) -> {
+            String user = access.authentication.getName();
+            if (user == null || !users.contains(user.toLowerCase()) || isAdmin(access.authentication)) {
+                return;
+            }
+            boolean granted = access.granted.remove(turmaId) != null;
+            Map<String, String> subscriptions = new HashMap<>();
+            access.subscriptions.forEach((subscriptionId, subscription) -> {
+                if (turmaId.equals(subscription.turmaId())) {
+                    subscriptions.put(subscriptionId, subscription.destination());
+                }
+            });
+            if (granted || !subscriptions.isEmpty()) {
+                revoked.add(new RevokedSession(sessionId, access.authentication, subscriptions));
+            }
+        });
+        return revoked;
+    }
+
+    private static boolean isAdmin(Authentication authentication) {
+        return authentication.getAuthorities() != null && authentication.getAuthorities().stream()
+                .anyMatch(a -> "ROLE_ADMIN".equalsIgnoreCase(a.getAuthority()));
+    }
+}
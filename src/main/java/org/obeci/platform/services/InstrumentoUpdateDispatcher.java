@@ -0,0 +1,70 @@
+package org.obeci.platform.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.obeci.platform.configs.InstrumentoDispatcherProperties;
+import org.obeci.platform.services.collab.OrderedLaneExecutor;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Despachante de atualizações colaborativas com um único escritor por turma.
+ *
+ * <p>Antes, editores simultâneos da mesma turma competiam dentro do serviço e o perdedor
+ * recebia {@code VERSION_CONFLICT}, forçando refetch + retry justamente no pico de carga.
+ * Agora as atualizações de uma turma passam por uma única fila ordenada
+ * (hash(turmaId) → lane), enquanto turmas diferentes rodam em paralelo.</p>
+ *
+ * <p>Quando a fila da lane está cheia, ou quando a entrega dos broadcasts da turma está atrasada
+ * ({@link InstrumentoBroadcastDispatcher#hasCapacity}), a atualização é rejeitada na hora
+ * ({@link RejectedExecutionException}) e o controller responde {@code OVERLOADED};
+ * o cliente deve aguardar e reenviar o estado mais recente, não cada tentativa antiga.</p>
+ *
+ * <p>Métricas: {@code instrumento.dispatcher.queue.depth}, {@code instrumento.dispatcher.wait},
+ * {@code instrumento.dispatcher.execution} e {@code instrumento.dispatcher.rejected}.</p>
+ */
+@Service
+// Garante que cache, entrega/agrupador de broadcast e writer do change log sejam destruídos depois
+// deste bean: as lanes drenam antes do flush final de cada um.
+@DependsOn({"instrumentoDocumentCache", "instrumentoBroadcastDispatcher", "instrumentoBroadcastCoalescer",
+        "instrumentoChangeLogWriter"})
+public class InstrumentoUpdateDispatcher {
+
+    private final InstrumentoBroadcastDispatcher broadcastDispatcher;
+    private final OrderedLaneExecutor executor;
+
+    public InstrumentoUpdateDispatcher(
+            InstrumentoBroadcastDispatcher broadcastDispatcher,
+            InstrumentoDispatcherProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.broadcastDispatcher = broadcastDispatcher;
+        this.executor = new OrderedLaneExecutor(
+                "instrumento.dispatcher",
+                properties.getLanes(),
+                properties.getQueueCapacity(),
+                meterRegistry
+        );
+    }
+
+    /**
+     * Enfileira a atualização na lane da turma.
+     *
+     * @throws RejectedExecutionException se a lane ou a entrega dos broadcasts da turma estiver saturada
+     */
+    public void dispatch(Long turmaId, Runnable update) {
+        // Recusa aqui, antes do lock do documento, em vez de atrasar ou reordenar a entrega depois.
+        if (!broadcastDispatcher.hasCapacity(turmaId)) {
+            throw new RejectedExecutionException("Entrega de broadcasts saturada para turmaId=" + turmaId);
+        }
+        executor.execute(turmaId, update);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown(Duration.ofSeconds(10));
+    }
+}
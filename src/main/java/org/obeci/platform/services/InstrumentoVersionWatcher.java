@@ -0,0 +1,135 @@
+package org.obeci.platform.services;
+
+import jakarta.annotation.PreDestroy;
+import org.obeci.platform.configs.InstrumentoLongPollProperties;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Espera por versões novas do Instrumento (long-poll REST).
+ *
+ * <p>Motivo: clientes em redes que bloqueiam WebSocket faziam polling do documento inteiro. Aqui a
+ * requisição fica estacionada (sem thread) até {@link InstrumentoDocumentCache} aplicar uma versão
+ * maior que a do cliente (em memória, sem esperar o write-behind); só então o documento é lido e enviado.</p>
+ *
+ * <p>Só guarda futures em memória, por turma. Em várias instâncias, cada uma acorda apenas com as
+ * versões que ela mesma aplicou, exceto nos modos POSTGRES e RELAY, em que {@link InstrumentoClusterBridge}
+ * repassa as gravações das outras.</p>
+ */
+@Service
+public class InstrumentoVersionWatcher {
+
+    private record Waiter(long sinceVersion, CompletableFuture<Long> future) {
+    }
+
+    private final InstrumentoLongPollProperties properties;
+
+    private final ConcurrentHashMap<Long, Queue<Waiter>> waiters = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicInteger responderThreads = new AtomicInteger();
+    private final ThreadPoolExecutor responder;
+
+    public InstrumentoVersionWatcher(InstrumentoLongPollProperties properties) {
+        this.properties = properties;
+        int threads = Math.max(properties.getResponderThreads(), 1);
+        this.responder = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "instrumento.long-poll-" + responderThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.responder.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Executor para o que roda quando uma espera é acordada: as futures são completadas na thread da
+     * escrita (sob o lock do documento) ou do flush, que não deve ler o documento para responder.
+     * Fila sem limite: no máximo uma tarefa por espera ({@code max-waiters}).
+     */
+    public Executor responder() {
+        return responder;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        responder.shutdownNow();
+    }
+
+    /**
+     * Registra a espera por uma versão maior que {@code sinceVersion}.
+     *
+     * <p>O chamador deve conferir a versão atual depois de registrar (a gravação pode ter ocorrido
+     * antes) e chamar {@link #cancel} ao terminar por timeout/erro.</p>
+     *
+     * @return future completada com a versão gravada, ou vazio se o limite de esperas foi atingido
+     */
+    public Optional<CompletableFuture<Long>> await(Long turmaId, long sinceVersion) {
+        if (count.incrementAndGet() > Math.max(properties.getMaxWaiters(), 1)) {
+            count.decrementAndGet();
+            return Optional.empty();
+        }
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        Waiter waiter = new Waiter(sinceVersion, future);
+        // Dentro do compute: não corre com a remoção da fila vazia em cancel/committed.
+        waiters.compute(turmaId, (id, queue) -> {
+            Queue<Waiter> q = queue != null ? queue : new ConcurrentLinkedQueue<>();
+            q.add(waiter);
+            return q;
+        });
+        return Optional.of(future);
+    }
+
+    public void cancel(Long turmaId, CompletableFuture<Long> future) {
+        Queue<Waiter> queue = waiters.get(turmaId);
+        if (queue != null && queue.removeIf(w -> w.future() == future)) {
+            count.decrementAndGet();
+            waiters.computeIfPresent(turmaId, (id, q) -> q.isEmpty() ? null : q);
+        }
+    }
+
+    /**
+     * Acorda quem espera por uma versão menor que {@code version}: chamado quando a versão em memória
+     * avança, após a gravação no banco (rebase) e pelas gravações de outras instâncias.
+     *
+     * <p>As futures são completadas na thread de quem chama; o trabalho pesado vai para {@link #responder()}.</p>
+     */
+    public void committed(Long turmaId, long version) {
+        Queue<Waiter> queue = waiters.get(turmaId);
+        if (queue == null) {
+            return;
+        }
+        for (Waiter w : queue) {
+            if (w.sinceVersion() < version && queue.remove(w)) {
+                count.decrementAndGet();
+                w.future().complete(version);
+            }
+        }
+        waiters.computeIfPresent(turmaId, (id, q) -> q.isEmpty() ? null : q);
+    }
+
+    /**
+     * Acorda todos os que esperam pela turma, qualquer que seja a versão: o documento deixou de existir
+     * (turma excluída) e não haverá gravação nova. Completadas com -1.
+     */
+    public void discarded(Long turmaId) {
+        Queue<Waiter> queue = waiters.remove(turmaId);
+        if (queue == null) {
+            return;
+        }
+        for (Waiter w : queue) {
+            if (queue.remove(w)) {
+                count.decrementAndGet();
+                w.future().complete(-1L);
+            }
+        }
+    }
+}
@@ -3,7 +3,10 @@ package org.obeci.platform.services;
 import org.obeci.platform.entities.Turma;
 import org.obeci.platform.repositories.TurmaRepository;
 import org.obeci.platform.exceptions.DuplicateTurmaException;
+import org.obeci.platform.services.collab.TurmaDeletedEvent;
+import org.obeci.platform.services.collab.TurmaMembershipRevokedEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -19,6 +22,10 @@ import java.util.Set;
  *   <li>CRUD de {@link Turma}.</li>
  *   <li>Aplicar regra de unicidade de nome por escola.</li>
  *   <li>Garantir criação de instrumento vazio ao criar turma.</li>
+ *   <li>Avisar ({@link TurmaMembershipRevokedEvent}) quando professores deixam a turma, para
+ *       revogar o acesso deles nas sessões de edição abertas.</li>
+ *   <li>Avisar ({@link TurmaDeletedEvent}) quando a turma é excluída, para o documento em edição
+ *       sair da memória.</li>
  * </ul>
  * </p>
  */
@@ -30,6 +37,9 @@ public class TurmaService {
     @Autowired
     private InstrumentoService instrumentoService;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     public List<Turma> getAllTurmas() {
         return turmaRepository.findAll();
     }
@@ -83,18 +93,31 @@ public class TurmaService {
                     ? new LinkedHashSet<>()
                     : new LinkedHashSet<>(turmaDetails.getProfessorIds());
             professorIds.removeIf(pid -> pid == null || pid <= 0);
+            Set<Long> removed = turma.getProfessorIds() == null
+                    ? new LinkedHashSet<>()
+                    : new LinkedHashSet<>(turma.getProfessorIds());
+            removed.removeAll(professorIds);
             turma.setProfessorIds(professorIds);
             turma.setTurno(turmaDetails.getTurno());
             turma.setNome(turmaDetails.getNome());
             turma.setIsActive(turmaDetails.getIsActive());
-            return turmaRepository.save(turma);
+            Turma saved = turmaRepository.save(turma);
+            if (!removed.isEmpty()) {
+                eventPublisher.publishEvent(new TurmaMembershipRevokedEvent(id, removed));
+            }
+            return saved;
         }
         return null;
     }
 
     public boolean deleteTurma(Long id) {
-        if (turmaRepository.existsById(id)) {
+        Turma turma = turmaRepository.findById(id).orElse(null);
+        if (turma != null) {
             turmaRepository.deleteById(id);
+            eventPublisher.publishEvent(new TurmaDeletedEvent(id));
+            if (turma.getProfessorIds() != null && !turma.getProfessorIds().isEmpty()) {
+                eventPublisher.publishEvent(new TurmaMembershipRevokedEvent(id, new LinkedHashSet<>(turma.getProfessorIds())));
+            }
             return true;
         }
         return false;
@@ -0,0 +1,135 @@
+package org.obeci.platform.services.collab;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Utilitário de hash de conteúdo (SHA-256 em hexadecimal).
+ *
+ * <p>Usado para detectar, sem comparar o conteúdo inteiro, se um trecho do documento mudou.</p>
+ */
+public final class ContentHash {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private ContentHash() {
+    }
+
+    /**
+     * SHA-256 da forma canônica do JSON: sem espaços e com as chaves de objeto em ordem
+     * lexicográfica (a ordem dos arrays é preservada). Dois documentos que diferem apenas
+     * na ordem das chaves têm o mesmo hash.
+     *
+     * <p>A forma canônica é escrita direto no digest, sem montar a String intermediária.</p>
+     */
+    public static String canonical(JsonNode tree) {
+        MessageDigest digest = newDigest();
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            writeCanonical(gen, tree);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hash canônico de um array montado elemento a elemento: mesmo resultado de {@link #canonical}
+     * sobre o array inteiro, sem precisar da árvore do documento todo (leitura em streaming).
+     */
+    public static CanonicalArray canonicalArray() {
+        return new CanonicalArray();
+    }
+
+    /**
+     * Array canônico em construção (ver {@link #canonicalArray()}).
+     */
+    public static final class CanonicalArray {
+
+        private final MessageDigest digest = newDigest();
+        private final JsonGenerator gen;
+
+        private CanonicalArray() {
+            try {
+                gen = JSON_FACTORY.createGenerator(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+                gen.writeStartArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public void add(JsonNode item) {
+            try {
+                writeCanonical(gen, item);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public String hash() {
+            try {
+                gen.writeEndArray();
+                gen.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    public static String sha256Hex(String content) {
+        return sha256Hex(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String sha256Hex(byte[] data) {
+        return HexFormat.of().formatHex(newDigest().digest(data));
+    }
+
+    private static void writeCanonical(JsonGenerator gen, JsonNode node) throws IOException {
+        if (node == null || node.isMissingNode() || node.isNull()) {
+            gen.writeNull();
+        } else if (node.isObject()) {
+            List<String> names = new ArrayList<>(node.size());
+            for (Iterator<String> it = node.fieldNames(); it.hasNext(); ) {
+                names.add(it.next());
+            }
+            names.sort(null);
+            gen.writeStartObject();
+            for (String name : names) {
+                gen.writeFieldName(name);
+                writeCanonical(gen, node.get(name));
+            }
+            gen.writeEndObject();
+        } else if (node.isArray()) {
+            gen.writeStartArray();
+            for (JsonNode item : node) {
+                writeCanonical(gen, item);
+            }
+            gen.writeEndArray();
+        } else {
+            // Escalares: mesma representação do ObjectMapper (null tratado acima: NullNode exige provider).
+            node.serialize(gen, null);
+        }
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 é obrigatório em toda JVM.
+            throw new IllegalStateException(e);
+        }
+    }
+}
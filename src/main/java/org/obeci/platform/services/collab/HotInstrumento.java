@@ -0,0 +1,348 @@
+package org.obeci.platform.services.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.obeci.platform.entities.Instrumento;
+import org.obeci.platform.services.InstrumentoDocumentStore;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estado autoritativo em memória de um instrumento em edição.
+ *
+ * <p>Mantido pelo {@link org.obeci.platform.services.InstrumentoDocumentCache}. Enquanto o
+ * documento está "quente", as atualizações colaborativas são aplicadas aqui e só depois
+ * gravadas no banco (write-behind).</p>
+ *
+ * <p>Concorrência: todo acesso deve acontecer com o monitor deste objeto
+ * ({@code synchronized (doc)}), o que o cache já garante em
+ * {@code InstrumentoDocumentCache#withDocument}.</p>
+ */
+public class HotInstrumento {
+
+    private final Long instrumentoId;
+    private final Long turmaId;
+    private final LocalDateTime dataCriacao;
+
+    private String slidesJson;
+    /** Árvore já parseada de {@link #slidesJson} (lazy; tratada como imutável). */
+    private JsonNode slidesTree;
+    /** Hash canônico de {@link #slidesJson} ({@link ContentHash#canonical}); null até ser calculado. */
+    private String contentHash;
+
+    private long version;
+    /** Última versão confirmada no banco. */
+    private long persistedVersion;
+
+    private LocalDateTime dataModificacao;
+    /** Momento em que o documento passou a ter alterações não gravadas (0 = limpo). */
+    private long dirtySinceMillis;
+    private volatile long lastAccessMillis;
+    private volatile long lastWriteMillis;
+    private boolean evicted;
+
+    /**
+     * Árvores das versões recentes (inclui a atual quando já parseada), usadas como base do
+     * merge de três vias quando um cliente envia uma versão desatualizada.
+     */
+    private final Map<Long, JsonNode> history;
+
+    /**
+     * Passo entre duas versões consecutivas do documento.
+     *
+     * @param ops operações RFC 6902 que levam {@code baseVersion} a {@code version}
+     */
+    public record Step(long baseVersion, long version, JsonNode ops) {
+    }
+
+    /**
+     * Buffer circular dos passos recentes, em ordem de versão. Bem mais barato que guardar
+     * árvores: serve o catch-up de clientes que perderam algumas versões.
+     */
+    private final ArrayDeque<Step> steps = new ArrayDeque<>();
+    private final int maxSteps;
+
+    /** Serializa gravações concorrentes do mesmo documento (agendada, ociosidade, shutdown). */
+    private final Object flushLock = new Object();
+
+    /**
+     * Estado por slide da última gravação (modo SLIDES); null se o documento está em {@code slides_json}.
+     * Acessado apenas sob {@link #flushLock}.
+     */
+    private Map<String, InstrumentoDocumentStore.PersistedSlide> persistedSlides;
+
+    /**
+     * Última versão registrada no histórico ({@code InstrumentoHistoryService}) e seu conteúdo,
+     * base do próximo delta; null se desconhecido. Acessado apenas sob {@link #flushLock}.
+     */
+    private long historyVersion;
+    private String historyJson;
+
+    /**
+     * @param slidesJson conteúdo carregado pelo {@link InstrumentoDocumentStore} (pode vir das linhas por slide)
+     * @param persistedSlides estado por slide correspondente, ou null
+     */
+    public HotInstrumento(
+            Instrumento entity,
+            String slidesJson,
+            Map<String, InstrumentoDocumentStore.PersistedSlide> persistedSlides,
+            int historySize,
+            int stepBufferSize
+    ) {
+        this.maxSteps = Math.max(stepBufferSize, 0);
+        int maxHistory = Math.max(historySize, 1);
+        this.history = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, JsonNode> eldest) {
+                return size() > maxHistory;
+            }
+        };
+        this.instrumentoId = entity.getId();
+        this.turmaId = entity.getTurmaId();
+        this.dataCriacao = entity.getDataCriacao();
+        this.slidesJson = slidesJson;
+        this.contentHash = entity.getContentHash();
+        this.persistedSlides = persistedSlides;
+        this.version = entity.getVersion() == null ? 0L : entity.getVersion();
+        this.persistedVersion = this.version;
+        this.historyVersion = this.version;
+        this.historyJson = slidesJson;
+        this.dataModificacao = entity.getDataModificacao();
+        this.lastAccessMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Substitui o conteúdo e incrementa a versão (ainda não persistido).
+     *
+     * @param json novo JSON dos slides
+     * @param tree árvore correspondente (opcional; evita reparse em patches seguintes)
+     * @param contentHash hash canônico do novo conteúdo
+     * @return nova versão
+     */
+    public long apply(String json, JsonNode tree, String contentHash) {
+        if (slidesTree != null) {
+            history.put(version, slidesTree);
+        }
+        this.slidesJson = json;
+        this.slidesTree = tree;
+        this.contentHash = contentHash;
+        if (!isDirty()) {
+            this.dirtySinceMillis = System.currentTimeMillis();
+        }
+        this.version++;
+        this.dataModificacao = LocalDateTime.now();
+        this.lastWriteMillis = System.currentTimeMillis();
+        if (tree != null) {
+            history.put(this.version, tree);
+        }
+        return this.version;
+    }
+
+    /**
+     * Reposiciona o documento sobre o que outro escritor gravou no banco.
+     *
+     * <p>{@code storedVersion} passa a ser a versão gravada, e {@code json} (alterações locais já
+     * mescladas sobre ela) vira uma versão nova, ainda não gravada, acima de todas as que esta cópia
+     * já anunciou aos clientes. O histórico de merge e os passos de catch-up são descartados: as
+     * versões anteriores desta cópia não existem no banco.</p>
+     *
+     * @param storedJson conteúdo gravado em {@code storedVersion} (base do próximo delta do histórico)
+     * @param storedSlides estado por slide do conteúdo gravado, ou null (acesso sob {@link #flushLock})
+     * @return nova versão
+     */
+    public long rebase(
+            long storedVersion,
+            String storedJson,
+            Map<String, InstrumentoDocumentStore.PersistedSlide> storedSlides,
+            String json,
+            JsonNode tree,
+            String contentHash
+    ) {
+        history.clear();
+        steps.clear();
+        this.persistedVersion = storedVersion;
+        this.persistedSlides = storedSlides;
+        this.historyVersion = storedVersion;
+        this.historyJson = storedJson;
+        this.slidesJson = json;
+        this.slidesTree = tree;
+        this.contentHash = contentHash;
+        this.version = Math.max(version, storedVersion) + 1;
+        this.dirtySinceMillis = System.currentTimeMillis();
+        this.dataModificacao = LocalDateTime.now();
+        this.lastWriteMillis = System.currentTimeMillis();
+        if (tree != null) {
+            history.put(this.version, tree);
+        }
+        return this.version;
+    }
+
+    /**
+     * Registra as operações da versão recém-aplicada ({@code version - 1 -> version}).
+     *
+     * <p>Versões aplicadas sem registro (ex.: REST) deixam uma lacuna e o catch-up que passar por
+     * ela cai no snapshot completo.</p>
+     */
+    public void recordStep(long baseVersion, long version, JsonNode ops) {
+        if (maxSteps == 0) {
+            return;
+        }
+        steps.addLast(new Step(baseVersion, version, ops));
+        while (steps.size() > maxSteps) {
+            steps.removeFirst();
+        }
+    }
+
+    /**
+     * Passos que levam {@code fromVersion} até a versão atual.
+     *
+     * @return null se algum passo já saiu do buffer ou não foi registrado
+     */
+    public List<Step> stepsSince(long fromVersion) {
+        List<Step> out = new ArrayList<>();
+        long expected = fromVersion;
+        for (Step step : steps) {
+            if (step.version() <= fromVersion) {
+                continue;
+            }
+            if (step.baseVersion() != expected) {
+                return null;
+            }
+            out.add(step);
+            expected = step.version();
+        }
+        return expected == version ? out : null;
+    }
+
+    /**
+     * Marca a versão informada como gravada no banco.
+     */
+    public void markPersisted(long flushedVersion) {
+        if (flushedVersion > persistedVersion) {
+            persistedVersion = flushedVersion;
+        }
+        dirtySinceMillis = isDirty() ? System.currentTimeMillis() : 0L;
+    }
+
+    public boolean isDirty() {
+        return version != persistedVersion;
+    }
+
+    public void touch() {
+        this.lastAccessMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Cria uma entidade destacada (não gerenciada) com o estado atual, para leituras REST.
+     */
+    public Instrumento toEntity() {
+        Instrumento i = new Instrumento();
+        i.setId(instrumentoId);
+        i.setTurmaId(turmaId);
+        i.setSlidesJson(slidesJson);
+        i.setContentHash(contentHash);
+        i.setVersion(version);
+        i.setDataCriacao(dataCriacao);
+        i.setDataModificacao(dataModificacao);
+        return i;
+    }
+
+    public Long getInstrumentoId() {
+        return instrumentoId;
+    }
+
+    public Long getTurmaId() {
+        return turmaId;
+    }
+
+    public String getSlidesJson() {
+        return slidesJson;
+    }
+
+    /**
+     * Árvore de uma versão recente, ou null se já saiu do histórico.
+     */
+    public JsonNode getVersionTree(long v) {
+        if (v == version && slidesTree != null) {
+            return slidesTree;
+        }
+        return history.get(v);
+    }
+
+    public JsonNode getSlidesTree() {
+        return slidesTree;
+    }
+
+    public void setSlidesTree(JsonNode slidesTree) {
+        this.slidesTree = slidesTree;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getPersistedVersion() {
+        return persistedVersion;
+    }
+
+    public LocalDateTime getDataModificacao() {
+        return dataModificacao;
+    }
+
+    public long getDirtySinceMillis() {
+        return dirtySinceMillis;
+    }
+
+    public Object getFlushLock() {
+        return flushLock;
+    }
+
+    public Map<String, InstrumentoDocumentStore.PersistedSlide> getPersistedSlides() {
+        return persistedSlides;
+    }
+
+    public void setPersistedSlides(Map<String, InstrumentoDocumentStore.PersistedSlide> persistedSlides) {
+        this.persistedSlides = persistedSlides;
+    }
+
+    public long getHistoryVersion() {
+        return historyVersion;
+    }
+
+    public String getHistoryJson() {
+        return historyJson;
+    }
+
+    public void setHistoryBase(long historyVersion, String historyJson) {
+        this.historyVersion = historyVersion;
+        this.historyJson = historyJson;
+    }
+
+    public long getLastAccessMillis() {
+        return lastAccessMillis;
+    }
+
+    public long getLastWriteMillis() {
+        return lastWriteMillis;
+    }
+
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    public void setEvicted(boolean evicted) {
+        this.evicted = evicted;
+    }
+}
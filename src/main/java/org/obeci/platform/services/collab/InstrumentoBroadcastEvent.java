@@ -0,0 +1,32 @@
+package org.obeci.platform.services.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.obeci.platform.dtos.collab.InstrumentoChangeLogDto;
+import org.obeci.platform.dtos.collab.InstrumentoWsAck;
+
+/**
+ * Saída de uma atualização aplicada ao documento: o que precisa ser entregue aos clientes.
+ *
+ * <p>Montado dentro de {@code InstrumentoDocumentCache#withDocument} (só referências, nada
+ * serializado) e entregue depois, fora do lock, por {@code InstrumentoBroadcastDispatcher}.</p>
+ *
+ * @param broadcast mensagem do tópico da turma; null = sem broadcast (atualização sem efeito)
+ * @param state árvore do documento após a atualização (tratada como imutável)
+ * @param excludeSessionId sessão que não recebe {@code broadcast} (autor); null = todas
+ * @param changeLog entrada para {@code /topic/instrumentos/{turmaId}/changes}; null = nenhuma
+ * @param version versão do documento após a atualização
+ * @param actor destinatário do {@code ack}; null = sem ACK
+ * @param sessionId sessão autora: o ACK vai só para ela (null = todas as sessões do ator)
+ */
+public record InstrumentoBroadcastEvent(
+        Long turmaId,
+        Object broadcast,
+        JsonNode state,
+        String excludeSessionId,
+        InstrumentoChangeLogDto changeLog,
+        long version,
+        String actor,
+        String sessionId,
+        InstrumentoWsAck ack
+) {
+}
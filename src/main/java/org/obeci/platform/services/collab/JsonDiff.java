@@ -0,0 +1,108 @@
+package org.obeci.platform.services.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Gera um JSON Patch (RFC 6902) que transforma um documento em outro.
+ *
+ * <p>Usado pelo histórico de versões para gravar só a diferença entre versões consecutivas.
+ * O resultado é aplicável por {@link JsonPatch#apply} e usa apenas {@code add}, {@code remove}
+ * e {@code replace}.</p>
+ *
+ * <p>Arrays: descarta o prefixo e o sufixo iguais e compara o trecho do meio posição a posição
+ * (o caso comum é editar, inserir ou remover um slide). Não tenta detectar movimentações; uma
+ * reordenação vira substituição dos elementos afetados.</p>
+ */
+public final class JsonDiff {
+
+    private JsonDiff() {
+    }
+
+    /**
+     * @return array de operações (vazio se os documentos são iguais)
+     */
+    public static ArrayNode diff(JsonNode source, JsonNode target) {
+        ArrayNode ops = JsonNodeFactory.instance.arrayNode();
+        diff(source, target, "", ops);
+        return ops;
+    }
+
+    private static void diff(JsonNode source, JsonNode target, String path, ArrayNode ops) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (source instanceof ObjectNode s && target instanceof ObjectNode t) {
+            diffObjects(s, t, path, ops);
+        } else if (source instanceof ArrayNode s && target instanceof ArrayNode t) {
+            diffArrays(s, t, path, ops);
+        } else {
+            ops.add(op("replace", path).set("value", target.deepCopy()));
+        }
+    }
+
+    private static void diffObjects(ObjectNode source, ObjectNode target, String path, ArrayNode ops) {
+        Iterator<String> names = source.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!target.has(name)) {
+                ops.add(op("remove", path + "/" + escape(name)));
+            }
+        }
+        for (Map.Entry<String, JsonNode> field : target.properties()) {
+            String child = path + "/" + escape(field.getKey());
+            JsonNode previous = source.get(field.getKey());
+            if (previous == null) {
+                ops.add(op("add", child).set("value", field.getValue().deepCopy()));
+            } else {
+                diff(previous, field.getValue(), child, ops);
+            }
+        }
+    }
+
+    private static void diffArrays(ArrayNode source, ArrayNode target, String path, ArrayNode ops) {
+        int n = source.size();
+        int m = target.size();
+        int prefix = 0;
+        while (prefix < n && prefix < m && source.get(prefix).equals(target.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix
+                && source.get(n - 1 - suffix).equals(target.get(m - 1 - suffix))) {
+            suffix++;
+        }
+        int sourceMiddle = n - prefix - suffix;
+        int targetMiddle = m - prefix - suffix;
+        int common = Math.min(sourceMiddle, targetMiddle);
+
+        // Posições pareadas: diferença recursiva (os índices não mudam).
+        for (int i = 0; i < common; i++) {
+            diff(source.get(prefix + i), target.get(prefix + i), path + "/" + (prefix + i), ops);
+        }
+        // Sobra na origem: remove sempre no mesmo índice (os seguintes "sobem").
+        for (int i = common; i < sourceMiddle; i++) {
+            ops.add(op("remove", path + "/" + (prefix + common)));
+        }
+        // Sobra no destino: insere em ordem, antes do sufixo.
+        for (int i = common; i < targetMiddle; i++) {
+            ops.add(op("add", path + "/" + (prefix + i)).set("value", target.get(prefix + i).deepCopy()));
+        }
+    }
+
+    private static ObjectNode op(String name, String path) {
+        ObjectNode op = JsonNodeFactory.instance.objectNode();
+        op.put("op", name);
+        op.put("path", path);
+        return op;
+    }
+
+    private static String escape(String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+}
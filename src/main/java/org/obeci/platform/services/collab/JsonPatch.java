@@ -0,0 +1,228 @@
+package org.obeci.platform.services.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.obeci.platform.exceptions.InvalidPatchException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementação mínima de JSON Patch (RFC 6902) sobre árvores Jackson.
+ *
+ * <p>Suporta as operações {@code add}, {@code remove}, {@code replace}, {@code move},
+ * {@code copy} e {@code test}. Os caminhos seguem JSON Pointer (RFC 6901), incluindo
+ * os escapes {@code ~0} e {@code ~1} e o índice {@code -} (fim do array) para {@code add}.</p>
+ *
+ * <p>Pontos críticos:
+ * <ul>
+ *   <li>O patch é aplicado sobre uma cópia do documento: se qualquer operação falhar,
+ *       o documento original permanece intacto (semântica "tudo ou nada").</li>
+ *   <li>Falhas são sinalizadas com {@link InvalidPatchException}.</li>
+ * </ul>
+ * </p>
+ */
+public final class JsonPatch {
+
+    private JsonPatch() {
+    }
+
+    /**
+     * Aplica a lista de operações ao documento e retorna o novo documento.
+     *
+     * @param document documento atual (não é modificado)
+     * @param ops array de operações RFC 6902
+     * @return novo documento com as operações aplicadas
+     */
+    public static JsonNode apply(JsonNode document, JsonNode ops) {
+        if (ops == null || !ops.isArray()) {
+            throw new InvalidPatchException("O patch deve ser um array de operações");
+        }
+
+        // Wrapper para permitir substituir a raiz ("") com a mesma lógica de parent/child.
+        ArrayNode root = JsonNodeFactory.instance.arrayNode();
+        root.add(document == null ? NullNode.getInstance() : document.deepCopy());
+
+        for (JsonNode op : ops) {
+            applyOperation(root, op);
+        }
+        return root.get(0);
+    }
+
+    private static void applyOperation(ArrayNode root, JsonNode op) {
+        if (op == null || !op.isObject()) {
+            throw new InvalidPatchException("Operação de patch inválida: " + op);
+        }
+        String name = op.path("op").asText("");
+        String path = requiredText(op, "path");
+
+        switch (name) {
+            case "add" -> add(root, path, requiredValue(op));
+            case "remove" -> remove(root, path);
+            case "replace" -> {
+                JsonNode value = requiredValue(op);
+                if (!path.isEmpty()) {
+                    remove(root, path);
+                }
+                add(root, path, value);
+            }
+            case "move" -> {
+                String from = requiredText(op, "from");
+                if (path.startsWith(from + "/")) {
+                    throw new InvalidPatchException("move: 'from' não pode ser ancestral de 'path' (" + from + " -> " + path + ")");
+                }
+                JsonNode value = remove(root, from);
+                add(root, path, value);
+            }
+            case "copy" -> {
+                String from = requiredText(op, "from");
+                add(root, path, get(root, from).deepCopy());
+            }
+            case "test" -> {
+                JsonNode actual = get(root, path);
+                if (!actual.equals(requiredValue(op))) {
+                    throw new InvalidPatchException("test falhou em " + path);
+                }
+            }
+            default -> throw new InvalidPatchException("Operação de patch desconhecida: '" + name + "'");
+        }
+    }
+
+    private static void add(ArrayNode root, String path, JsonNode value) {
+        List<String> tokens = parsePointer(path);
+        if (tokens.size() == 1) {
+            // Caminho "" substitui o documento inteiro.
+            root.set(0, value);
+            return;
+        }
+        JsonNode parent = resolveParent(root, tokens, path);
+        String last = lastToken(tokens);
+
+        if (parent instanceof ObjectNode obj) {
+            obj.set(last, value);
+        } else if (parent instanceof ArrayNode arr) {
+            if ("-".equals(last)) {
+                arr.add(value);
+            } else {
+                int index = parseIndex(last, path);
+                if (index > arr.size()) {
+                    throw new InvalidPatchException("Índice fora do array em " + path);
+                }
+                arr.insert(index, value);
+            }
+        } else {
+            throw new InvalidPatchException("Destino não é objeto nem array em " + path);
+        }
+    }
+
+    private static JsonNode remove(ArrayNode root, String path) {
+        List<String> tokens = parsePointer(path);
+        if (tokens.size() == 1) {
+            throw new InvalidPatchException("Não é possível remover a raiz do documento");
+        }
+        JsonNode parent = resolveParent(root, tokens, path);
+        String last = lastToken(tokens);
+
+        if (parent instanceof ObjectNode obj) {
+            if (!obj.has(last)) {
+                throw new InvalidPatchException("Caminho inexistente: " + path);
+            }
+            return obj.remove(last);
+        }
+        if (parent instanceof ArrayNode arr) {
+            int index = parseIndex(last, path);
+            if (index >= arr.size()) {
+                throw new InvalidPatchException("Índice fora do array em " + path);
+            }
+            return arr.remove(index);
+        }
+        throw new InvalidPatchException("Caminho inexistente: " + path);
+    }
+
+    private static JsonNode get(ArrayNode root, String path) {
+        List<String> tokens = parsePointer(path);
+        JsonNode current = root;
+        for (String token : tokens) {
+            current = child(current, token, path);
+        }
+        return current;
+    }
+
+    private static JsonNode resolveParent(ArrayNode root, List<String> tokens, String path) {
+        JsonNode current = root;
+        for (int i = 0; i < tokens.size() - 1; i++) {
+            current = child(current, tokens.get(i), path);
+        }
+        return current;
+    }
+
+    private static JsonNode child(JsonNode node, String token, String path) {
+        JsonNode next = null;
+        if (node instanceof ObjectNode obj) {
+            next = obj.get(token);
+        } else if (node instanceof ArrayNode arr) {
+            int index = parseIndex(token, path);
+            next = index < arr.size() ? arr.get(index) : null;
+        }
+        if (next == null) {
+            throw new InvalidPatchException("Caminho inexistente: " + path);
+        }
+        return next;
+    }
+
+    /**
+     * Converte um JSON Pointer em tokens já "desescapados".
+     *
+     * <p>O primeiro token ("0") aponta para a raiz dentro do wrapper usado em {@link #apply}.</p>
+     */
+    private static List<String> parsePointer(String path) {
+        List<String> tokens = new ArrayList<>();
+        tokens.add("0");
+        if (path.isEmpty()) {
+            return tokens;
+        }
+        if (!path.startsWith("/")) {
+            throw new InvalidPatchException("JSON Pointer inválido: " + path);
+        }
+        for (String raw : path.substring(1).split("/", -1)) {
+            tokens.add(raw.replace("~1", "/").replace("~0", "~"));
+        }
+        return tokens;
+    }
+
+    private static String lastToken(List<String> tokens) {
+        return tokens.get(tokens.size() - 1);
+    }
+
+    private static int parseIndex(String token, String path) {
+        // RFC 6901: "0" ou dígitos sem zero à esquerda; nada de sinal ("+1", "-0") ou espaços.
+        if (token.isEmpty() || token.length() > 9 || (token.length() > 1 && token.charAt(0) == '0')) {
+            throw new InvalidPatchException("Índice de array inválido em " + path);
+        }
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new InvalidPatchException("Índice de array inválido em " + path);
+            }
+        }
+        return Integer.parseInt(token);
+    }
+
+    private static String requiredText(JsonNode op, String field) {
+        JsonNode value = op.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new InvalidPatchException("Campo '" + field + "' obrigatório na operação " + op.path("op").asText("?"));
+        }
+        return value.asText();
+    }
+
+    private static JsonNode requiredValue(JsonNode op) {
+        if (!op.has("value")) {
+            throw new InvalidPatchException("Campo 'value' obrigatório na operação " + op.path("op").asText("?"));
+        }
+        return op.get("value").deepCopy();
+    }
+}
@@ -0,0 +1,137 @@
+package org.obeci.platform.services.collab;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor particionado em filas ("lanes") de uma única thread cada.
+ *
+ * <p>Tarefas com a mesma chave (ex.: turmaId) caem sempre na mesma lane e são executadas
+ * em ordem de chegada, por um único escritor; chaves diferentes são distribuídas entre as
+ * lanes e rodam em paralelo.</p>
+ *
+ * <p>Cada lane tem fila limitada: quando cheia, {@link #execute(Long, Runnable)} lança
+ * {@link RejectedExecutionException} imediatamente (backpressure explícito).</p>
+ *
+ * <p>Métricas publicadas com o prefixo {@code name}:
+ * <ul>
+ *   <li>{@code <name>.queue.depth} (gauge, tag lane)</li>
+ *   <li>{@code <name>.wait} e {@code <name>.execution} (timers, tag lane)</li>
+ *   <li>{@code <name>.rejected} (counter)</li>
+ * </ul>
+ * </p>
+ */
+public class OrderedLaneExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderedLaneExecutor.class);
+
+    private final String name;
+    private final ThreadPoolExecutor[] lanes;
+    private final Timer[] waitTimers;
+    private final Timer[] executionTimers;
+    private final Counter rejected;
+
+    public OrderedLaneExecutor(String name, int laneCount, int queueCapacity, MeterRegistry registry) {
+        this.name = name;
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        int capacity = Math.max(queueCapacity, 1);
+
+        this.lanes = new ThreadPoolExecutor[count];
+        this.waitTimers = new Timer[count];
+        this.executionTimers = new Timer[count];
+
+        for (int i = 0; i < count; i++) {
+            String lane = String.valueOf(i);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(capacity),
+                    r -> {
+                        Thread t = new Thread(r, name + "-lane-" + lane);
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy()
+            );
+            lanes[i] = executor;
+
+            Gauge.builder(name + ".queue.depth", executor, e -> e.getQueue().size())
+                    .tag("lane", lane)
+                    .register(registry);
+            waitTimers[i] = Timer.builder(name + ".wait").tag("lane", lane).register(registry);
+            executionTimers[i] = Timer.builder(name + ".execution").tag("lane", lane).register(registry);
+        }
+        this.rejected = Counter.builder(name + ".rejected").register(registry);
+    }
+
+    /**
+     * Enfileira a tarefa na lane da chave.
+     *
+     * @throws RejectedExecutionException se a fila da lane estiver cheia ou o executor encerrado
+     */
+    public void execute(Long key, Runnable task) {
+        int lane = laneOf(key);
+        long enqueuedAt = System.nanoTime();
+        try {
+            lanes[lane].execute(() -> {
+                long startedAt = System.nanoTime();
+                waitTimers[lane].record(startedAt - enqueuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    // A tarefa é responsável por reportar seus erros; aqui só evitamos perder o rastro.
+                    log.error("Falha não tratada em {} (lane {}): {}", name, lane, t.getMessage(), t);
+                } finally {
+                    executionTimers[lane].record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Vagas livres na fila da lane da chave.
+     */
+    public int remainingCapacity(Long key) {
+        return lanes[laneOf(key)].getQueue().remainingCapacity();
+    }
+
+    public int laneOf(Long key) {
+        int h = key == null ? 0 : Long.hashCode(key);
+        // Espalha bits para ids sequenciais não concentrarem em poucas lanes.
+        h ^= (h >>> 16);
+        return Math.floorMod(h, lanes.length);
+    }
+
+    /**
+     * Encerra as lanes aguardando o processamento do que já está enfileirado.
+     */
+    public void shutdown(Duration timeout) {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (ThreadPoolExecutor lane : lanes) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                    log.warn("{}: tarefas pendentes descartadas no shutdown: {}", name, lane.shutdownNow().size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.shutdownNow();
+            }
+        }
+    }
+}
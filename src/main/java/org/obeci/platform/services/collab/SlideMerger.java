@@ -0,0 +1,169 @@
+package org.obeci.platform.services.collab;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Merge de três vias (base / atual / recebido) do documento de slides, na granularidade de slide.
+ *
+ * <p>Os slides são identificados pelo campo {@code id} que o front-end já usa. Para cada slide:
+ * <ul>
+ *   <li>alterado só em um dos lados → vence a alteração;</li>
+ *   <li>alterado nos dois lados de forma idêntica → aceito;</li>
+ *   <li>alterado nos dois lados de forma diferente (inclui editar x remover) → conflito.</li>
+ * </ul>
+ * A ordem dos slides segue o lado que reordenou; se os dois reordenaram de forma diferente,
+ * também é conflito. Slides novos são inseridos após o seu predecessor original.</p>
+ *
+ * <p>Documentos que não são arrays de objetos com {@code id} único não são mescláveis.</p>
+ */
+public final class SlideMerger {
+
+    private SlideMerger() {
+    }
+
+    /**
+     * @return documento mesclado, ou vazio se houver conflito real (mesmo slide) ou o formato não permitir merge
+     */
+    public static Optional<ArrayNode> merge(JsonNode base, JsonNode current, JsonNode incoming) {
+        Map<String, JsonNode> baseSlides = index(base);
+        Map<String, JsonNode> currentSlides = index(current);
+        Map<String, JsonNode> incomingSlides = index(incoming);
+        if (baseSlides == null || currentSlides == null || incomingSlides == null) {
+            return Optional.empty();
+        }
+
+        Set<String> allIds = new LinkedHashSet<>(baseSlides.keySet());
+        allIds.addAll(currentSlides.keySet());
+        allIds.addAll(incomingSlides.keySet());
+
+        Map<String, JsonNode> merged = new LinkedHashMap<>();
+        for (String id : allIds) {
+            JsonNode b = baseSlides.get(id);
+            JsonNode c = currentSlides.get(id);
+            JsonNode i = incomingSlides.get(id);
+
+            boolean changedCurrent = !Objects.equals(b, c);
+            boolean changedIncoming = !Objects.equals(b, i);
+
+            JsonNode result;
+            if (!changedIncoming) {
+                result = c;
+            } else if (!changedCurrent || Objects.equals(c, i)) {
+                result = i;
+            } else {
+                return Optional.empty();
+            }
+            if (result != null) {
+                merged.put(id, result);
+            }
+        }
+
+        List<String> order = mergeOrder(
+                new ArrayList<>(baseSlides.keySet()),
+                new ArrayList<>(currentSlides.keySet()),
+                new ArrayList<>(incomingSlides.keySet()),
+                merged.keySet()
+        );
+        if (order == null) {
+            return Optional.empty();
+        }
+
+        ArrayNode out = JsonNodeFactory.instance.arrayNode();
+        for (String id : order) {
+            out.add(merged.get(id));
+        }
+        return Optional.of(out);
+    }
+
+    private static List<String> mergeOrder(List<String> base, List<String> current, List<String> incoming, Set<String> survivors) {
+        boolean currentReordered = reordered(base, current);
+        boolean incomingReordered = reordered(base, incoming);
+
+        List<String> skeleton;
+        List<String> other;
+        if (incomingReordered && !currentReordered) {
+            skeleton = incoming;
+            other = current;
+        } else if (currentReordered && incomingReordered && !relativeOrder(current, incoming)) {
+            return null;
+        } else {
+            skeleton = current;
+            other = incoming;
+        }
+
+        List<String> result = new ArrayList<>();
+        for (String id : skeleton) {
+            if (survivors.contains(id)) {
+                result.add(id);
+            }
+        }
+        // Slides que só existem no outro lado (novos): entram após o predecessor mais próximo.
+        for (int k = 0; k < other.size(); k++) {
+            String id = other.get(k);
+            if (!survivors.contains(id) || result.contains(id)) {
+                continue;
+            }
+            int insertAt = 0;
+            for (int p = k - 1; p >= 0; p--) {
+                int pos = result.indexOf(other.get(p));
+                if (pos >= 0) {
+                    insertAt = pos + 1;
+                    break;
+                }
+            }
+            result.add(insertAt, id);
+        }
+        return result;
+    }
+
+    /**
+     * Verdadeiro se {@code side} mudou a ordem relativa dos slides que também estão na base.
+     */
+    private static boolean reordered(List<String> base, List<String> side) {
+        return !relativeOrder(base, side);
+    }
+
+    private static boolean relativeOrder(List<String> a, List<String> b) {
+        List<String> fa = new ArrayList<>();
+        for (String id : a) {
+            if (b.contains(id)) {
+                fa.add(id);
+            }
+        }
+        List<String> fb = new ArrayList<>();
+        for (String id : b) {
+            if (a.contains(id)) {
+                fb.add(id);
+            }
+        }
+        return fa.equals(fb);
+    }
+
+    private static Map<String, JsonNode> index(JsonNode doc) {
+        if (doc == null || !doc.isArray()) {
+            return null;
+        }
+        Map<String, JsonNode> slides = new LinkedHashMap<>();
+        for (JsonNode slide : doc) {
+            JsonNode id = slide == null ? null : slide.get("id");
+            if (id == null || id.isNull() || id.isContainerNode()) {
+                return null;
+            }
+            if (slides.put(id.asText(), slide) != null) {
+                return null;
+            }
+        }
+        return slides;
+    }
+}
@@ -0,0 +1,197 @@
+package org.obeci.platform.services.collab;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.obeci.platform.exceptions.InvalidDocumentException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Leitura em streaming do documento de slides enviado pelo REST (sem montar o {@code JsonNode} do documento).
+ *
+ * <p>Em uma passada pelo {@link JsonParser}, um slide por vez:
+ * <ul>
+ *   <li>valida a estrutura (array de objetos, sem chaves duplicadas) e os limites de tamanho,
+ *       profundidade e quantidade de slides;</li>
+ *   <li>troca imagens embutidas do slide ({@code slideRewriter}, alterando a árvore no lugar);</li>
+ *   <li>escreve o JSON compacto que vai para o cache/banco;</li>
+ *   <li>acumula o hash canônico ({@link ContentHash#canonicalArray}, mesmo resultado de
+ *       {@link ContentHash#canonical} sobre o documento inteiro).</li>
+ * </ul>
+ * Só a árvore do slide atual fica em memória: o pico fica na ordem do maior slide, não do documento.</p>
+ *
+ * <p>Os mesmos limites valem para documentos que já chegam como árvore (snapshot e patch pelo
+ * WebSocket): {@link #check(JsonNode)} e {@link #checkSize(String)}.</p>
+ */
+public final class SlidesIngest {
+
+    /**
+     * @param json documento compacto (ordem original das chaves)
+     * @param contentHash hash canônico do documento
+     * @param slides quantidade de slides
+     */
+    public record Result(String json, String contentHash, int slides) {
+    }
+
+    private final ObjectMapper mapper;
+    private final long maxBytes;
+    private final int maxDepth;
+    private final int maxSlides;
+    private final Consumer<JsonNode> slideRewriter;
+
+    /**
+     * @param slideRewriter troca as imagens embutidas de um slide no lugar (null = não troca)
+     */
+    public SlidesIngest(long maxBytes, int maxDepth, int maxSlides, Consumer<JsonNode> slideRewriter) {
+        this.mapper = new ObjectMapper(JsonFactory.builder()
+                .streamReadConstraints(StreamReadConstraints.builder()
+                        .maxNestingDepth(maxDepth)
+                        .maxStringLength((int) Math.min(maxBytes, Integer.MAX_VALUE))
+                        .build())
+                .enable(StreamReadFeature.STRICT_DUPLICATE_DETECTION)
+                .build());
+        this.maxBytes = maxBytes;
+        this.maxDepth = maxDepth;
+        this.maxSlides = maxSlides;
+        this.slideRewriter = slideRewriter;
+    }
+
+    /**
+     * @throws InvalidDocumentException JSON inválido, estrutura inesperada ou limite excedido
+     */
+    public Result read(InputStream body) throws IOException {
+        SegmentedStringWriter json = new SegmentedStringWriter(new BufferRecycler());
+        ContentHash.CanonicalArray canonical = ContentHash.canonicalArray();
+        try (JsonParser p = mapper.createParser(new LimitedInputStream(body, maxBytes));
+             JsonGenerator out = mapper.createGenerator(json)) {
+            if (p.nextToken() != JsonToken.START_ARRAY) {
+                throw new InvalidDocumentException("O documento deve ser um array de slides");
+            }
+            out.writeStartArray();
+            int slides = 0;
+            JsonToken token;
+            while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new InvalidDocumentException("Slide na posição " + slides + " não é um objeto");
+                }
+                if (++slides > maxSlides) {
+                    throw new InvalidDocumentException("Documento com mais de " + maxSlides + " slides");
+                }
+                JsonNode slide = mapper.readTree(p);
+                if (slideRewriter != null) {
+                    slideRewriter.accept(slide);
+                }
+                out.writeTree(slide);
+                canonical.add(slide);
+            }
+            out.writeEndArray();
+            if (p.nextToken() != null) {
+                throw new InvalidDocumentException("Conteúdo após o fim do documento");
+            }
+            out.flush();
+            return new Result(json.getAndClear(), canonical.hash(), slides);
+        } catch (JsonProcessingException e) {
+            throw new InvalidDocumentException("JSON inválido: " + e.getOriginalMessage());
+        }
+    }
+
+    /**
+     * Estrutura, quantidade de slides e profundidade de um documento já parseado.
+     *
+     * @throws InvalidDocumentException se o documento não passa nos limites
+     */
+    public void check(JsonNode slides) {
+        if (slides == null || !slides.isArray()) {
+            throw new InvalidDocumentException("O documento deve ser um array de slides");
+        }
+        if (slides.size() > maxSlides) {
+            throw new InvalidDocumentException("Documento com mais de " + maxSlides + " slides");
+        }
+        int position = 0;
+        for (JsonNode slide : slides) {
+            if (!slide.isObject()) {
+                throw new InvalidDocumentException("Slide na posição " + position + " não é um objeto");
+            }
+            position++;
+        }
+        if (depth(slides, 1) > maxDepth) {
+            throw new InvalidDocumentException("Documento com aninhamento maior que " + maxDepth);
+        }
+    }
+
+    /**
+     * Tamanho do documento já serializado (em caracteres, aproximação dos bytes do corpo).
+     *
+     * @throws InvalidDocumentException se passa do limite
+     */
+    public void checkSize(String json) {
+        if (json.length() > maxBytes) {
+            throw new InvalidDocumentException("Documento maior que o limite de " + maxBytes + " bytes");
+        }
+    }
+
+    private int depth(JsonNode node, int level) {
+        // Para na primeira vez que passa do limite: não percorre o resto de um documento já recusado.
+        int max = level;
+        for (JsonNode child : node) {
+            if (child.isContainerNode()) {
+                max = Math.max(max, depth(child, level + 1));
+                if (max > maxDepth) {
+                    return max;
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Limita os bytes lidos do corpo (o parser não conhece o tamanho total antes de terminar).
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private final long max;
+        private long count;
+
+        LimitedInputStream(InputStream in, long max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) {
+            count += n;
+            if (count > max) {
+                throw new InvalidDocumentException("Documento maior que o limite de " + max + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.obeci.platform.services.collab;
+
+/**
+ * Turma excluída (e, com ela, o seu Instrumento).
+ *
+ * <p>Publicado por {@code TurmaService}; {@code InstrumentoDocumentCache} descarta a cópia em memória
+ * do documento, que não tem mais linha onde ser gravada.</p>
+ */
+public record TurmaDeletedEvent(Long turmaId) {
+}
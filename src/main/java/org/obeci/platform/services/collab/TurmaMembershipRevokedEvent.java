@@ -0,0 +1,14 @@
+package org.obeci.platform.services.collab;
+
+import java.util.Set;
+
+/**
+ * Professores que deixaram de pertencer a uma turma (edição da turma ou exclusão dela).
+ *
+ * <p>Publicado por {@code TurmaService}; {@code InstrumentoAccessRevocationService} revoga as
+ * sessões STOMP desses professores no Instrumento da turma.</p>
+ *
+ * @param professorIds ids de {@code Usuario} removidos de {@code Turma.professorIds}
+ */
+public record TurmaMembershipRevokedEvent(Long turmaId, Set<Long> professorIds) {
+}
@@ -0,0 +1,37 @@
+package org.obeci.platform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.obeci.platform.services.collab.ContentHash;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Hash canônico do documento: independente da ordem das chaves e estável com valores null.
+ */
+class ContentHashTests {
+
+	private final JsonMapper mapper = JsonMapper.builder().build();
+
+	@Test
+	void hashesDocumentWithNulls() throws Exception {
+		JsonNode doc = mapper.readTree("[{\"id\":\"s1\",\"titulo\":null,\"blocos\":[null,{\"img\":null}]}]");
+
+		String hash = ContentHash.canonical(doc);
+
+		// A forma canônica escreve null literal, como o ObjectMapper.
+		assertEquals(ContentHash.sha256Hex("[{\"blocos\":[null,{\"img\":null}],\"id\":\"s1\",\"titulo\":null}]"), hash);
+	}
+
+	@Test
+	void ignoresKeyOrderButNotValues() throws Exception {
+		String a = ContentHash.canonical(mapper.readTree("{\"a\":1,\"b\":null,\"c\":[true,\"x\"]}"));
+		String b = ContentHash.canonical(mapper.readTree("{\"c\":[true,\"x\"],\"b\":null,\"a\":1}"));
+		String c = ContentHash.canonical(mapper.readTree("{\"a\":1,\"b\":0,\"c\":[true,\"x\"]}"));
+
+		assertEquals(a, b);
+		assertNotEquals(a, c);
+	}
+}
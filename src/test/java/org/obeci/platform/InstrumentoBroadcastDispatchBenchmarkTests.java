@@ -0,0 +1,247 @@
+package org.obeci.platform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.obeci.platform.configs.InstrumentoBroadcastProperties;
+import org.obeci.platform.configs.InstrumentoEchoFilter;
+import org.obeci.platform.configs.WebSocketBrokerProperties;
+import org.obeci.platform.dtos.collab.InstrumentoWsUpdateBroadcast;
+import org.obeci.platform.services.InstrumentoBroadcastCoalescer;
+import org.obeci.platform.services.InstrumentoBroadcastDispatcher;
+import org.obeci.platform.services.InstrumentoClusterBridge;
+import org.obeci.platform.services.collab.InstrumentoBroadcastEvent;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tempo com o documento travado por atualização, com editores simultâneos: entrega do broadcast
+ * dentro do lock (como era) x evento entregue depois por InstrumentoBroadcastDispatcher. Broker
+ * simples real com várias sessões por turma; janela de agrupamento zero para medir o fan-out inteiro.
+ */
+class InstrumentoBroadcastDispatchBenchmarkTests {
+
+	private static final int TURMAS = 2;
+	private static final int EDITORS_PER_TURMA = 4;
+	private static final int UPDATES_PER_EDITOR = 200;
+	private static final int SESSIONS_PER_TURMA = 30;
+
+	private static final Pattern VERSION = Pattern.compile("\"version\":(\\d+)");
+
+	@Test
+	void lockHoldInlineVersusDispatched() throws Exception {
+		ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+		JsonNode deck = sampleDeck(mapper, 30);
+
+		// Aquecimento de serialização/broker antes das medições.
+		run(false, mapper, deck);
+		long[] inline = run(false, mapper, deck);
+		long[] dispatched = run(true, mapper, deck);
+
+		// Só a mediana: com o fan-out fora do lock, a diferença é de ordens de grandeza.
+		assertTrue(dispatched[dispatched.length / 2] < inline[inline.length / 2]);
+	}
+
+	@Test
+	void fullLaneNeverDeliversOnPublisherThread() throws Exception {
+		ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+		JsonNode deck = sampleDeck(mapper, 1);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+		// Broker travado: a primeira entrega segura a lane até o latch abrir.
+		CountDownLatch release = new CountDownLatch(1);
+		Map<String, Boolean> deliveryThreads = new ConcurrentHashMap<>();
+		ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+		brokerChannel.subscribe(message -> {
+			deliveryThreads.put(Thread.currentThread().getName(), true);
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+		template.setMessageConverter(new MappingJackson2MessageConverter(mapper));
+		WebSocketBrokerProperties brokerProperties = new WebSocketBrokerProperties();
+		InstrumentoBroadcastProperties properties = new InstrumentoBroadcastProperties();
+		properties.setCoalesceWindow(Duration.ZERO);
+		properties.setDispatchLanes(1);
+		properties.setDispatchQueueCapacity(4);
+		InstrumentoClusterBridge bridge = new InstrumentoClusterBridge(null, null, null, null, null, brokerProperties, registry);
+		InstrumentoBroadcastCoalescer coalescer = new InstrumentoBroadcastCoalescer(
+				template, new InstrumentoEchoFilter(registry, brokerProperties), bridge, properties, registry);
+		InstrumentoBroadcastDispatcher dispatcher = new InstrumentoBroadcastDispatcher(coalescer, bridge, template, properties, registry);
+
+		assertTrue(dispatcher.hasCapacity(1L));
+		for (long version = 1; version <= 10; version++) {
+			dispatcher.on(new InstrumentoBroadcastEvent(1L,
+					new InstrumentoWsUpdateBroadcast(1L, 1L, deck, version, "prof", LocalDateTime.now(), "c", null, null),
+					deck, null, null, version, null, null, null));
+		}
+		// Lane cheia: novas atualizações seriam recusadas (OVERLOADED) e o excesso foi descartado, não entregue aqui.
+		assertFalse(dispatcher.hasCapacity(1L));
+		assertTrue(registry.get("instrumento.broadcast.dispatch.dropped").counter().count() > 0);
+		assertFalse(deliveryThreads.containsKey(Thread.currentThread().getName()));
+
+		release.countDown();
+		dispatcher.shutdown();
+		coalescer.shutdown();
+	}
+
+	/**
+	 * @return tempos (ns) com o lock, um por atualização
+	 */
+	private static long[] run(boolean dispatch, ObjectMapper mapper, JsonNode deck) throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ExecutorService outboundThread = Executors.newSingleThreadExecutor();
+		ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+		ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel(outboundThread);
+		ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+		SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel, List.of("/topic"));
+		broker.start();
+
+		int total = TURMAS * EDITORS_PER_TURMA * UPDATES_PER_EDITOR * SESSIONS_PER_TURMA;
+		CountDownLatch delivered = new CountDownLatch(total);
+		Map<String, Long> lastVersion = new ConcurrentHashMap<>();
+		AtomicInteger outOfOrder = new AtomicInteger();
+		outbound.subscribe(message -> {
+			SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(message);
+			if (headers.getMessageType() != SimpMessageType.MESSAGE) {
+				return;
+			}
+			Matcher m = VERSION.matcher(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8));
+			long version = m.find() ? Long.parseLong(m.group(1)) : -1;
+			Long previous = lastVersion.put(headers.getSessionId(), version);
+			if (previous != null && previous >= version) {
+				outOfOrder.incrementAndGet();
+			}
+			delivered.countDown();
+		});
+		for (int t = 0; t < TURMAS; t++) {
+			for (int s = 0; s < SESSIONS_PER_TURMA; s++) {
+				subscribe(broker, "t" + t + "-s" + s, "/topic/instrumentos/" + t);
+			}
+		}
+
+		SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+		template.setMessageConverter(new MappingJackson2MessageConverter(mapper));
+		WebSocketBrokerProperties brokerProperties = new WebSocketBrokerProperties();
+		InstrumentoBroadcastProperties properties = new InstrumentoBroadcastProperties();
+		properties.setCoalesceWindow(Duration.ZERO);
+		// Fila que comporta a rajada inteira: nenhuma entrega cai no caminho de lane cheia.
+		properties.setDispatchQueueCapacity(10_000);
+		// Repasse entre instâncias desligado (modo SIMPLE): as dependências dele não são usadas.
+		InstrumentoClusterBridge bridge = new InstrumentoClusterBridge(null, null, null, null, null, brokerProperties, registry);
+		InstrumentoBroadcastCoalescer coalescer = new InstrumentoBroadcastCoalescer(
+				template, new InstrumentoEchoFilter(registry, brokerProperties), bridge, properties, registry);
+		InstrumentoBroadcastDispatcher dispatcher = new InstrumentoBroadcastDispatcher(coalescer, bridge, template, properties, registry);
+
+		Object[] locks = new Object[TURMAS];
+		long[] versions = new long[TURMAS];
+		Arrays.setAll(locks, i -> new Object());
+		long[] held = new long[TURMAS * EDITORS_PER_TURMA * UPDATES_PER_EDITOR];
+		AtomicInteger next = new AtomicInteger();
+
+		ExecutorService editors = Executors.newFixedThreadPool(TURMAS * EDITORS_PER_TURMA);
+		for (int e = 0; e < TURMAS * EDITORS_PER_TURMA; e++) {
+			long turmaId = e % TURMAS;
+			editors.execute(() -> {
+				for (int i = 0; i < UPDATES_PER_EDITOR; i++) {
+					// Mesmo trecho que InstrumentoDocumentCache#withDocument protege.
+					synchronized (locks[(int) turmaId]) {
+						long t0 = System.nanoTime();
+						long version = ++versions[(int) turmaId];
+						InstrumentoBroadcastEvent event = new InstrumentoBroadcastEvent(turmaId,
+								new InstrumentoWsUpdateBroadcast(1L, turmaId, deck, version, "prof", LocalDateTime.now(), "c", null, null),
+								deck, null, null, version, null, null, null);
+						if (dispatch) {
+							dispatcher.on(event);
+						} else {
+							dispatcher.deliver(event);
+						}
+						held[next.getAndIncrement()] = System.nanoTime() - t0;
+					}
+				}
+			});
+		}
+		editors.shutdown();
+		assertTrue(editors.awaitTermination(120, TimeUnit.SECONDS));
+		assertTrue(delivered.await(120, TimeUnit.SECONDS), "entregas pendentes: " + delivered.getCount());
+
+		dispatcher.shutdown();
+		coalescer.shutdown();
+		broker.stop();
+		outboundThread.shutdown();
+
+		Arrays.sort(held);
+		// Cada sessão recebe as versões da sua turma em ordem crescente.
+		assertEquals(0, outOfOrder.get());
+		return held;
+	}
+
+	private static void subscribe(SimpleBrokerMessageHandler broker, String sessionId, String destination) {
+		SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+		connect.setSessionId(sessionId);
+		broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+
+		SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		subscribe.setSessionId(sessionId);
+		subscribe.setSubscriptionId("sub-" + sessionId);
+		subscribe.setDestination(destination);
+		Message<byte[]> message = MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders());
+		broker.handleMessage(message);
+	}
+
+	private static JsonNode sampleDeck(ObjectMapper mapper, int slides) {
+		ArrayNode deck = mapper.createArrayNode();
+		for (int s = 1; s <= slides; s++) {
+			ObjectNode slide = deck.addObject();
+			slide.put("id", s);
+			slide.put("content", "");
+			ArrayNode textBoxes = slide.putArray("textBoxes");
+			for (int t = 0; t < 4; t++) {
+				ObjectNode box = textBoxes.addObject();
+				box.put("id", "tb-" + s + "-" + t);
+				box.put("content", "Atividade " + t + " do slide " + s + ": leitura e interpretação de texto");
+				box.put("x", 40 + t * 10);
+				box.put("y", 60 + t * 35);
+				box.put("width", 320);
+				box.put("height", 48);
+			}
+			ArrayNode images = slide.putArray("images");
+			ObjectNode image = images.addObject();
+			image.put("id", "img-" + s);
+			image.put("src", "/api/instrumentos/images/" + (1000 + s));
+		}
+		return deck;
+	}
+}
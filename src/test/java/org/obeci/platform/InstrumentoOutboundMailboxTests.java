@@ -0,0 +1,255 @@
+package org.obeci.platform;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.obeci.platform.configs.InstrumentoOutboundMailbox;
+import org.obeci.platform.configs.WebSocketOutboundProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Fila de saída por sessão: sessão lenta recebe só o estado mais recente do tópico do documento,
+ * os demais frames chegam completos e em ordem, e os limites encerram a sessão.
+ */
+class InstrumentoOutboundMailboxTests {
+
+	@Test
+	void slowSessionGetsOnlyLatestDocumentState() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		SlowSession slow = new SlowSession();
+		WebSocketSession session = connect(new WebSocketOutboundProperties(), registry, slow);
+
+		session.sendMessage(message("/topic/instrumentos/7", "v1"));
+		assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+		// v1 está preso no envio; v2..v50 se substituem, e a presença sai inteira.
+		for (int v = 2; v <= 50; v++) {
+			session.sendMessage(message("/topic/instrumentos/7", "v" + v));
+			if (v % 10 == 0) {
+				session.sendMessage(message("/topic/instrumentos/7/presence", "p" + v));
+			}
+		}
+		slow.release.countDown();
+
+		slow.awaitBodies(7);
+		assertEquals(List.of("v1", "v50", "p10", "p20", "p30", "p40", "p50"), slow.bodies);
+		assertEquals(48.0, registry.get("instrumento.outbound.skipped").counter().count());
+	}
+
+	@Test
+	void bufferLimitClosesSession() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		WebSocketOutboundProperties properties = new WebSocketOutboundProperties();
+		properties.setSendBufferSizeLimit(DataSize.ofBytes(2_000));
+		SlowSession slow = new SlowSession();
+		WebSocketSession session = connect(properties, registry, slow);
+
+		session.sendMessage(message("/topic/instrumentos/7", "v1"));
+		assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+		// Frames que não se substituem (cada um em outro tópico) acumulam até estourar o limite.
+		SessionLimitExceededException ex = assertThrows(SessionLimitExceededException.class, () -> {
+			for (int i = 0; i < 100; i++) {
+				session.sendMessage(message("/topic/instrumentos/7/changes", "x".repeat(100)));
+			}
+		});
+		assertEquals(CloseStatus.SESSION_NOT_RELIABLE, ex.getStatus());
+		assertEquals(1.0, registry.get("instrumento.outbound.closed").tag("reason", "buffer").counter().count());
+		slow.release.countDown();
+	}
+
+	@Test
+	void sendTimeLimitClosesSession() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		WebSocketOutboundProperties properties = new WebSocketOutboundProperties();
+		properties.setSendTimeLimit(Duration.ofMillis(50));
+		SlowSession slow = new SlowSession();
+		WebSocketSession session = connect(properties, registry, slow);
+
+		session.sendMessage(message("/topic/instrumentos/7", "v1"));
+		assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+		assertThrows(SessionLimitExceededException.class,
+				() -> session.sendMessage(message("/topic/instrumentos/7", "v2")));
+		assertEquals(1.0, registry.get("instrumento.outbound.closed").tag("reason", "send-time").counter().count());
+		slow.release.countDown();
+	}
+
+	@Test
+	void stalledSendClosesSessionWithoutNewFrames() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		WebSocketOutboundProperties properties = new WebSocketOutboundProperties();
+		properties.setSendTimeLimit(Duration.ofMillis(50));
+		InstrumentoOutboundMailbox outbound = new InstrumentoOutboundMailbox(properties, registry);
+		SlowSession slow = new SlowSession();
+		WebSocketSession session = connect(outbound, slow);
+
+		session.sendMessage(message("/topic/instrumentos/7", "v1"));
+		assertTrue(slow.sending.await(5, TimeUnit.SECONDS));
+		// Nenhum frame novo: só a verificação periódica percebe o envio travado.
+		outbound.closeStalledSessions();
+		assertNull(slow.closedWith);
+		Thread.sleep(100);
+		outbound.closeStalledSessions();
+
+		assertEquals(CloseStatus.SESSION_NOT_RELIABLE, slow.closedWith);
+		assertEquals(1.0, registry.get("instrumento.outbound.closed").tag("reason", "send-time").counter().count());
+		slow.release.countDown();
+		outbound.shutdown();
+	}
+
+	private static WebSocketSession connect(WebSocketOutboundProperties properties, SimpleMeterRegistry registry,
+			WebSocketSession session) throws Exception {
+		return connect(new InstrumentoOutboundMailbox(properties, registry), session);
+	}
+
+	/**
+	 * Conecta a sessão pelo handler decorado e devolve a sessão que o Spring veria (o mailbox).
+	 */
+	private static WebSocketSession connect(InstrumentoOutboundMailbox outbound, WebSocketSession session) throws Exception {
+		AtomicReference<WebSocketSession> seen = new AtomicReference<>();
+		WebSocketHandler handler = outbound.decorate(new AbstractWebSocketHandler() {
+			@Override
+			public void afterConnectionEstablished(WebSocketSession s) {
+				seen.set(s);
+			}
+		});
+		handler.afterConnectionEstablished(session);
+		return seen.get();
+	}
+
+	private static TextMessage message(String destination, String body) {
+		return new TextMessage("MESSAGE\ndestination:" + destination + "\ncontent-type:text/plain\nsubscription:sub-0\n"
+				+ "message-id:" + body + "\ncontent-length:" + body.length() + "\n\n" + body + "\u0000");
+	}
+
+	/**
+	 * Sessão cujo primeiro envio fica preso até {@code release}.
+	 */
+	private static final class SlowSession implements WebSocketSession {
+
+		final CountDownLatch sending = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<String> bodies = new CopyOnWriteArrayList<>();
+		volatile CloseStatus closedWith;
+
+		@Override
+		public void sendMessage(WebSocketMessage<?> message) throws java.io.IOException {
+			sending.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			String payload = ((TextMessage) message).getPayload();
+			bodies.add(payload.substring(payload.indexOf("\n\n") + 2, payload.length() - 1));
+		}
+
+		void awaitBodies(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5_000;
+			while (bodies.size() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			Thread.sleep(50);
+		}
+
+		@Override
+		public String getId() {
+			return "s1";
+		}
+
+		@Override
+		public URI getUri() {
+			return null;
+		}
+
+		@Override
+		public HttpHeaders getHandshakeHeaders() {
+			return new HttpHeaders();
+		}
+
+		@Override
+		public Map<String, Object> getAttributes() {
+			return Map.of();
+		}
+
+		@Override
+		public Principal getPrincipal() {
+			return null;
+		}
+
+		@Override
+		public InetSocketAddress getLocalAddress() {
+			return null;
+		}
+
+		@Override
+		public InetSocketAddress getRemoteAddress() {
+			return null;
+		}
+
+		@Override
+		public String getAcceptedProtocol() {
+			return null;
+		}
+
+		@Override
+		public void setTextMessageSizeLimit(int messageSizeLimit) {
+		}
+
+		@Override
+		public int getTextMessageSizeLimit() {
+			return 0;
+		}
+
+		@Override
+		public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+		}
+
+		@Override
+		public int getBinaryMessageSizeLimit() {
+			return 0;
+		}
+
+		@Override
+		public List<WebSocketExtension> getExtensions() {
+			return List.of();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public void close(CloseStatus status) {
+			closedWith = status;
+		}
+	}
+}
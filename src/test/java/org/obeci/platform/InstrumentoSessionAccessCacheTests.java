@@ -0,0 +1,176 @@
+package org.obeci.platform;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.obeci.platform.configs.InstrumentoAccessProperties;
+import org.obeci.platform.entities.Usuario;
+import org.obeci.platform.services.InstrumentoAccessRevocationService;
+import org.obeci.platform.services.InstrumentoAccessService;
+import org.obeci.platform.services.InstrumentoSessionAccessCache;
+import org.obeci.platform.services.UsuarioService;
+import org.obeci.platform.services.collab.TurmaMembershipRevokedEvent;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Cache de permissões por sessão STOMP: uma consulta por sessão e turma, e revogação (cache,
+ * assinaturas no broker e aviso à sessão) quando o professor sai da turma.
+ */
+class InstrumentoSessionAccessCacheTests {
+
+	private static final Long TURMA = 7L;
+
+	@Test
+	void checksDatabaseOncePerSessionAndTurma() {
+		CountingAccessService accessService = new CountingAccessService();
+		InstrumentoSessionAccessCache cache = new InstrumentoSessionAccessCache(
+				accessService, new InstrumentoAccessProperties(), new SimpleMeterRegistry());
+		Authentication prof = professor("prof@obeci.org");
+
+		for (int i = 0; i < 50; i++) {
+			cache.assertCanAccess("s1", TURMA, prof);
+		}
+		cache.assertCanAccess("s2", TURMA, prof);
+		cache.assertCanAccess("s1", 8L, prof);
+
+		assertEquals(3, accessService.calls.get());
+	}
+
+	@Test
+	void removedProfessorLosesAccessAndSubscriptions() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		CountingAccessService accessService = new CountingAccessService();
+		InstrumentoSessionAccessCache cache = new InstrumentoSessionAccessCache(
+				accessService, new InstrumentoAccessProperties(), registry);
+
+		ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+		ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+		ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+		SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel, List.of("/topic", "/queue"));
+		broker.start();
+		List<Message<?>> toBroker = new CopyOnWriteArrayList<>();
+		brokerChannel.subscribe(toBroker::add);
+		Map<String, Integer> delivered = new ConcurrentHashMap<>();
+		outbound.subscribe(m -> {
+			if (SimpMessageHeaderAccessor.getMessageType(m.getHeaders()) == SimpMessageType.MESSAGE) {
+				delivered.merge(SimpMessageHeaderAccessor.getSessionId(m.getHeaders()), 1, Integer::sum);
+			}
+		});
+
+		SimpMessagingTemplate template = new SimpMessagingTemplate(brokerChannel);
+		template.setMessageConverter(new MappingJackson2MessageConverter(JsonMapper.builder().findAndAddModules().build()));
+		InstrumentoAccessRevocationService revocation = new InstrumentoAccessRevocationService(
+				cache, new FixedUsuarioService(), template, event -> { }, registry);
+
+		Authentication removed = professor("removido@obeci.org");
+		Authentication kept = professor("mantido@obeci.org");
+		Authentication admin = new UsernamePasswordAuthenticationToken("removido@obeci.org", null,
+				List.of(new SimpleGrantedAuthority("ROLE_ADMIN")));
+		subscribe(broker, cache, "s-removed", removed);
+		subscribe(broker, cache, "s-kept", kept);
+		subscribe(broker, cache, "s-admin", admin);
+
+		revocation.on(new TurmaMembershipRevokedEvent(TURMA, Set.of(1L)));
+
+		// Só a sessão do professor removido deixa de receber o tópico da turma.
+		template.convertAndSend("/topic/instrumentos/" + TURMA, "{}");
+		assertNull(delivered.get("s-removed"));
+		assertEquals(1, delivered.get("s-kept"));
+		assertEquals(1, delivered.get("s-admin"));
+
+		// Aviso ACCESS_REVOKED só para essa sessão.
+		List<Message<?>> revoked = toBroker.stream()
+				.filter(m -> "/user/removido@obeci.org/queue/instrumentos/errors".equals(SimpMessageHeaderAccessor.getDestination(m.getHeaders())))
+				.toList();
+		assertEquals(1, revoked.size());
+		assertEquals("s-removed", SimpMessageHeaderAccessor.getSessionId(revoked.get(0).getHeaders()));
+		assertTrue(new String((byte[]) revoked.get(0).getPayload(), StandardCharsets.UTF_8).contains("\"code\":\"ACCESS_REVOKED\""));
+		assertEquals(1.0, registry.get("instrumento.access.revoked").counter().count());
+
+		// A próxima mensagem da sessão revogada consulta o banco de novo (e é recusada); as outras seguem no cache.
+		int before = accessService.calls.get();
+		accessService.denied.add("removido@obeci.org");
+		assertThrows(ResponseStatusException.class, () -> cache.assertCanAccess("s-removed", TURMA, removed));
+		cache.assertCanAccess("s-kept", TURMA, kept);
+		assertEquals(before + 1, accessService.calls.get());
+		broker.stop();
+	}
+
+	private static void subscribe(SimpleBrokerMessageHandler broker, InstrumentoSessionAccessCache cache,
+			String sessionId, Authentication user) {
+		String destination = "/topic/instrumentos/" + TURMA;
+		// Mesmo caminho de StompAuthChannelInterceptor no SUBSCRIBE.
+		cache.assertCanAccess(sessionId, TURMA, user);
+		cache.subscribed(sessionId, "sub-0", destination, TURMA);
+
+		SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+		connect.setSessionId(sessionId);
+		broker.handleMessage(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()));
+		SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+		subscribe.setSessionId(sessionId);
+		subscribe.setSubscriptionId("sub-0");
+		subscribe.setDestination(destination);
+		broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+	}
+
+	private static Authentication professor(String email) {
+		return new UsernamePasswordAuthenticationToken(email, null, List.of(new SimpleGrantedAuthority("ROLE_PROFESSOR")));
+	}
+
+	/**
+	 * Conta as consultas ao banco (a regra em si é a de InstrumentoAccessService).
+	 */
+	private static final class CountingAccessService extends InstrumentoAccessService {
+		final AtomicInteger calls = new AtomicInteger();
+		final Set<String> denied = ConcurrentHashMap.newKeySet();
+
+		CountingAccessService() {
+			super(null, null);
+		}
+
+		@Override
+		public void assertCanAccessTurmaInstrumento(Long turmaId, Authentication authentication) {
+			calls.incrementAndGet();
+			if (denied.contains(authentication.getName())) {
+				throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Sem permissão para acessar este instrumento");
+			}
+		}
+	}
+
+	private static final class FixedUsuarioService extends UsuarioService {
+		FixedUsuarioService() {
+			super(null);
+		}
+
+		@Override
+		public Optional<Usuario> findById(Long id) {
+			return id == 1L ? Optional.of(new Usuario("removido", "removido@obeci.org", "x")) : Optional.empty();
+		}
+	}
+}
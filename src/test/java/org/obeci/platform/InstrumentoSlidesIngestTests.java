@@ -0,0 +1,114 @@
+package org.obeci.platform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.obeci.platform.exceptions.InvalidDocumentException;
+import org.obeci.platform.services.collab.ContentHash;
+import org.obeci.platform.services.collab.SlidesIngest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Leitura em streaming (SlidesIngest) x caminho antigo do REST (readTree + writeValueAsString +
+ * ContentHash.canonical), sobre um deck de alguns MB, e os limites do documento.
+ */
+class InstrumentoSlidesIngestTests {
+
+	@Test
+	void matchesTreePath() throws Exception {
+		ObjectMapper mapper = JsonMapper.builder().build();
+		byte[] body = mapper.writeValueAsBytes(sampleDeck(mapper, 400));
+		SlidesIngest ingest = new SlidesIngest(64L * 1024 * 1024, 64, 1000, null);
+
+		// Mesmo JSON gravado e mesmo hash canônico do caminho com árvore.
+		JsonNode tree = mapper.readTree(body);
+		SlidesIngest.Result result = ingest.read(new ByteArrayInputStream(body));
+		assertEquals(mapper.writeValueAsString(tree), result.json());
+		assertEquals(ContentHash.canonical(tree), result.contentHash());
+		assertEquals(400, result.slides());
+	}
+
+	@Test
+	void rewritesImagesPerSlide() throws Exception {
+		ObjectMapper mapper = JsonMapper.builder().build();
+		SlidesIngest ingest = new SlidesIngest(1024, 8, 10,
+				slide -> slide.withArray("images").forEach(i -> ((ObjectNode) i).put("src", "/api/instrumentos/images/1")));
+
+		SlidesIngest.Result result = ingest.read(new ByteArrayInputStream(
+				"[{\"images\":[{\"src\":\"data:image/png;base64,AA==\"}],\"id\":1}]".getBytes(StandardCharsets.UTF_8)));
+
+		JsonNode expected = mapper.readTree("[{\"images\":[{\"src\":\"/api/instrumentos/images/1\"}],\"id\":1}]");
+		assertEquals(mapper.writeValueAsString(expected), result.json());
+		assertEquals(ContentHash.canonical(expected), result.contentHash());
+	}
+
+	@Test
+	void rejectsInvalidDocuments() {
+		SlidesIngest ingest = new SlidesIngest(1024, 4, 2, null);
+		assertThrows(InvalidDocumentException.class, () -> read(ingest, "{\"id\":1}"));
+		assertThrows(InvalidDocumentException.class, () -> read(ingest, "[1]"));
+		assertThrows(InvalidDocumentException.class, () -> read(ingest, "[{},{},{}]"));
+		assertThrows(InvalidDocumentException.class, () -> read(ingest, "[{\"a\":[[[[1]]]]}]"));
+		assertThrows(InvalidDocumentException.class, () -> read(ingest, "[{\"a\":1,\"a\":2}]"));
+		assertThrows(InvalidDocumentException.class, () -> read(ingest, "[{\"a\":\"" + "x".repeat(2000) + "\"}]"));
+		assertThrows(InvalidDocumentException.class, () -> read(ingest, "[{}] []"));
+	}
+
+	@Test
+	void checksParsedDocuments() throws Exception {
+		ObjectMapper mapper = JsonMapper.builder().build();
+		SlidesIngest ingest = new SlidesIngest(16, 4, 2, null);
+		ingest.check(mapper.readTree("[{\"a\":[[1]]},{}]"));
+		assertThrows(InvalidDocumentException.class, () -> ingest.check(mapper.readTree("{}")));
+		assertThrows(InvalidDocumentException.class, () -> ingest.check(mapper.readTree("[1]")));
+		assertThrows(InvalidDocumentException.class, () -> ingest.check(mapper.readTree("[{},{},{}]")));
+		assertThrows(InvalidDocumentException.class, () -> ingest.check(mapper.readTree("[{\"a\":[[[1]]]}]")));
+		assertThrows(InvalidDocumentException.class, () -> ingest.checkSize("[{\"a\":\"0123456789\"}]"));
+	}
+
+	private static void read(SlidesIngest ingest, String json) throws Exception {
+		ingest.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static JsonNode sampleDeck(ObjectMapper mapper, int slides) {
+		ArrayNode deck = mapper.createArrayNode();
+		for (int s = 1; s <= slides; s++) {
+			ObjectNode slide = deck.addObject();
+			slide.put("id", s);
+			slide.put("content", "");
+			ArrayNode textBoxes = slide.putArray("textBoxes");
+			for (int t = 0; t < 12; t++) {
+				ObjectNode box = textBoxes.addObject();
+				box.put("id", "tb-" + s + "-" + t);
+				box.put("content", ("Atividade " + t + " do slide " + s + ": leitura e interpretação de \"texto\" 📚\n").repeat(6));
+				box.put("x", 40 + t * 10);
+				box.put("y", 60.5 + t * 35);
+				box.put("width", 320);
+				box.put("height", 48);
+				ObjectNode style = box.putObject("style");
+				style.put("fontSize", 16);
+				style.put("fontFamily", "Arial");
+				style.put("color", "#333333");
+				style.put("bold", t == 0);
+				style.putNull("textAlign");
+			}
+			ArrayNode images = slide.putArray("images");
+			ObjectNode image = images.addObject();
+			image.put("id", "img-" + s);
+			image.put("src", "/api/instrumentos/images/" + (1000 + s));
+			image.put("width", 240L * Integer.MAX_VALUE);
+			ArrayNode tags = slide.putArray("tags");
+			tags.add("leitura");
+			tags.add("turma-" + (s % 3));
+		}
+		return deck;
+	}
+}
@@ -0,0 +1,78 @@
+package org.obeci.platform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Comparação de tamanho de frame entre JSON, CBOR e Smile (InstrumentoWireFormat), sobre um
+ * documento com a forma dos slides do editor: os formatos binários precisam preservar o
+ * documento e sair menores que o JSON.
+ */
+class InstrumentoWireFormatBenchmarkTests {
+
+	@Test
+	void compareFormats() throws Exception {
+		// Como em InstrumentoWireFormat: cópias do ObjectMapper simples que o Spring Boot cria
+		// (JsonMapper não aceita copyWith com outra fábrica).
+		ObjectMapper json = new ObjectMapper();
+		ObjectMapper cbor = json.copyWith(new CBORFactory());
+		ObjectMapper smile = json.copyWith(new SmileFactory());
+		JsonNode doc = sampleDeck(json, 30);
+
+		byte[] jsonBytes = json.writeValueAsBytes(doc);
+		byte[] cborBytes = cbor.writeValueAsBytes(doc);
+		byte[] smileBytes = smile.writeValueAsBytes(doc);
+
+		assertEquals(doc, cbor.readTree(cborBytes));
+		assertEquals(doc, smile.readTree(smileBytes));
+		// Ganho mínimo esperado sobre o JSON para este formato de documento.
+		assertTrue(cborBytes.length < jsonBytes.length * 0.9, "cbor=" + cborBytes.length + " json=" + jsonBytes.length);
+		assertTrue(smileBytes.length < jsonBytes.length * 0.9, "smile=" + smileBytes.length + " json=" + jsonBytes.length);
+	}
+
+	private static JsonNode sampleDeck(ObjectMapper mapper, int slides) {
+		ArrayNode deck = mapper.createArrayNode();
+		for (int s = 1; s <= slides; s++) {
+			ObjectNode slide = deck.addObject();
+			slide.put("id", s);
+			slide.put("content", "");
+			ArrayNode textBoxes = slide.putArray("textBoxes");
+			for (int t = 0; t < 4; t++) {
+				ObjectNode box = textBoxes.addObject();
+				box.put("id", "tb-" + s + "-" + t);
+				box.put("content", "Atividade " + t + " do slide " + s + ": leitura e interpretação de texto");
+				box.put("x", 40 + t * 10);
+				box.put("y", 60 + t * 35);
+				box.put("width", 320);
+				box.put("height", 48);
+				ObjectNode style = box.putObject("style");
+				style.put("fontSize", 16);
+				style.put("fontFamily", "Arial");
+				style.put("color", "#333333");
+				style.put("bold", t == 0);
+				style.put("italic", false);
+				style.put("textAlign", "left");
+			}
+			ArrayNode images = slide.putArray("images");
+			ObjectNode image = images.addObject();
+			image.put("id", "img-" + s);
+			image.put("src", "/api/instrumentos/images/" + (1000 + s));
+			image.put("x", 420);
+			image.put("y", 80);
+			image.put("width", 240);
+			image.put("height", 180);
+			ArrayNode tags = slide.putArray("tags");
+			tags.add("leitura");
+			tags.add("turma-" + (s % 3));
+		}
+		return deck;
+	}
+}
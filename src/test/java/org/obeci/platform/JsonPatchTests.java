@@ -0,0 +1,91 @@
+package org.obeci.platform;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.obeci.platform.exceptions.InvalidPatchException;
+import org.obeci.platform.services.collab.JsonPatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * JSON Patch (RFC 6902) sobre o documento de slides: operações, índices (RFC 6901) e a raiz.
+ */
+class JsonPatchTests {
+
+	private final JsonMapper mapper = JsonMapper.builder().build();
+
+	private JsonNode json(String s) throws Exception {
+		return mapper.readTree(s.replace('\'', '"'));
+	}
+
+	private JsonNode apply(String document, String ops) throws Exception {
+		return JsonPatch.apply(json(document), json(ops));
+	}
+
+	@Test
+	void appliesAllOperations() throws Exception {
+		String doc = "[{'id':'a','images':[]},{'id':'b'}]";
+
+		assertEquals(json("[{'id':'a','images':[{'src':'x'}]},{'id':'b'}]"),
+				apply(doc, "[{'op':'add','path':'/0/images/-','value':{'src':'x'}}]"));
+		assertEquals(json("[{'id':'b'}]"),
+				apply(doc, "[{'op':'remove','path':'/0'}]"));
+		assertEquals(json("[{'id':'a','images':[]},{'id':'c'}]"),
+				apply(doc, "[{'op':'replace','path':'/1/id','value':'c'}]"));
+		assertEquals(json("[{'id':'b'},{'id':'a','images':[]}]"),
+				apply(doc, "[{'op':'move','from':'/0','path':'/1'}]"));
+		assertEquals(json("[{'id':'a','images':[]},{'id':'b','images':[]}]"),
+				apply(doc, "[{'op':'copy','from':'/0/images','path':'/1/images'}]"));
+		assertEquals(json(doc),
+				apply(doc, "[{'op':'test','path':'/1/id','value':'b'}]"));
+	}
+
+	@Test
+	void isAllOrNothing() throws Exception {
+		JsonNode doc = json("[{'id':'a'}]");
+
+		assertThrows(InvalidPatchException.class, () -> JsonPatch.apply(doc,
+				json("[{'op':'replace','path':'/0/id','value':'z'},{'op':'test','path':'/0/id','value':'a'}]")));
+		assertEquals(json("[{'id':'a'}]"), doc);
+	}
+
+	@Test
+	void rejectsNonCanonicalIndices() throws Exception {
+		String doc = "[{'id':'a'},{'id':'b'}]";
+
+		for (String index : new String[] {"+1", "-0", "-1", "01", " 1", "1e0", "", "-", "2"}) {
+			assertThrows(InvalidPatchException.class,
+					() -> apply(doc, "[{'op':'remove','path':'/" + index + "'}]"), index);
+		}
+		// "-" só vale como destino de add; o índice igual ao tamanho também.
+		assertEquals(json("[{'id':'a'},{'id':'b'},{'id':'c'}]"),
+				apply(doc, "[{'op':'add','path':'/-','value':{'id':'c'}}]"));
+		assertEquals(json("[{'id':'a'},{'id':'b'},{'id':'c'}]"),
+				apply(doc, "[{'op':'add','path':'/2','value':{'id':'c'}}]"));
+		assertThrows(InvalidPatchException.class,
+				() -> apply(doc, "[{'op':'add','path':'/3','value':{'id':'c'}}]"));
+	}
+
+	@Test
+	void handlesRootOperations() throws Exception {
+		String doc = "[{'id':'a'}]";
+
+		assertEquals(json("[]"), apply(doc, "[{'op':'replace','path':'','value':[]}]"));
+		assertEquals(json("{}"), apply(doc, "[{'op':'add','path':'','value':{}}]"));
+		assertThrows(InvalidPatchException.class, () -> apply(doc, "[{'op':'remove','path':''}]"));
+		assertThrows(InvalidPatchException.class, () -> apply(doc, "[{'op':'move','from':'','path':'/0/x'}]"));
+	}
+
+	@Test
+	void rejectsMalformedOperations() throws Exception {
+		String doc = "[{'id':'a'}]";
+
+		assertThrows(InvalidPatchException.class, () -> apply(doc, "{'op':'add'}"));
+		assertThrows(InvalidPatchException.class, () -> apply(doc, "[{'op':'nope','path':'/0'}]"));
+		assertThrows(InvalidPatchException.class, () -> apply(doc, "[{'op':'add','path':'/0/x'}]"));
+		assertThrows(InvalidPatchException.class, () -> apply(doc, "[{'op':'remove','path':'0'}]"));
+		assertThrows(InvalidPatchException.class, () -> apply(doc, "[{'op':'test','path':'/0/id','value':'b'}]"));
+	}
+}
@@ -0,0 +1,357 @@
+package org.obeci.platform;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.obeci.platform.configs.InstrumentoEchoFilter;
+import org.obeci.platform.configs.WebSocketBrokerProperties;
+import org.obeci.platform.configs.WebSocketConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.config.AbstractMessageBrokerConfiguration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Modo RELAY (app.websocket.broker.mode) contra um Artemis embutido, com várias "instâncias" da API
+ * no mesmo processo (um contexto Spring de mensageria por instância, com a configuração de broker de
+ * {@link WebSocketConfig}). As sessões de cliente são simuladas direto nos canais STOMP; o broker
+ * escuta só em 127.0.0.1.
+ */
+class WebSocketBrokerRelayTests {
+
+	private static final String TOPIC = "/topic/instrumentos/7";
+
+	@TempDir
+	static Path brokerDir;
+
+	private static EmbeddedActiveMQ broker;
+	private static int brokerPort;
+
+	private final List<Node> nodes = new ArrayList<>();
+
+	@BeforeAll
+	static void startBroker() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			brokerPort = socket.getLocalPort();
+		}
+		Configuration config = new ConfigurationImpl()
+				.setPersistenceEnabled(false)
+				.setSecurityEnabled(false)
+				.setJMXManagementEnabled(false);
+		// setBrokerInstance retorna void: fora do encadeamento.
+		config.setBrokerInstance(brokerDir.toFile());
+		config
+				// Mesmos prefixos que o Spring usa: /topic = multicast, /queue = anycast.
+				.addAcceptorConfiguration("stomp", "tcp://127.0.0.1:" + brokerPort
+						+ "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+		broker = new EmbeddedActiveMQ().setConfiguration(config).start();
+	}
+
+	@AfterAll
+	static void stopBroker() throws Exception {
+		if (broker != null) {
+			broker.stop();
+		}
+	}
+
+	@AfterEach
+	void stopNodes() {
+		nodes.forEach(Node::close);
+		nodes.clear();
+	}
+
+	@Test
+	void userDestinationResolvedOnAnotherNode() throws Exception {
+		Node a = startNode();
+		Node b = startNode();
+		Session prof = b.connect("prof");
+		Session outro = b.connect("outro");
+		prof.subscribe("/user/queue/instrumentos/errors");
+		outro.subscribe("/user/queue/instrumentos/errors");
+
+		// "prof" não tem sessão em A: a mensagem chega a B pelo broker.
+		a.template().convertAndSendToUser("prof", "/queue/instrumentos/errors", Map.of("code", "FORBIDDEN"));
+
+		Message<?> received = prof.poll();
+		assertNotNull(received);
+		assertTrue(new String((byte[]) received.getPayload(), StandardCharsets.UTF_8).contains("FORBIDDEN"));
+		assertNull(outro.poll(500));
+	}
+
+	@Test
+	void echoSuppressedForAuthorOnAnotherNode() throws Exception {
+		Node a = startNode();
+		Node b = startNode();
+		Session author = b.connect("prof");
+		Session other = b.connect("outro");
+		author.subscribe(TOPIC);
+		other.subscribe(TOPIC);
+
+		a.template().convertAndSend(TOPIC, Map.of("version", 2), a.echoFilter().excluding(author.id()));
+
+		Message<?> received = other.poll();
+		assertNotNull(received);
+		// A marca da sessão do autor não chega aos clientes.
+		assertNull(StompHeaderAccessor.wrap(received).getFirstNativeHeader(InstrumentoEchoFilter.EXCLUDE_SESSION_HEADER));
+		assertNull(author.poll(500));
+	}
+
+	/**
+	 * Fan-out de um tópico por número de instâncias: uma instância publica, e todas entregam cada
+	 * mensagem a todas as suas sessões.
+	 */
+	@Test
+	void fanOutReachesEverySessionPerNodeCount() throws Exception {
+		int sessionsPerNode = 10;
+		int messages = 200;
+		byte[] payload = ("{\"slides\":\"" + "x".repeat(1_000) + "\"}").getBytes(StandardCharsets.UTF_8);
+
+		for (int nodeCount : new int[] {1, 2, 4}) {
+			List<Session> sessions = new ArrayList<>();
+			for (int n = 0; n < nodeCount; n++) {
+				Node node = startNode();
+				for (int s = 0; s < sessionsPerNode; s++) {
+					Session session = node.connect("prof" + s);
+					session.subscribe(TOPIC);
+					sessions.add(session);
+				}
+			}
+			sessions.forEach(Session::clear);
+			CountDownLatch delivered = new CountDownLatch(messages * sessions.size());
+			sessions.forEach(s -> s.countDown(delivered));
+
+			SimpMessagingTemplate publisher = nodes.get(0).template();
+			for (int i = 0; i < messages; i++) {
+				publisher.convertAndSend(TOPIC, payload);
+			}
+			assertTrue(delivered.await(60, TimeUnit.SECONDS),
+					"nodes=" + nodeCount + " entregas pendentes: " + delivered.getCount());
+			stopNodes();
+		}
+	}
+
+	private Node startNode() throws Exception {
+		WebSocketBrokerProperties properties = new WebSocketBrokerProperties();
+		properties.setMode(WebSocketBrokerProperties.Mode.RELAY);
+		properties.setRelayHost("127.0.0.1");
+		properties.setRelayPort(brokerPort);
+
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.registerBean(WebSocketBrokerProperties.class, () -> properties);
+		context.registerBean(InstrumentoEchoFilter.class, () -> new InstrumentoEchoFilter(new SimpleMeterRegistry(), properties));
+		context.register(NodeConfig.class);
+		context.refresh();
+
+		Node node = new Node(context);
+		nodes.add(node);
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (!node.relay().isBrokerAvailable()) {
+			assertTrue(System.currentTimeMillis() < deadline, "relay não conectou ao broker");
+			Thread.sleep(20);
+		}
+		return node;
+	}
+
+	/**
+	 * Mensageria de uma instância: mesmos prefixos/broker e interceptor de eco da aplicação.
+	 */
+	@org.springframework.context.annotation.Configuration
+	static class NodeConfig extends AbstractMessageBrokerConfiguration {
+
+		@Autowired
+		private WebSocketBrokerProperties properties;
+
+		@Autowired
+		private InstrumentoEchoFilter echoFilter;
+
+		@Override
+		protected void configureMessageBroker(MessageBrokerRegistry registry) {
+			WebSocketConfig.configureBroker(registry, properties);
+		}
+
+		@Override
+		protected void configureClientOutboundChannel(ChannelRegistration registration) {
+			registration.interceptors(echoFilter);
+		}
+
+		@Override
+		protected SimpUserRegistry createLocalUserRegistry(Integer order) {
+			DefaultSimpUserRegistry registry = new DefaultSimpUserRegistry();
+			if (order != null) {
+				registry.setOrder(order);
+			}
+			return registry;
+		}
+	}
+
+	private static final class Node {
+
+		private static final AtomicInteger SESSION_IDS = new AtomicInteger();
+
+		private final AnnotationConfigApplicationContext context;
+		private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+		Node(AnnotationConfigApplicationContext context) {
+			this.context = context;
+			// Canal de saída = o que iria para os WebSockets dos clientes.
+			context.getBean("clientOutboundChannel", SubscribableChannel.class).subscribe(message -> {
+				Session session = sessions.get(StompHeaderAccessor.wrap(message).getSessionId());
+				if (session != null) {
+					session.receive(message);
+				}
+			});
+		}
+
+		SimpMessagingTemplate template() {
+			return context.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class);
+		}
+
+		InstrumentoEchoFilter echoFilter() {
+			return context.getBean(InstrumentoEchoFilter.class);
+		}
+
+		AbstractBrokerMessageHandler relay() {
+			return context.getBean("stompBrokerRelayMessageHandler", AbstractBrokerMessageHandler.class);
+		}
+
+		/**
+		 * CONNECT como o do navegador; o evento alimenta o registro de usuários (como o handler STOMP faria).
+		 */
+		Session connect(String user) throws Exception {
+			Principal principal = () -> user;
+			Session session = new Session("s" + SESSION_IDS.incrementAndGet(), principal,
+					context.getBean("clientInboundChannel", MessageChannel.class));
+			sessions.put(session.id(), session);
+
+			StompHeaderAccessor connect = session.headers(StompCommand.CONNECT);
+			connect.setAcceptVersion("1.2");
+			connect.setHeartbeat(0, 0);
+			Message<byte[]> message = MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders());
+			session.send(message);
+			assertEquals(StompCommand.CONNECTED, StompHeaderAccessor.wrap(session.poll()).getCommand());
+			context.publishEvent(new SessionConnectedEvent(this, message, principal));
+			return session;
+		}
+
+		void close() {
+			context.close();
+		}
+	}
+
+	private static final class Session {
+
+		private final String id;
+		private final Principal user;
+		private final MessageChannel inbound;
+		private final BlockingQueue<Message<?>> received = new LinkedBlockingQueue<>();
+		private final AtomicInteger subscriptions = new AtomicInteger();
+		private volatile CountDownLatch counter;
+
+		Session(String id, Principal user, MessageChannel inbound) {
+			this.id = id;
+			this.user = user;
+			this.inbound = inbound;
+		}
+
+		String id() {
+			return id;
+		}
+
+		StompHeaderAccessor headers(StompCommand command) {
+			StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+			accessor.setSessionId(id);
+			accessor.setUser(user);
+			accessor.setSessionAttributes(new HashMap<>());
+			accessor.setLeaveMutable(true);
+			return accessor;
+		}
+
+		void send(Message<byte[]> message) {
+			inbound.send(message);
+		}
+
+		/**
+		 * SUBSCRIBE com RECEIPT: só retorna quando o broker confirmou a assinatura.
+		 */
+		void subscribe(String destination) throws Exception {
+			StompHeaderAccessor subscribe = headers(StompCommand.SUBSCRIBE);
+			subscribe.setSubscriptionId("sub-" + subscriptions.incrementAndGet());
+			subscribe.setDestination(destination);
+			subscribe.setReceipt("r-" + id + "-" + subscriptions.get());
+			send(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+			assertEquals(StompCommand.RECEIPT, StompHeaderAccessor.wrap(poll()).getCommand());
+		}
+
+		void receive(Message<?> message) {
+			CountDownLatch latch = counter;
+			if (latch != null && StompHeaderAccessor.wrap(message).getCommand() == StompCommand.MESSAGE) {
+				latch.countDown();
+				return;
+			}
+			received.add(message);
+		}
+
+		void countDown(CountDownLatch latch) {
+			this.counter = latch;
+		}
+
+		void clear() {
+			received.clear();
+		}
+
+		Message<?> poll() throws InterruptedException {
+			Message<?> message = poll(10_000);
+			assertNotNull(message, "nada recebido na sessão " + id);
+			return message;
+		}
+
+		Message<?> poll(long millis) throws InterruptedException {
+			return received.poll(millis, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public String toString() {
+			return id + Arrays.toString(received.toArray());
+		}
+	}
+}